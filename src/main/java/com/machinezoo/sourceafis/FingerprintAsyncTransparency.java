@@ -0,0 +1,249 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Transparency logger that hands transparency data over to another {@link FingerprintTransparency} on a background thread.
+ * Transparency data is still serialized on the thread running the algorithm, because the algorithm reuses its data structures,
+ * but writing it, for example compressing it into ZIP file returned by {@link FingerprintTransparency#zip(java.io.OutputStream)},
+ * is moved to a dedicated background thread.
+ * Threads running the algorithm therefore do not wait for I/O and they do not contend on locks in the target logger.
+ * <p>
+ * Transparency data waits for the background thread in a bounded queue.
+ * When the queue is full, transparency data is either dropped or the algorithm waits as configured by {@link Overflow}.
+ * Dropped records are counted and reported by {@link #dropped()}.
+ * <p>
+ * Target logger should be created on the current thread immediately before this object,
+ * so that this object becomes the active logger on top of it.
+ * Target logger is closed when this object is closed, after all queued transparency data has been written.
+ * Exceptions thrown by target logger are rethrown from {@link #close()}. Transparency data is dropped after the first exception.
+ * <p>
+ * Calls to {@link #accepts(String)} and {@link #acceptsCompactMatrices()} are forwarded to target logger on the calling thread.
+ *
+ * @see FingerprintTransparency
+ */
+public class FingerprintAsyncTransparency extends FingerprintTransparency {
+	/**
+	 * Action taken when transparency data does not fit in the queue.
+	 */
+	public enum Overflow {
+		/**
+		 * Discard transparency data that does not fit in the queue. This never blocks the algorithm.
+		 */
+		DROP_NEWEST,
+		/**
+		 * Discard the oldest queued transparency data to make room for new data. This never blocks the algorithm.
+		 */
+		DROP_OLDEST,
+		/**
+		 * Wait until there is room in the queue. No data is dropped, but the algorithm is slowed down to the speed of the target logger.
+		 */
+		BLOCK
+	}
+	private static class Record {
+		final String key;
+		final String mime;
+		final byte[] data;
+		Record(String key, String mime, byte[] data) {
+			this.key = key;
+			this.mime = mime;
+			this.data = data;
+		}
+	}
+	private static final Record END = new Record(null, null, null);
+	private final FingerprintTransparency target;
+	private final Overflow overflow;
+	private final BlockingQueue<Record> queue;
+	private final Thread writer;
+	private final AtomicLong offered = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	private volatile Throwable failure;
+	private boolean closed;
+	/**
+	 * Creates asynchronous transparency logger and activates it.
+	 * Background thread is started immediately.
+	 *
+	 * @param target
+	 *            logger that receives transparency data on background thread
+	 * @param capacity
+	 *            maximum number of queued transparency records
+	 * @param overflow
+	 *            action taken when the queue is full
+	 * @throws NullPointerException
+	 *             if {@code target} or {@code overflow} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code capacity} is not positive
+	 */
+	public FingerprintAsyncTransparency(FingerprintTransparency target, int capacity, Overflow overflow) {
+		/*
+		 * Superclass constructor has already activated this logger. Rejected arguments must deactivate it,
+		 * otherwise the half-constructed logger would stay active on current thread.
+		 */
+		try {
+			this.target = Objects.requireNonNull(target);
+			this.overflow = Objects.requireNonNull(overflow);
+			if (capacity < 1)
+				throw new IllegalArgumentException("Queue capacity must be positive.");
+			queue = new ArrayBlockingQueue<>(capacity);
+			writer = new Thread(this::write, "sourceafis-transparency");
+			writer.setDaemon(true);
+			writer.start();
+		} catch (Throwable ex) {
+			super.close();
+			throw ex;
+		}
+	}
+	private void write() {
+		while (true) {
+			Record record;
+			try {
+				record = queue.take();
+			} catch (InterruptedException ex) {
+				continue;
+			}
+			if (record == END)
+				return;
+			if (failure != null) {
+				dropped.incrementAndGet();
+				continue;
+			}
+			try {
+				target.take(record.key, record.mime, record.data);
+				delivered.incrementAndGet();
+			} catch (Throwable ex) {
+				failure = ex;
+				dropped.incrementAndGet();
+			}
+		}
+	}
+	/**
+	 * Forwards the question to target logger.
+	 *
+	 * @param key
+	 *            transparency data key
+	 * @return whether target logger accepts transparency data under given key
+	 */
+	@Override
+	public boolean accepts(String key) {
+		return target.accepts(key);
+	}
+	/**
+	 * Forwards the question to target logger.
+	 *
+	 * @return whether target logger accepts compact encoding of large matrices
+	 */
+	@Override
+	public boolean acceptsCompactMatrices() {
+		return target.acceptsCompactMatrices();
+	}
+	/**
+	 * Queues transparency data for the background thread.
+	 * If the queue is full, action configured by {@link Overflow} is taken.
+	 *
+	 * @param key
+	 *            specifies the kind of transparency data being logged
+	 * @param mime
+	 *            MIME type of the transparency data in {@code data} parameter
+	 * @param data
+	 *            transparency data being logged
+	 */
+	@Override
+	public void take(String key, String mime, byte[] data) {
+		offered.incrementAndGet();
+		var record = new Record(key, mime, data);
+		switch (overflow) {
+		case DROP_NEWEST:
+			if (!queue.offer(record))
+				dropped.incrementAndGet();
+			break;
+		case DROP_OLDEST:
+			while (!queue.offer(record)) {
+				if (queue.poll() != null)
+					dropped.incrementAndGet();
+			}
+			break;
+		case BLOCK:
+			try {
+				queue.put(record);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				dropped.incrementAndGet();
+			}
+			break;
+		}
+	}
+	/**
+	 * Deactivates this logger, waits for the background thread to write all queued transparency data, and closes target logger.
+	 *
+	 * @throws RuntimeException
+	 *             if target logger threw while taking transparency data
+	 */
+	@Override
+	public void close() {
+		super.close();
+		if (closed)
+			return;
+		closed = true;
+		/*
+		 * Closing must not be cut short by interrupt, because that would leave target logger unclosed.
+		 */
+		boolean interrupted = false;
+		boolean ended = false;
+		while (!ended) {
+			try {
+				queue.put(END);
+				ended = true;
+			} catch (InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+		while (writer.isAlive()) {
+			try {
+				writer.join();
+			} catch (InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		target.close();
+		if (failure instanceof Error)
+			throw (Error)failure;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException)failure;
+		if (failure != null)
+			throw new IllegalStateException(failure);
+	}
+	/**
+	 * Gets the number of transparency records passed to this logger.
+	 *
+	 * @return number of offered records
+	 */
+	public long offered() {
+		return offered.get();
+	}
+	/**
+	 * Gets the number of transparency records that were dropped due to queue overflow or failure of target logger.
+	 *
+	 * @return number of dropped records
+	 */
+	public long dropped() {
+		return dropped.get();
+	}
+	/**
+	 * Gets the number of transparency records successfully passed to target logger.
+	 *
+	 * @return number of delivered records
+	 */
+	public long delivered() {
+		return delivered.get();
+	}
+	@Override
+	public String toString() {
+		return String.format("%d offered, %d delivered, %d dropped", offered(), delivered(), dropped());
+	}
+}
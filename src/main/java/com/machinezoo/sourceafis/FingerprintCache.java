@@ -0,0 +1,291 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.nio.*;
+import java.util.*;
+import java.util.function.*;
+import com.machinezoo.sourceafis.engine.features.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+
+/**
+ * Memory-bounded cache of deserialized templates and matchers.
+ * Applications that receive the same serialized templates repeatedly, for example in 1:1 verification service,
+ * can use this cache to skip template deserialization and {@link FingerprintMatcher} construction for frequently seen templates.
+ * <p>
+ * Cache is keyed by contents of the serialized template, so it works for any serialized form accepted by {@link FingerprintTemplate#FingerprintTemplate(byte[])}.
+ * Keys are located via fast 64-bit hash of the serialized template, but the whole serialized template is compared before returning cached object,
+ * so hash collisions cannot cause wrong template to be returned.
+ * <p>
+ * Size of the cache is limited by memory budget. Memory footprint of every entry is computed
+ * from {@link FingerprintTemplate#memory()}, {@link FingerprintMatcher#memory()}, and size of the serialized template.
+ * When the budget is exceeded, least recently used entries are evicted.
+ * Cache is split into independently locked segments, so that it scales to many threads.
+ * Every segment has its share of the budget and evicts entries on its own.
+ * Templates and matchers are constructed outside of locks. Concurrent misses on the same key may therefore construct the same object more than once.
+ * <p>
+ * Templates and matchers returned by this cache are shared. Applications must not call deprecated methods that modify {@link FingerprintTemplate}.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @see FingerprintTemplate#memory()
+ * @see FingerprintMatcher#memory()
+ */
+public class FingerprintCache {
+	/*
+	 * Segments should not be so small that common matchers would not fit in them.
+	 */
+	private static final long MIN_SEGMENT = 8 << 20;
+	private static final int MAX_SEGMENTS = 64;
+	private static class Key {
+		final long hash;
+		final byte[] serialized;
+		Key(long hash, byte[] serialized) {
+			this.hash = hash;
+			this.serialized = serialized;
+		}
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && hash == ((Key)other).hash && Arrays.equals(serialized, ((Key)other).serialized);
+		}
+		@Override
+		public int hashCode() {
+			return (int)hash;
+		}
+	}
+	private static class Entry {
+		FingerprintTemplate template;
+		FingerprintMatcher matcher;
+		long memory;
+	}
+	private static class Segment {
+		final long budget;
+		/*
+		 * Access-ordered LinkedHashMap is an LRU list.
+		 */
+		final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+		long memory;
+		long hits;
+		long misses;
+		long evictions;
+		Segment(long budget) {
+			this.budget = budget;
+		}
+	}
+	private final long budget;
+	private final Segment[] segments;
+	/**
+	 * Creates new cache with the specified memory budget.
+	 * Budget of zero is allowed. It effectively disables caching.
+	 *
+	 * @param budget
+	 *            maximum total memory footprint of cached objects in bytes
+	 * @throws IllegalArgumentException
+	 *             if {@code budget} is negative
+	 */
+	public FingerprintCache(long budget) {
+		if (budget < 0)
+			throw new IllegalArgumentException("Negative cache budget.");
+		this.budget = budget;
+		int count = Integer.highestOneBit((int)Math.max(1, Math.min(Math.min(MAX_SEGMENTS, 4 * Runtime.getRuntime().availableProcessors()), budget / MIN_SEGMENT)));
+		segments = new Segment[count];
+		for (int i = 0; i < count; ++i)
+			segments[i] = new Segment(budget / count);
+	}
+	/*
+	 * Multiply-rotate hash over 8-byte words. It is not cryptographic. Keys are compared in full anyway.
+	 */
+	private static long hash(byte[] data) {
+		var buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+		long hash = 0x9E3779B97F4A7C15L ^ data.length;
+		int i = 0;
+		for (; i + Long.BYTES <= data.length; i += Long.BYTES)
+			hash = Long.rotateLeft(hash ^ buffer.getLong(i) * 0xC2B2AE3D27D4EB4FL, 31) * 0x9E3779B97F4A7C15L;
+		for (; i < data.length; ++i)
+			hash = Long.rotateLeft(hash ^ (data[i] & 0xff) * 0x165667B19E3779F9L, 23) * 0x9E3779B97F4A7C15L;
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		return hash ^ hash >>> 33;
+	}
+	private Segment segment(long hash) {
+		return segments[(int)(hash >>> 40) & (segments.length - 1)];
+	}
+	private static long memory(byte[] serialized, FingerprintTemplate template, FingerprintMatcher matcher) {
+		/*
+		 * Matcher footprint already includes its template, which is shared with the cached template.
+		 * Cached templates are matched repeatedly, so root edges are reserved even before they are built.
+		 */
+		var inner = matcher != null ? matcher.probe().template : template.inner;
+		long shared = matcher != null ? matcher.memory() : template.memory() - inner.rootMemory();
+		return MemoryEstimates.array(Byte.BYTES, serialized.length) + shared + RootEdges.memory(inner.minutiae.length);
+	}
+	private <T> T lookup(byte[] serialized, Function<Entry, T> getter, Function<Entry, T> factory, BiConsumer<Entry, T> setter) {
+		Objects.requireNonNull(serialized);
+		var key = new Key(hash(serialized), serialized);
+		var segment = segment(key.hash);
+		var partial = new Entry();
+		synchronized (segment) {
+			var found = segment.entries.get(key);
+			if (found != null) {
+				var cached = getter.apply(found);
+				if (cached != null) {
+					++segment.hits;
+					return cached;
+				}
+				/*
+				 * Cached template is reused to build the matcher.
+				 */
+				partial.template = found.template;
+			}
+			++segment.misses;
+		}
+		/*
+		 * Construct the object outside of the lock, so that other threads can use the segment meanwhile.
+		 */
+		T created = factory.apply(partial);
+		var stored = new Key(key.hash, serialized.clone());
+		synchronized (segment) {
+			var entry = segment.entries.get(stored);
+			if (entry == null) {
+				entry = partial;
+				setter.accept(entry, created);
+				entry.memory = memory(serialized, entry.template, entry.matcher);
+				if (entry.memory > segment.budget)
+					return created;
+				segment.entries.put(stored, entry);
+			} else {
+				var existing = getter.apply(entry);
+				if (existing != null)
+					return existing;
+				setter.accept(entry, created);
+				if (entry.template == null)
+					entry.template = partial.template;
+				segment.memory -= entry.memory;
+				entry.memory = memory(serialized, entry.template, entry.matcher);
+			}
+			segment.memory += entry.memory;
+			var iterator = segment.entries.values().iterator();
+			while (segment.memory > segment.budget && iterator.hasNext()) {
+				var eldest = iterator.next();
+				iterator.remove();
+				segment.memory -= eldest.memory;
+				++segment.evictions;
+			}
+			return created;
+		}
+	}
+	private static FingerprintTemplate template(Entry entry, byte[] serialized) {
+		if (entry.template == null)
+			entry.template = new FingerprintTemplate(serialized);
+		return entry.template;
+	}
+	/**
+	 * Deserializes fingerprint template or returns cached instance.
+	 * Cache miss is equivalent to calling {@link FingerprintTemplate#FingerprintTemplate(byte[])}.
+	 * Deserialized template is then cached.
+	 *
+	 * @param serialized
+	 *            serialized fingerprint template in any format accepted by {@link FingerprintTemplate#FingerprintTemplate(byte[])}
+	 * @return deserialized template, possibly shared with other callers
+	 * @throws NullPointerException
+	 *             if {@code serialized} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code serialized} is not in the correct format or it is corrupted
+	 *
+	 * @see FingerprintTemplate#FingerprintTemplate(byte[])
+	 */
+	public FingerprintTemplate template(byte[] serialized) {
+		return lookup(serialized, e -> e.template, e -> template(e, serialized), (e, t) -> e.template = t);
+	}
+	/**
+	 * Creates matcher for serialized probe template or returns cached instance.
+	 * Cache miss deserializes the template (or takes it from the cache) and passes it to {@link FingerprintMatcher#FingerprintMatcher(FingerprintTemplate)}.
+	 * Resulting matcher is then cached together with its template.
+	 *
+	 * @param serialized
+	 *            serialized probe template in any format accepted by {@link FingerprintTemplate#FingerprintTemplate(byte[])}
+	 * @return matcher for the probe template, possibly shared with other callers
+	 * @throws NullPointerException
+	 *             if {@code serialized} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code serialized} is not in the correct format or it is corrupted
+	 *
+	 * @see FingerprintMatcher#FingerprintMatcher(FingerprintTemplate)
+	 */
+	public FingerprintMatcher matcher(byte[] serialized) {
+		return lookup(serialized, e -> e.matcher, e -> new FingerprintMatcher(template(e, serialized)), (e, m) -> e.matcher = m);
+	}
+	/**
+	 * Removes all entries from the cache. Statistics are preserved.
+	 */
+	public void clear() {
+		for (var segment : segments) {
+			synchronized (segment) {
+				segment.entries.clear();
+				segment.memory = 0;
+			}
+		}
+	}
+	private long sum(ToLongFunction<Segment> property) {
+		long sum = 0;
+		for (var segment : segments) {
+			synchronized (segment) {
+				sum += property.applyAsLong(segment);
+			}
+		}
+		return sum;
+	}
+	/**
+	 * Gets memory budget of this cache.
+	 *
+	 * @return maximum total memory footprint of cached objects in bytes
+	 */
+	public long budget() {
+		return budget;
+	}
+	/**
+	 * Estimates memory footprint of all cached objects.
+	 * This never exceeds {@link #budget()}.
+	 *
+	 * @return total memory footprint of cached objects in bytes
+	 */
+	public long memory() {
+		return sum(s -> s.memory);
+	}
+	/**
+	 * Gets the number of cached serialized templates.
+	 * Template and matcher for the same serialized template count as one entry.
+	 *
+	 * @return number of entries in the cache
+	 */
+	public int size() {
+		return (int)sum(s -> s.entries.size());
+	}
+	/**
+	 * Gets the number of lookups that returned cached object.
+	 *
+	 * @return number of cache hits
+	 */
+	public long hits() {
+		return sum(s -> s.hits);
+	}
+	/**
+	 * Gets the number of lookups that had to construct new template or matcher.
+	 *
+	 * @return number of cache misses
+	 */
+	public long misses() {
+		return sum(s -> s.misses);
+	}
+	/**
+	 * Gets the number of entries evicted to keep the cache within its budget.
+	 *
+	 * @return number of evicted entries
+	 */
+	public long evictions() {
+		return sum(s -> s.evictions);
+	}
+	@Override
+	public String toString() {
+		return String.format("%d entries, %d/%d bytes, %d hits, %d misses, %d evictions", size(), memory(), budget, hits(), misses(), evictions());
+	}
+}
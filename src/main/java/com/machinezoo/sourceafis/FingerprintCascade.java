@@ -0,0 +1,197 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.util.*;
+
+/**
+ * Two-stage 1:N identification that screens all candidates with a cheap matcher and then rescores only the best of them.
+ * First stage matches every candidate using {@link #screening(FingerprintMatcherOptions)} options, which default to {@link FingerprintMatcherOptions#screening()}.
+ * Candidates scoring at least {@link #screeningThreshold(double)} compete for a place in the shortlist of {@link #shortlist(int)} best candidates.
+ * Second stage matches shortlisted candidates with full matcher configured by {@link #matching(FingerprintMatcherOptions)}.
+ * Final scores are therefore comparable to scores returned by {@link FingerprintMatcher} with the same options.
+ * <p>
+ * Cascade is much faster than full matching of every candidate, but candidates that score poorly in screening are never rescored.
+ * Use {@link #calibrate(List, List, List, List)} to measure accuracy loss and speedup of particular cascade configuration on labeled data.
+ * <p>
+ * Configuration methods are not thread-safe, but configured cascade can be used by multiple threads concurrently.
+ *
+ * @see FingerprintMatcherOptions
+ */
+public class FingerprintCascade {
+	FingerprintMatcherOptions screening = FingerprintMatcherOptions.screening();
+	FingerprintMatcherOptions matching;
+	int shortlist = 20;
+	double screeningThreshold = 0;
+	double threshold = 0;
+	/**
+	 * Initializes cascade with default configuration.
+	 * Call methods of this class to customize the cascade.
+	 */
+	public FingerprintCascade() {
+	}
+	/**
+	 * Sets matcher options for the first (screening) stage.
+	 * Default is {@link FingerprintMatcherOptions#screening()}.
+	 *
+	 * @param options
+	 *            matcher options for screening
+	 * @return {@code this} (fluent method)
+	 * @throws NullPointerException
+	 *             if {@code options} is {@code null}
+	 */
+	public FingerprintCascade screening(FingerprintMatcherOptions options) {
+		screening = Objects.requireNonNull(options);
+		return this;
+	}
+	/**
+	 * Sets matcher options for the second stage that computes final scores.
+	 * Default is to use default options of {@link FingerprintMatcher}.
+	 *
+	 * @param options
+	 *            matcher options for rescoring shortlisted candidates or {@code null} for default options
+	 * @return {@code this} (fluent method)
+	 */
+	public FingerprintCascade matching(FingerprintMatcherOptions options) {
+		matching = options;
+		return this;
+	}
+	/**
+	 * Sets the number of candidates that pass from the first stage to the second stage.
+	 * Larger shortlist reduces accuracy loss, but it makes identification slower. Default is 20.
+	 *
+	 * @param size
+	 *            maximum number of candidates rescored in the second stage
+	 * @return {@code this} (fluent method)
+	 * @throws IllegalArgumentException
+	 *             if {@code size} is not positive
+	 */
+	public FingerprintCascade shortlist(int size) {
+		if (size < 1)
+			throw new IllegalArgumentException();
+		shortlist = size;
+		return this;
+	}
+	/**
+	 * Sets minimum screening score for a candidate to be shortlisted.
+	 * Screening scores are lower than full scores, so this threshold should be set lower than {@link #threshold(double)}.
+	 * Default is zero, i.e. shortlist is limited only by its size.
+	 *
+	 * @param threshold
+	 *            minimum screening score of shortlisted candidates
+	 * @return {@code this} (fluent method)
+	 */
+	public FingerprintCascade screeningThreshold(double threshold) {
+		screeningThreshold = threshold;
+		return this;
+	}
+	/**
+	 * Sets minimum final score for a candidate to be reported.
+	 * Default is zero, i.e. all shortlisted candidates are reported.
+	 *
+	 * @param threshold
+	 *            minimum final score of reported candidates
+	 * @return {@code this} (fluent method)
+	 */
+	public FingerprintCascade threshold(double threshold) {
+		this.threshold = threshold;
+		return this;
+	}
+	/**
+	 * Searches candidates for fingerprints matching the probe.
+	 * Returned candidates are sorted by final score, best candidate first.
+	 * At most {@link #shortlist(int)} candidates are returned.
+	 *
+	 * @param probe
+	 *            probe fingerprint template
+	 * @param candidates
+	 *            list of candidate fingerprint templates
+	 * @return shortlisted candidates with final score of at least {@link #threshold(double)}, best candidate first
+	 * @throws NullPointerException
+	 *             if {@code probe} or {@code candidates} or any candidate is {@code null}
+	 */
+	public List<FingerprintHit> identify(FingerprintTemplate probe, List<FingerprintTemplate> candidates) {
+		Objects.requireNonNull(probe);
+		Objects.requireNonNull(candidates);
+		var screener = new FingerprintMatcher(probe, screening);
+		/*
+		 * Min-heap of the best screening hits. Worst shortlisted candidate is at the top, ready to be replaced.
+		 */
+		var heap = new PriorityQueue<FingerprintHit>(FingerprintHit.RANKING.reversed());
+		for (int i = 0; i < candidates.size(); ++i) {
+			double score = screener.match(candidates.get(i));
+			if (score >= screeningThreshold && (heap.size() < shortlist || score > heap.peek().score())) {
+				heap.add(new FingerprintHit(i, score));
+				if (heap.size() > shortlist)
+					heap.remove();
+			}
+		}
+		/*
+		 * Rescoring matcher reuses probe's search structures built for screening.
+		 */
+		var matcher = new FingerprintMatcher(screener.probe(), matching);
+		var hits = new ArrayList<FingerprintHit>();
+		for (var screened : heap) {
+			double score = matcher.match(candidates.get(screened.index()));
+			if (score >= threshold)
+				hits.add(new FingerprintHit(screened.index(), score));
+		}
+		hits.sort(FingerprintHit.RANKING);
+		return hits;
+	}
+	/**
+	 * Measures rank-1 identification loss and speedup of this cascade on labeled dataset.
+	 * Every probe is identified twice, once by matching all candidates with full matcher and once with this cascade.
+	 * Identification is correct if the top candidate scores at least {@link #threshold(double)} and it has the same label as the probe.
+	 * Labels are compared with {@link Object#equals(Object)}.
+	 * Probes can be also present among candidates as long as they have distinct labels,
+	 * but that would make the measurement meaningless.
+	 * <p>
+	 * This method matches every probe with every candidate at least twice, so it is slow for large datasets.
+	 *
+	 * @param probes
+	 *            probe fingerprint templates
+	 * @param probeLabels
+	 *            identities of probes, one per probe
+	 * @param candidates
+	 *            candidate fingerprint templates
+	 * @param candidateLabels
+	 *            identities of candidates, one per candidate
+	 * @return accuracy and speed of the cascade compared to full matching
+	 * @throws NullPointerException
+	 *             if any parameter or any template is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if number of labels does not match number of templates
+	 */
+	public FingerprintCascadeCalibration calibrate(List<FingerprintTemplate> probes, List<?> probeLabels, List<FingerprintTemplate> candidates, List<?> candidateLabels) {
+		if (probes.size() != probeLabels.size() || candidates.size() != candidateLabels.size())
+			throw new IllegalArgumentException("Every template must have exactly one label.");
+		var calibration = new FingerprintCascadeCalibration();
+		calibration.probes = probes.size();
+		for (int i = 0; i < probes.size(); ++i) {
+			var label = probeLabels.get(i);
+			long start = System.nanoTime();
+			var matcher = new FingerprintMatcher(probes.get(i), matching);
+			int full = -1;
+			double high = 0;
+			for (int j = 0; j < candidates.size(); ++j) {
+				double score = matcher.match(candidates.get(j));
+				if (score >= threshold && (full < 0 || score > high)) {
+					full = j;
+					high = score;
+				}
+			}
+			calibration.fullNanos += System.nanoTime() - start;
+			start = System.nanoTime();
+			var hits = identify(probes.get(i), candidates);
+			calibration.cascadeNanos += System.nanoTime() - start;
+			int cascaded = hits.isEmpty() ? -1 : hits.get(0).index();
+			if (full >= 0 && Objects.equals(label, candidateLabels.get(full)))
+				++calibration.fullCorrect;
+			if (cascaded >= 0 && Objects.equals(label, candidateLabels.get(cascaded)))
+				++calibration.cascadeCorrect;
+			if (full != cascaded)
+				++calibration.disagreements;
+		}
+		return calibration;
+	}
+}
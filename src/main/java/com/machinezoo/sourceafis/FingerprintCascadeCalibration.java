@@ -0,0 +1,93 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.time.*;
+
+/**
+ * Accuracy and speed of {@link FingerprintCascade} compared to full matching of every candidate.
+ * Instances are returned by {@link FingerprintCascade#calibrate(java.util.List, java.util.List, java.util.List, java.util.List)}.
+ * Rank-1 identification is correct when the top candidate has the same label as the probe.
+ *
+ * @see FingerprintCascade#calibrate(java.util.List, java.util.List, java.util.List, java.util.List)
+ */
+public class FingerprintCascadeCalibration {
+	int probes;
+	int fullCorrect;
+	int cascadeCorrect;
+	int disagreements;
+	long fullNanos;
+	long cascadeNanos;
+	FingerprintCascadeCalibration() {
+	}
+	/**
+	 * Gets the number of probes in the calibration dataset.
+	 *
+	 * @return number of probes
+	 */
+	public int probes() {
+		return probes;
+	}
+	/**
+	 * Gets the number of probes correctly identified at rank 1 when every candidate is matched with full matcher.
+	 *
+	 * @return number of correct rank-1 identifications without the cascade
+	 */
+	public int fullCorrect() {
+		return fullCorrect;
+	}
+	/**
+	 * Gets the number of probes correctly identified at rank 1 by the cascade.
+	 *
+	 * @return number of correct rank-1 identifications with the cascade
+	 */
+	public int cascadeCorrect() {
+		return cascadeCorrect;
+	}
+	/**
+	 * Gets the number of probes for which the cascade returned different top candidate than full matching.
+	 * This includes cases where neither top candidate is correct.
+	 *
+	 * @return number of probes with different rank-1 candidate
+	 */
+	public int disagreements() {
+		return disagreements;
+	}
+	/**
+	 * Gets rank-1 identification loss caused by the cascade.
+	 * This is the fraction of probes that full matching identifies correctly, but the cascade does not.
+	 * Loss can be negative if the cascade happens to be more accurate.
+	 *
+	 * @return rank-1 accuracy of full matching minus rank-1 accuracy of the cascade
+	 */
+	public double loss() {
+		return probes > 0 ? (fullCorrect - cascadeCorrect) / (double)probes : 0;
+	}
+	/**
+	 * Gets time spent matching all probes with full matcher.
+	 *
+	 * @return duration of full matching
+	 */
+	public Duration fullDuration() {
+		return Duration.ofNanos(fullNanos);
+	}
+	/**
+	 * Gets time spent identifying all probes with the cascade.
+	 *
+	 * @return duration of cascaded identification
+	 */
+	public Duration cascadeDuration() {
+		return Duration.ofNanos(cascadeNanos);
+	}
+	/**
+	 * Gets throughput gain of the cascade.
+	 *
+	 * @return ratio of full matching time to cascade time
+	 */
+	public double speedup() {
+		return cascadeNanos > 0 ? fullNanos / (double)cascadeNanos : 0;
+	}
+	@Override
+	public String toString() {
+		return String.format("%d probes, rank-1 %d/%d, loss %.2f%%, speedup %.1fx", probes, cascadeCorrect, fullCorrect, 100 * loss(), speedup());
+	}
+}
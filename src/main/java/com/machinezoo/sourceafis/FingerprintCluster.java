@@ -0,0 +1,167 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+
+/**
+ * Scatter-gather 1:N identification over gallery partitioned among {@link FingerprintShard}s.
+ * Candidates are assigned to shards by hash of their ID (see {@link #shard(String)}).
+ * Search serializes the probe once, sends it to all shards via {@link FingerprintShardTransport},
+ * and merges the best candidates returned by shards that respond before the deadline.
+ * Shards receive the deadline too, so that they stop searching and free their threads when it passes.
+ * <p>
+ * This class is thread-safe. Multiple searches can run concurrently.
+ *
+ * @see FingerprintShard
+ * @see FingerprintShardTransport
+ */
+public class FingerprintCluster {
+	private final FingerprintShardTransport transport;
+	/**
+	 * Creates cluster on top of the transport.
+	 * Cluster does not take ownership of the transport. Caller is responsible for closing it.
+	 *
+	 * @param transport
+	 *            transport that reaches all shards
+	 * @throws NullPointerException
+	 *             if {@code transport} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if the transport has no shards
+	 */
+	public FingerprintCluster(FingerprintShardTransport transport) {
+		this.transport = Objects.requireNonNull(transport);
+		if (transport.shards() < 1)
+			throw new IllegalArgumentException("Cluster must have at least one shard.");
+	}
+	/**
+	 * Gets the shard that should hold candidate with given ID.
+	 * Applications use this method to route new candidates to shards.
+	 * Assignment depends only on the ID and the number of shards. It is stable across processes and JVM versions.
+	 * Changing the number of shards reassigns most candidates.
+	 *
+	 * @param id
+	 *            candidate ID
+	 * @return shard number between zero and {@link FingerprintShardTransport#shards()}
+	 * @throws NullPointerException
+	 *             if {@code id} is {@code null}
+	 */
+	public int shard(String id) {
+		/*
+		 * String.hashCode() is fully specified, so it is stable. Mix its bits, because similar IDs have similar hashes.
+		 */
+		int hash = id.hashCode() * 0x9E3779B9;
+		return Math.floorMod(hash ^ (hash >>> 16), transport.shards());
+	}
+	/**
+	 * Searches all shards for candidates matching the probe.
+	 * Shards that do not respond before the deadline are cancelled and left out of the result.
+	 * Failures of individual shards are counted, but they do not fail the whole search.
+	 *
+	 * @param probe
+	 *            probe fingerprint template
+	 * @param limit
+	 *            maximum number of returned candidates
+	 * @param threshold
+	 *            minimum score of returned candidates
+	 * @param timeout
+	 *            time allowed for all shards to respond
+	 * @return best candidates from all shards that responded in time along with response statistics
+	 * @throws NullPointerException
+	 *             if {@code probe} or {@code timeout} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code limit} is negative
+	 */
+	public FingerprintClusterResult search(FingerprintTemplate probe, int limit, double threshold, Duration timeout) {
+		Objects.requireNonNull(probe);
+		if (limit < 0)
+			throw new IllegalArgumentException("Negative limit.");
+		var deadline = Deadline.after(timeout);
+		return scatter(probe.toByteArray(), limit, threshold, deadline);
+	}
+	/**
+	 * Searches all shards for candidates matching probe represented by prepared matcher.
+	 * This method behaves like {@link #search(FingerprintTemplate, int, double, Duration)},
+	 * but shards receive serialized matcher (see {@link FingerprintMatcher#toByteArray()}) instead of serialized template.
+	 * Shards then load the matcher instead of building it, which saves CPU time on every shard,
+	 * but the request is several hundred times larger than serialized template.
+	 * This is worthwhile when shards are many and network between them is fast.
+	 * <p>
+	 * Shards always match with default matcher options, because options are not serialized.
+	 *
+	 * @param probe
+	 *            matcher representing the probe
+	 * @param limit
+	 *            maximum number of returned candidates
+	 * @param threshold
+	 *            minimum score of returned candidates
+	 * @param timeout
+	 *            time allowed for all shards to respond
+	 * @return best candidates from all shards that responded in time along with response statistics
+	 * @throws NullPointerException
+	 *             if {@code probe} or {@code timeout} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code limit} is negative
+	 * @see FingerprintShard#search(byte[], int, double)
+	 */
+	public FingerprintClusterResult search(FingerprintMatcher probe, int limit, double threshold, Duration timeout) {
+		Objects.requireNonNull(probe);
+		if (limit < 0)
+			throw new IllegalArgumentException("Negative limit.");
+		var deadline = Deadline.after(timeout);
+		return scatter(probe.toByteArray(), limit, threshold, deadline);
+	}
+	private FingerprintClusterResult scatter(byte[] serialized, int limit, double threshold, Deadline deadline) {
+		int shards = transport.shards();
+		var futures = new ArrayList<CompletableFuture<List<FingerprintShardHit>>>(shards);
+		for (int i = 0; i < shards; ++i) {
+			try {
+				futures.add(transport.search(i, serialized, limit, threshold, Duration.ofNanos(deadline.remainingNanos())));
+			} catch (RuntimeException ex) {
+				futures.add(CompletableFuture.failedFuture(ex));
+			}
+		}
+		var result = new FingerprintClusterResult();
+		result.shards = shards;
+		var merged = new ArrayList<FingerprintShardHit>();
+		boolean interrupted = false;
+		for (var future : futures) {
+			try {
+				/*
+				 * Once the deadline passes, shards that already responded are still collected, but nobody else is waited for.
+				 */
+				long remaining = interrupted ? 0 : deadline.remainingNanos();
+				merged.addAll(future.get(remaining, TimeUnit.NANOSECONDS));
+				++result.responded;
+			} catch (TimeoutException ex) {
+				future.cancel(true);
+				++result.timedOut;
+			} catch (ExecutionException ex) {
+				/*
+				 * Shard that ran out of time has not matched all of its candidates, so it did not respond in the full sense.
+				 */
+				if (ex.getCause() instanceof TimeoutException)
+					++result.timedOut;
+				else
+					++result.failed;
+			} catch (CancellationException ex) {
+				++result.failed;
+			} catch (InterruptedException ex) {
+				interrupted = true;
+				future.cancel(true);
+				++result.timedOut;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		merged.sort(FingerprintShardHit.RANKING);
+		result.hits = List.copyOf(merged.subList(0, Math.min(limit, merged.size())));
+		return result;
+	}
+	@Override
+	public String toString() {
+		return String.format("%d shards", transport.shards());
+	}
+}
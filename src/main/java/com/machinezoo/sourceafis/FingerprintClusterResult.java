@@ -0,0 +1,74 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.util.*;
+
+/**
+ * Merged result of search across all shards of {@link FingerprintCluster}.
+ * Result may be partial if some shards failed or did not respond before the deadline.
+ * Applications should check {@link #complete()} before relying on absence of a candidate.
+ *
+ * @see FingerprintCluster#search(FingerprintTemplate, int, double, java.time.Duration)
+ */
+public class FingerprintClusterResult {
+	List<FingerprintShardHit> hits = List.of();
+	int shards;
+	int responded;
+	int failed;
+	int timedOut;
+	FingerprintClusterResult() {
+	}
+	/**
+	 * Gets the best candidates from all shards that responded.
+	 *
+	 * @return merged candidates, best candidate first
+	 */
+	public List<FingerprintShardHit> hits() {
+		return hits;
+	}
+	/**
+	 * Gets the number of shards the search was sent to.
+	 *
+	 * @return number of shards
+	 */
+	public int shards() {
+		return shards;
+	}
+	/**
+	 * Gets the number of shards whose results are included in {@link #hits()}.
+	 *
+	 * @return number of shards that responded in time
+	 */
+	public int responded() {
+		return responded;
+	}
+	/**
+	 * Gets the number of shards that reported an error or could not be reached.
+	 *
+	 * @return number of failed shards
+	 */
+	public int failed() {
+		return failed;
+	}
+	/**
+	 * Gets the number of shards that did not respond before the deadline.
+	 * This includes shards that responded in time, but reported that they ran out of time before matching all their candidates.
+	 *
+	 * @return number of timed out shards
+	 */
+	public int timedOut() {
+		return timedOut;
+	}
+	/**
+	 * Checks whether all shards responded.
+	 *
+	 * @return {@code true} if {@link #hits()} covers the whole gallery
+	 */
+	public boolean complete() {
+		return responded == shards;
+	}
+	@Override
+	public String toString() {
+		return String.format("%d hits, %d/%d shards (%d failed, %d timed out)", hits.size(), responded, shards, failed, timedOut);
+	}
+}
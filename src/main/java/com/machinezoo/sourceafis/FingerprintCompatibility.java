@@ -2,11 +2,16 @@
 package com.machinezoo.sourceafis;
 
 import static java.util.stream.Collectors.*;
+import java.io.*;
+import java.nio.*;
 import java.nio.charset.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 import com.machinezoo.fingerprintio.*;
 import com.machinezoo.noexception.*;
 import com.machinezoo.sourceafis.engine.configuration.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
 import com.machinezoo.sourceafis.engine.templates.*;
 
 /**
@@ -144,6 +149,234 @@ public class FingerprintCompatibility {
 	public static List<FingerprintTemplate> importTemplates(byte[] template) {
 		return importTemplates(template, Exceptions.silence());
 	}
+	/**
+	 * Converts non-native fingerprint template in {@link ByteBuffer} to a list of native SourceAFIS templates.
+	 * This method reads non-native template between buffer's position and limit.
+	 * It is otherwise equivalent to {@link #importTemplates(byte[], ExceptionHandler)}.
+	 * Buffer's position, limit, and contents are not modified.
+	 * <p>
+	 * Non-native template parsers require byte array input. Heap buffer that spans its whole backing array is used directly.
+	 * Other buffers, including direct buffers, are copied.
+	 * 
+	 * @param template
+	 *            buffer containing non-native template in one of the supported formats
+	 * @param handler
+	 *            exception handler for recoverable parsing exceptions
+	 * @return native templates containing fingerprints from the non-native template
+	 * @throws NullPointerException
+	 *             if {@code template} is {@code null}
+	 * @throws TemplateFormatException
+	 *             if {@code template} is in an unsupported format or it is corrupted
+	 *
+	 * @see #importTemplates(byte[], ExceptionHandler)
+	 * @see #importTemplates(ByteBuffer)
+	 * @see FingerprintTemplate#FingerprintTemplate(ByteBuffer)
+	 */
+	public static List<FingerprintTemplate> importTemplates(ByteBuffer template, ExceptionHandler handler) {
+		return importTemplates(ByteBuffers.array(Objects.requireNonNull(template)), handler);
+	}
+	/**
+	 * Converts non-native fingerprint template in {@link ByteBuffer} to a list of native SourceAFIS templates.
+	 * Template is parsed permissively. Recoverable errors are ignored.
+	 * This method is equivalent to calling {@link #importTemplates(ByteBuffer, ExceptionHandler)}
+	 * with {@link Exceptions#silence()} as exception handler.
+	 * 
+	 * @param template
+	 *            buffer containing non-native template in one of the supported formats
+	 * @return native templates containing fingerprints from the non-native template
+	 * @throws NullPointerException
+	 *             if {@code template} is {@code null}
+	 * @throws TemplateFormatException
+	 *             if {@code template} is in an unsupported format or it is corrupted
+	 *
+	 * @see #importTemplates(ByteBuffer, ExceptionHandler)
+	 * @see #importTemplates(byte[])
+	 */
+	public static List<FingerprintTemplate> importTemplates(ByteBuffer template) {
+		return importTemplates(template, Exceptions.silence());
+	}
+	/*
+	 * Result of converting one record in the parallel pipeline. It either has output or failure.
+	 */
+	private static class ConvertedRecord<T> {
+		final long index;
+		final int size;
+		final List<T> output;
+		final Throwable failure;
+		ConvertedRecord(long index, int size, List<T> output, Throwable failure) {
+			this.index = index;
+			this.size = size;
+			this.output = output;
+			this.failure = failure;
+		}
+	}
+	private static <I, T> FingerprintConversionStatistics convertAll(
+		Iterator<I> input,
+		ToIntFunction<I> size,
+		Function<I, List<T>> converter,
+		ToIntFunction<T> writer,
+		ExceptionHandler handler) {
+		var statistics = new FingerprintConversionStatistics();
+		long start = System.nanoTime();
+		var indexed = new Iterator<Map.Entry<Long, I>>() {
+			long index;
+			@Override
+			public boolean hasNext() {
+				return input.hasNext();
+			}
+			@Override
+			public Map.Entry<Long, I> next() {
+				return Map.entry(index++, input.next());
+			}
+		};
+		ParallelPipeline.run(indexed, entry -> {
+			int length = size.applyAsInt(entry.getValue());
+			try {
+				return new ConvertedRecord<>(entry.getKey(), length, converter.apply(entry.getValue()), null);
+			} catch (Throwable ex) {
+				return new ConvertedRecord<T>(entry.getKey(), length, null, ex);
+			}
+		}, record -> {
+			++statistics.records;
+			statistics.inputBytes += record.size;
+			if (record.failure != null) {
+				++statistics.failures;
+				var ex = new TemplateFormatException("Failed to convert record #" + record.index + ".", record.failure);
+				if (!handler.handle(ex))
+					throw ex;
+			} else {
+				for (var template : record.output) {
+					++statistics.templates;
+					statistics.outputBytes += writer.applyAsInt(template);
+				}
+			}
+		});
+		statistics.nanos = System.nanoTime() - start;
+		return statistics;
+	}
+	/**
+	 * Converts many non-native templates to native templates in parallel.
+	 * Input is a concatenation of non-native templates (records) in any of the formats supported by {@link #importTemplates(byte[], ExceptionHandler)}.
+	 * Formats can be mixed. Records are read sequentially, converted in parallel on {@link ForkJoinPool#commonPool()},
+	 * and passed to {@code output} in input order.
+	 * Number of records in flight is bounded, so memory use does not depend on input size.
+	 * Several native templates are produced for records that contain several fingerprints.
+	 * <p>
+	 * Failure to convert individual record is reported to {@code handler} as {@link TemplateFormatException}
+	 * with record's zero-based index in the message. If the handler returns {@code true}, the record is skipped.
+	 * Otherwise the exception is thrown and conversion stops.
+	 * The handler also receives recoverable parsing exceptions as in {@link #importTemplates(byte[], ExceptionHandler)}.
+	 * These are reported from worker threads, so the handler must be thread-safe.
+	 * Use {@link Exceptions#silence()} to skip bad records and {@link Exceptions#propagate()} to stop on the first error.
+	 * <p>
+	 * Broken framing (missing record header, invalid record length, truncated input) cannot be recovered from
+	 * and it is always thrown as {@link TemplateFormatException}. I/O errors are thrown as {@link WrappedException}.
+	 * 
+	 * @param input
+	 *            stream of concatenated non-native templates
+	 * @param output
+	 *            callback receiving native templates, always called from the calling thread
+	 * @param handler
+	 *            exception handler for failed records and recoverable parsing exceptions
+	 * @return conversion statistics including throughput
+	 * @throws NullPointerException
+	 *             if any parameter is {@code null}
+	 * @throws TemplateFormatException
+	 *             if input framing is broken or if {@code handler} refuses to handle failed record
+	 * 
+	 * @see #importTemplates(InputStream, OutputStream, boolean, ExceptionHandler)
+	 * @see #importTemplates(byte[], ExceptionHandler)
+	 */
+	public static FingerprintConversionStatistics importTemplates(InputStream input, Consumer<FingerprintTemplate> output, ExceptionHandler handler) {
+		Objects.requireNonNull(input);
+		Objects.requireNonNull(output);
+		Objects.requireNonNull(handler);
+		return convertAll(new ForeignTemplateSplitter(input), r -> r.length, r -> importTemplates(r, handler), t -> {
+			output.accept(t);
+			return 0;
+		}, handler);
+	}
+	/**
+	 * Converts many non-native templates to serialized native templates in parallel.
+	 * This method works like {@link #importTemplates(InputStream, Consumer, ExceptionHandler)},
+	 * but serialization of native templates is also performed in parallel
+	 * and serialized templates are written to {@code output} in input order.
+	 * <p>
+	 * Output is a plain concatenation of native templates that can be read back with {@link FingerprintTemplateReader}.
+	 * Templates are serialized with {@link FingerprintTemplate#toByteArray()}
+	 * or, if {@code compact} is {@code true}, with {@link FingerprintTemplate#toCompactByteArray(boolean)} without edge table.
+	 * Output stream is neither flushed nor closed.
+	 * 
+	 * @param input
+	 *            stream of concatenated non-native templates
+	 * @param output
+	 *            stream that receives concatenated native templates
+	 * @param compact
+	 *            {@code true} to write compact binary templates, {@code false} to write CBOR templates
+	 * @param handler
+	 *            exception handler for failed records and recoverable parsing exceptions
+	 * @return conversion statistics including throughput
+	 * @throws NullPointerException
+	 *             if any parameter is {@code null}
+	 * @throws TemplateFormatException
+	 *             if input framing is broken or if {@code handler} refuses to handle failed record
+	 * 
+	 * @see #importTemplates(InputStream, Consumer, ExceptionHandler)
+	 * @see FingerprintTemplateReader
+	 */
+	public static FingerprintConversionStatistics importTemplates(InputStream input, OutputStream output, boolean compact, ExceptionHandler handler) {
+		Objects.requireNonNull(input);
+		Objects.requireNonNull(output);
+		Objects.requireNonNull(handler);
+		Function<byte[], List<byte[]>> converter = r -> importTemplates(r, handler).stream()
+			.map(t -> compact ? t.toCompactByteArray(false) : t.toByteArray())
+			.collect(toList());
+		return convertAll(new ForeignTemplateSplitter(input), r -> r.length, converter, t -> {
+			Exceptions.wrap().run(() -> output.write(t));
+			return t.length;
+		}, handler);
+	}
+	/**
+	 * Converts many native templates to non-native templates in parallel.
+	 * Every native template is exported into separate single-fingerprint record
+	 * as if by calling {@link #exportTemplates(TemplateFormat, FingerprintTemplate...)}.
+	 * Records are written to {@code output} in input order as a plain concatenation,
+	 * which can be read back with {@link #importTemplates(InputStream, Consumer, ExceptionHandler)}.
+	 * <p>
+	 * Native templates can be supplied by {@link FingerprintTemplateReader}.
+	 * Templates are pulled from {@code templates} on the calling thread and exported on {@link ForkJoinPool#commonPool()}.
+	 * Number of templates in flight is bounded, so memory use does not depend on input size.
+	 * Failure to export individual template is reported to {@code handler} as {@link TemplateFormatException}.
+	 * If the handler returns {@code true}, the template is skipped. Otherwise the exception is thrown and export stops.
+	 * Output stream is neither flushed nor closed. I/O errors are thrown as {@link WrappedException}.
+	 * 
+	 * @param format
+	 *            target non-native template format
+	 * @param templates
+	 *            native templates to export
+	 * @param output
+	 *            stream that receives concatenated non-native templates
+	 * @param handler
+	 *            exception handler for failed templates
+	 * @return conversion statistics including throughput
+	 * @throws NullPointerException
+	 *             if any parameter is {@code null}
+	 * @throws TemplateFormatException
+	 *             if {@code handler} refuses to handle failed template
+	 * 
+	 * @see #exportTemplates(TemplateFormat, FingerprintTemplate...)
+	 * @see FingerprintTemplateReader
+	 */
+	public static FingerprintConversionStatistics exportTemplates(TemplateFormat format, Iterator<FingerprintTemplate> templates, OutputStream output, ExceptionHandler handler) {
+		Objects.requireNonNull(format);
+		Objects.requireNonNull(templates);
+		Objects.requireNonNull(output);
+		Objects.requireNonNull(handler);
+		return convertAll(templates, t -> 0, t -> List.of(exportTemplates(format, t)), t -> {
+			Exceptions.wrap().run(() -> output.write(t));
+			return t.length;
+		}, handler);
+	}
 	/**
 	 * Converts non-native fingerprint template to native SourceAFIS template.
 	 * Single non-native template may contain multiple fingerprints. This method returns the first one.
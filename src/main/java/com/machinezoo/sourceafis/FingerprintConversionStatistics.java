@@ -0,0 +1,86 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.time.*;
+
+/**
+ * Summary of bulk template conversion.
+ * Instances are returned by bulk import and export methods in {@link FingerprintCompatibility}.
+ * Individual failures are reported via {@link com.machinezoo.noexception.ExceptionHandler} while the conversion runs.
+ * This object provides totals and throughput for monitoring and logging.
+ *
+ * @see FingerprintCompatibility#importTemplates(java.io.InputStream, java.io.OutputStream, boolean, com.machinezoo.noexception.ExceptionHandler)
+ * @see FingerprintCompatibility#exportTemplates(com.machinezoo.fingerprintio.TemplateFormat, java.util.Iterator, java.io.OutputStream, com.machinezoo.noexception.ExceptionHandler)
+ */
+public class FingerprintConversionStatistics {
+	long records;
+	long templates;
+	long failures;
+	long inputBytes;
+	long outputBytes;
+	long nanos;
+	FingerprintConversionStatistics() {
+	}
+	/**
+	 * Gets the number of input records processed, including failed ones.
+	 *
+	 * @return number of input records
+	 */
+	public long records() {
+		return records;
+	}
+	/**
+	 * Gets the number of templates written to the output.
+	 * This can be higher than the number of records, because one ANSI or ISO record can contain several fingerprints.
+	 *
+	 * @return number of output templates
+	 */
+	public long templates() {
+		return templates;
+	}
+	/**
+	 * Gets the number of records that failed to convert and were skipped.
+	 *
+	 * @return number of failed records
+	 */
+	public long failures() {
+		return failures;
+	}
+	/**
+	 * Gets the total size of input records in bytes.
+	 * This is zero for export, because native templates are supplied already deserialized.
+	 *
+	 * @return number of bytes read
+	 */
+	public long inputBytes() {
+		return inputBytes;
+	}
+	/**
+	 * Gets the total size of output templates in bytes.
+	 *
+	 * @return number of bytes written
+	 */
+	public long outputBytes() {
+		return outputBytes;
+	}
+	/**
+	 * Gets wall-clock duration of the conversion.
+	 *
+	 * @return duration of the conversion
+	 */
+	public Duration duration() {
+		return Duration.ofNanos(nanos);
+	}
+	/**
+	 * Gets average throughput of the conversion.
+	 *
+	 * @return number of input records processed per second
+	 */
+	public double throughput() {
+		return nanos > 0 ? records * 1_000_000_000.0 / nanos : 0;
+	}
+	@Override
+	public String toString() {
+		return String.format("%d records, %d templates, %d failures, %.0f records/s", records, templates, failures, throughput());
+	}
+}
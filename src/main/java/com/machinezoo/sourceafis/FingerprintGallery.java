@@ -0,0 +1,395 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.nio.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import com.machinezoo.sourceafis.engine.features.*;
+import com.machinezoo.sourceafis.engine.matcher.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+import com.machinezoo.sourceafis.engine.templates.*;
+
+/**
+ * Append-only collection of candidate templates stored outside of Java heap.
+ * Large galleries of {@link FingerprintTemplate} objects require huge heaps and they make full garbage collections slow,
+ * because every template consists of many small objects.
+ * This class instead stores templates in compact binary format (see {@link FingerprintTemplate#toCompactByteArray(boolean)})
+ * with embedded edge table in direct {@link ByteBuffer}s. Java heap holds only one {@code long} position per template.
+ * Search structures that {@link FingerprintMatcher} otherwise computes and caches on first match of every template are stored too,
+ * so matching templates from the gallery is about as fast as matching {@link FingerprintTemplate} objects kept on heap.
+ * Stored template takes about 20KB, most of it taken by the precomputed search structures.
+ * <p>
+ * Templates are decoded on demand in {@link #get(int)}, {@link #match(FingerprintMatcher, int)}, and {@link #search(FingerprintMatcher, int, double)}.
+ * Decoding is mostly bulk copying, because minutiae are already shuffled and search structures are embedded.
+ * Decoded template is garbage immediately after the match, so it never survives into the old generation.
+ * Garbage collection pauses are therefore independent of gallery size.
+ * <p>
+ * Off-heap memory is allocated in slabs of up to 64MB and it is released only when the gallery itself is garbage-collected.
+ * JVM limits total size of direct buffers. Large galleries require raising the limit with {@code -XX:MaxDirectMemorySize}.
+ * <p>
+ * This class is thread-safe. Templates can be read and matched while other threads are adding new templates.
+ *
+ * @see FingerprintTemplate#toCompactByteArray(boolean)
+ */
+public class FingerprintGallery {
+	private static final int MIN_SLAB = 1 << 20;
+	private static final int MAX_SLAB = 64 << 20;
+	/*
+	 * Arrays are replaced when they grow and count is published last, so readers need no locking.
+	 * Reader that sees count also sees arrays that contain all positions below it.
+	 */
+	private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+	/*
+	 * Slab number in the upper 32 bits, offset within slab in the lower 32 bits.
+	 */
+	private volatile long[] positions = new long[16];
+	/*
+	 * Estimated matching cost of every template (see MatcherCost), used to balance parallel search.
+	 * It is grown and published together with positions.
+	 */
+	private volatile char[] costs = new char[16];
+	/*
+	 * Search order cached for the last observed gallery size.
+	 */
+	private volatile Schedule schedule;
+	private volatile int count;
+	private long bytes;
+	private long reserved;
+	/*
+	 * Breakdown of stored bytes for memory reports. Edge bytes include per-minutia edge counts.
+	 */
+	long minutiaBytes;
+	long edgeBytes;
+	long rootBytes;
+	/**
+	 * Creates new empty gallery.
+	 * No off-heap memory is allocated until the first template is added.
+	 */
+	public FingerprintGallery() {
+	}
+	private ByteBuffer slab(int length) {
+		var current = slabs;
+		if (current.length > 0) {
+			var last = current[current.length - 1];
+			if (last.remaining() >= length)
+				return last;
+		}
+		/*
+		 * Slabs grow exponentially, so that small galleries do not reserve 64MB of memory.
+		 * Templates larger than the maximum slab get a slab of their own.
+		 */
+		int capacity = current.length > 0 ? Math.min(MAX_SLAB, 2 * current[current.length - 1].capacity()) : MIN_SLAB;
+		/*
+		 * Native byte order, because stored data never leaves the process.
+		 */
+		var slab = ByteBuffer.allocateDirect(Math.max(capacity, length)).order(ByteOrder.nativeOrder());
+		reserved += slab.capacity();
+		var grown = Arrays.copyOf(current, current.length + 1);
+		grown[current.length] = slab;
+		slabs = grown;
+		return slab;
+	}
+	/**
+	 * Adds template to the gallery.
+	 * Template is copied to off-heap memory. Caller can discard the template afterwards.
+	 *
+	 * @param template
+	 *            candidate template to add
+	 * @return index of the added template, which is equal to the number of templates added before it
+	 * @throws NullPointerException
+	 *             if {@code template} is {@code null}
+	 */
+	public synchronized int add(FingerprintTemplate template) {
+		var inner = template.inner;
+		byte[] serialized = CompactTemplateFormat.encode(inner, true);
+		var roots = new RootEdges(inner.minutiae);
+		int length = serialized.length + roots.serializedSize();
+		var slab = slab(length);
+		long position = ((long)(slabs.length - 1) << 32) | slab.position();
+		slab.put(serialized);
+		roots.write(slab);
+		bytes += length;
+		int edges = 0;
+		for (var star : inner.edges())
+			edges += star.length;
+		minutiaBytes += inner.minutiae.length * CompactTemplateFormat.MINUTIA;
+		edgeBytes += inner.minutiae.length * Short.BYTES + edges * CompactTemplateFormat.EDGE;
+		rootBytes += roots.serializedSize();
+		int index = count;
+		var table = positions;
+		var estimates = costs;
+		if (index == table.length) {
+			positions = table = Arrays.copyOf(table, 2 * table.length);
+			costs = estimates = Arrays.copyOf(estimates, 2 * estimates.length);
+		}
+		table[index] = position;
+		estimates[index] = (char)MatcherCost.estimate(inner.minutiae.length);
+		count = index + 1;
+		return index;
+	}
+	/**
+	 * Gets the number of templates in the gallery.
+	 *
+	 * @return number of templates added so far
+	 */
+	public int size() {
+		return count;
+	}
+	SearchTemplate decode(int index) {
+		Objects.checkIndex(index, count);
+		long position = positions[index];
+		/*
+		 * Duplicate the slab, so that concurrent readers do not share buffer position.
+		 * Duplicate does not inherit byte order.
+		 */
+		var buffer = slabs[(int)(position >>> 32)].duplicate().order(ByteOrder.nativeOrder());
+		buffer.position((int)position);
+		var template = CompactTemplateFormat.decode(buffer);
+		template.rootEdges(RootEdges.read(buffer));
+		return template;
+	}
+	/**
+	 * Decodes template at given index.
+	 * Returned template is a new object that is independent of the gallery.
+	 *
+	 * @param index
+	 *            index of the template as returned by {@link #add(FingerprintTemplate)}
+	 * @return decoded template
+	 * @throws IndexOutOfBoundsException
+	 *             if {@code index} is negative or not less than {@link #size()}
+	 */
+	public FingerprintTemplate get(int index) {
+		return new FingerprintTemplate(decode(index));
+	}
+	/**
+	 * Matches template at given index with the probe represented by {@code matcher}.
+	 * This is equivalent to {@code matcher.match(get(index))}.
+	 *
+	 * @param matcher
+	 *            matcher representing probe template
+	 * @param index
+	 *            index of the candidate template as returned by {@link #add(FingerprintTemplate)}
+	 * @return similarity score between probe and candidate, see {@link FingerprintMatcher#match(FingerprintTemplate)}
+	 * @throws NullPointerException
+	 *             if {@code matcher} is {@code null}
+	 * @throws IndexOutOfBoundsException
+	 *             if {@code index} is negative or not less than {@link #size()}
+	 */
+	public double match(FingerprintMatcher matcher, int index) {
+		Objects.requireNonNull(matcher);
+		return matcher.match(get(index));
+	}
+	/*
+	 * Templates sorted by estimated cost, most expensive first, with cumulative costs for splitting the sequence into chunks of equal cost.
+	 * Expensive templates are matched first, so that the end of the search consists of cheap templates that even out finishing times of threads.
+	 */
+	private static class Schedule {
+		final int count;
+		final int[] order;
+		final long[] cumulative;
+		Schedule(int count, char[] costs) {
+			this.count = count;
+			order = new int[count];
+			cumulative = new long[count + 1];
+			/*
+			 * Counting sort, because costs are small integers. It is stable, so templates of equal cost stay in insertion order.
+			 */
+			int max = 0;
+			for (int i = 0; i < count; ++i)
+				max = Math.max(max, costs[i]);
+			int[] offsets = new int[max + 2];
+			for (int i = 0; i < count; ++i)
+				++offsets[max - costs[i] + 1];
+			for (int i = 1; i < offsets.length; ++i)
+				offsets[i] += offsets[i - 1];
+			for (int i = 0; i < count; ++i)
+				order[offsets[max - costs[i]]++] = i;
+			for (int i = 0; i < count; ++i)
+				cumulative[i + 1] = cumulative[i] + costs[order[i]];
+		}
+	}
+	private Schedule schedule(int size) {
+		var current = schedule;
+		if (current == null || current.count != size)
+			schedule = current = new Schedule(size, costs);
+		return current;
+	}
+	/*
+	 * Work-stealing task that splits its part of the schedule in halves of equal estimated cost until it is small enough.
+	 * Idle threads steal the largest pending halves, so all threads finish at about the same time.
+	 */
+	@SuppressWarnings("serial")
+	private class Chunk extends RecursiveTask<PriorityQueue<FingerprintHit>> {
+		final FingerprintMatcher matcher;
+		final Schedule schedule;
+		final int limit;
+		final double threshold;
+		final BooleanSupplier expired;
+		final long grain;
+		final int start;
+		final int end;
+		Chunk(FingerprintMatcher matcher, Schedule schedule, int limit, double threshold, BooleanSupplier expired, long grain, int start, int end) {
+			this.matcher = matcher;
+			this.schedule = schedule;
+			this.limit = limit;
+			this.threshold = threshold;
+			this.expired = expired;
+			this.grain = grain;
+			this.start = start;
+			this.end = end;
+		}
+		@Override
+		protected PriorityQueue<FingerprintHit> compute() {
+			var cumulative = schedule.cumulative;
+			if (end - start < 2 || cumulative[end] - cumulative[start] <= grain)
+				return scan(matcher, schedule, limit, threshold, expired, start, end);
+			long half = (cumulative[start] + cumulative[end]) / 2;
+			int middle = Arrays.binarySearch(cumulative, start + 1, end, half);
+			if (middle < 0)
+				middle = -middle - 1;
+			var right = new Chunk(matcher, schedule, limit, threshold, expired, grain, middle, end);
+			right.fork();
+			var hits = new Chunk(matcher, schedule, limit, threshold, expired, grain, start, middle).compute();
+			for (var hit : right.join())
+				offer(hits, hit, limit);
+			return hits;
+		}
+	}
+	/*
+	 * Min-heap of the best hits. Worst hit is at the top, ready to be replaced.
+	 */
+	private static void offer(PriorityQueue<FingerprintHit> heap, FingerprintHit hit, int limit) {
+		if (heap.size() < limit || FingerprintHit.RANKING.compare(hit, heap.peek()) < 0) {
+			heap.add(hit);
+			if (heap.size() > limit)
+				heap.remove();
+		}
+	}
+	private PriorityQueue<FingerprintHit> scan(FingerprintMatcher matcher, Schedule schedule, int limit, double threshold, BooleanSupplier expired, int start, int end) {
+		var heap = new PriorityQueue<FingerprintHit>(FingerprintHit.RANKING.reversed());
+		/*
+		 * Checking expiration before every match is cheap compared to the match itself.
+		 */
+		for (int i = start; i < end && !expired.getAsBoolean(); ++i) {
+			int index = schedule.order[i];
+			double score = match(matcher, index);
+			if (score >= threshold)
+				offer(heap, new FingerprintHit(index, score), limit);
+		}
+		return heap;
+	}
+	/**
+	 * Matches all templates in the gallery with the probe in parallel and returns the best of them.
+	 * Templates added while the search is running are not searched.
+	 * <p>
+	 * Matching takes longer for templates with more minutiae.
+	 * Gallery therefore records estimated matching cost of every template when it is added.
+	 * Search splits the gallery into chunks of equal estimated cost, which are distributed among threads of {@link ForkJoinPool#commonPool()}
+	 * by work stealing, and it matches expensive templates first.
+	 * Threads then finish at about the same time instead of waiting for the thread that got the most expensive templates.
+	 *
+	 * @param matcher
+	 *            matcher representing probe template
+	 * @param limit
+	 *            maximum number of returned templates
+	 * @param threshold
+	 *            minimum score of returned templates
+	 * @return at most {@code limit} templates scoring at least {@code threshold}, best template first
+	 * @throws NullPointerException
+	 *             if {@code matcher} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code limit} is negative
+	 */
+	public List<FingerprintHit> search(FingerprintMatcher matcher, int limit, double threshold) {
+		return search(matcher, limit, threshold, () -> false);
+	}
+	/**
+	 * Matches templates in the gallery with the probe in parallel until the timeout elapses.
+	 * This method behaves like {@link #search(FingerprintMatcher, int, double)},
+	 * but when the timeout elapses, it stops matching and returns the best of the templates matched so far.
+	 * Since expensive templates are matched first, partial results are biased toward templates with many minutiae.
+	 *
+	 * @param matcher
+	 *            matcher representing probe template
+	 * @param limit
+	 *            maximum number of returned templates
+	 * @param threshold
+	 *            minimum score of returned templates
+	 * @param timeout
+	 *            time allowed for the search
+	 * @return at most {@code limit} templates scoring at least {@code threshold}, best template first
+	 * @throws NullPointerException
+	 *             if {@code matcher} or {@code timeout} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code limit} is negative
+	 */
+	public List<FingerprintHit> search(FingerprintMatcher matcher, int limit, double threshold, Duration timeout) {
+		return search(matcher, limit, threshold, Deadline.after(timeout)::expired);
+	}
+	List<FingerprintHit> search(FingerprintMatcher matcher, int limit, double threshold, BooleanSupplier expired) {
+		Objects.requireNonNull(matcher);
+		if (limit < 0)
+			throw new IllegalArgumentException("Negative limit.");
+		int size = count;
+		if (limit == 0 || size == 0)
+			return new ArrayList<>();
+		var schedule = schedule(size);
+		PriorityQueue<FingerprintHit> heap;
+		int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		/*
+		 * Single-core machines gain nothing from splitting.
+		 */
+		if (parallelism < 2)
+			heap = scan(matcher, schedule, limit, threshold, expired, 0, size);
+		else {
+			/*
+			 * Several chunks per thread, so that stealing can compensate for errors in cost estimates.
+			 */
+			long grain = Math.max(1, schedule.cumulative[size] / (16 * parallelism));
+			heap = new Chunk(matcher, schedule, limit, threshold, expired, grain, 0, size).invoke();
+		}
+		var hits = new ArrayList<>(heap);
+		hits.sort(FingerprintHit.RANKING);
+		return hits;
+	}
+	/**
+	 * Gets the size of stored templates in off-heap memory.
+	 *
+	 * @return total size of stored templates in bytes
+	 */
+	public synchronized long bytes() {
+		return bytes;
+	}
+	/**
+	 * Gets the amount of off-heap memory allocated by this gallery.
+	 * This includes unused space at the end of slabs.
+	 *
+	 * @return total capacity of allocated slabs in bytes
+	 */
+	public synchronized long reserved() {
+		return reserved;
+	}
+	/**
+	 * Estimates memory footprint of this object on Java heap.
+	 * Off-heap memory reported by {@link #reserved()} is not included.
+	 *
+	 * @return estimated heap memory footprint in bytes
+	 */
+	public long memory() {
+		/*
+		 * Buffer objects are few and small. Only the position table, cost table, and search schedule grow with gallery size.
+		 */
+		var current = schedule;
+		return MemoryEstimates.object(4 * MemoryEstimates.REFERENCE + Integer.BYTES + 5 * Long.BYTES, Long.BYTES)
+			+ MemoryEstimates.array(Long.BYTES, positions.length)
+			+ MemoryEstimates.array(Character.BYTES, costs.length)
+			+ MemoryEstimates.array(MemoryEstimates.REFERENCE, slabs.length)
+			+ (current != null
+				? MemoryEstimates.object(2 * MemoryEstimates.REFERENCE + Integer.BYTES, MemoryEstimates.REFERENCE)
+					+ MemoryEstimates.array(Integer.BYTES, current.order.length)
+					+ MemoryEstimates.array(Long.BYTES, current.cumulative.length)
+				: 0);
+	}
+}
@@ -0,0 +1,45 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.util.*;
+
+/**
+ * Candidate found in 1:N identification.
+ * Candidate is identified by its position in the searched list of candidates.
+ *
+ * @see FingerprintCascade#identify(FingerprintTemplate, java.util.List)
+ * @see FingerprintScan#search(FingerprintMatcher, Spliterator)
+ */
+public class FingerprintHit {
+	/*
+	 * Best hit first. Ties are broken by index, so that results are deterministic.
+	 */
+	static final Comparator<FingerprintHit> RANKING = Comparator.comparingDouble(FingerprintHit::score).reversed().thenComparingInt(FingerprintHit::index);
+	private final int index;
+	private final double score;
+	FingerprintHit(int index, double score) {
+		this.index = index;
+		this.score = score;
+	}
+	/**
+	 * Gets position of the candidate in the searched list of candidates.
+	 *
+	 * @return zero-based index of the candidate
+	 */
+	public int index() {
+		return index;
+	}
+	/**
+	 * Gets similarity score between probe and the candidate.
+	 * The score has the same meaning as score returned by {@link FingerprintMatcher#match(FingerprintTemplate)}.
+	 *
+	 * @return similarity score
+	 */
+	public double score() {
+		return score;
+	}
+	@Override
+	public String toString() {
+		return String.format("#%d @ %.2f", index, score);
+	}
+}
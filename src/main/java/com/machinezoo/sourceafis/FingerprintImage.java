@@ -1,6 +1,7 @@
 // Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
 package com.machinezoo.sourceafis;
 
+import java.nio.*;
 import java.util.*;
 import javax.imageio.*;
 import com.machinezoo.sourceafis.engine.configuration.*;
@@ -99,6 +100,48 @@ public class FingerprintImage {
 	public FingerprintImage(byte[] image) {
 		this(image, null);
 	}
+	/**
+	 * Decodes fingerprint image in standard format from {@link ByteBuffer}.
+	 * This constructor reads encoded image between buffer's position and limit.
+	 * It is otherwise equivalent to {@link #FingerprintImage(byte[], FingerprintImageOptions)}.
+	 * Buffer's position, limit, and contents are not modified.
+	 * <p>
+	 * Image decoders require byte array input. Heap buffer that spans its whole backing array is used directly.
+	 * Other buffers, including direct buffers, are copied.
+	 * 
+	 * @param image
+	 *            buffer containing fingerprint image in one of the supported formats
+	 * @param options
+	 *            additional information about the image or {@code null} for default options
+	 * @throws NullPointerException
+	 *             if {@code image} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if the image format is unsupported or the image is corrupted
+	 * 
+	 * @see #FingerprintImage(byte[], FingerprintImageOptions)
+	 * @see FingerprintTemplate#FingerprintTemplate(ByteBuffer)
+	 */
+	public FingerprintImage(ByteBuffer image, FingerprintImageOptions options) {
+		this(ByteBuffers.array(Objects.requireNonNull(image)), options);
+	}
+	/**
+	 * Decodes fingerprint image in standard format from {@link ByteBuffer} using default options.
+	 * This constructor is equivalent to calling {@link #FingerprintImage(ByteBuffer, FingerprintImageOptions)}
+	 * with default {@link FingerprintImageOptions}.
+	 * 
+	 * @param image
+	 *            buffer containing fingerprint image in one of the supported formats
+	 * @throws NullPointerException
+	 *             if {@code image} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if the image format is unsupported or the image is corrupted
+	 * 
+	 * @see #FingerprintImage(ByteBuffer, FingerprintImageOptions)
+	 * @see #FingerprintImage(byte[])
+	 */
+	public FingerprintImage(ByteBuffer image) {
+		this(image, null);
+	}
 	/**
 	 * Reads raw grayscale fingerprint image from byte array.
 	 * The image must contain black fingerprint on white background
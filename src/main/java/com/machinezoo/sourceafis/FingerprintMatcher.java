@@ -1,6 +1,7 @@
 // Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
 package com.machinezoo.sourceafis;
 
+import java.nio.*;
 import java.util.*;
 import com.machinezoo.sourceafis.engine.matcher.*;
 import com.machinezoo.sourceafis.engine.primitives.*;
@@ -13,6 +14,11 @@ import com.machinezoo.sourceafis.engine.templates.*;
  * <p>
  * New matcher is created by passing probe fingerprint template to {@link #FingerprintMatcher(FingerprintTemplate)} constructor.
  * Candidate fingerprint templates are then passed one by one to {@link #match(FingerprintTemplate)} method.
+ * <p>
+ * Prepared matcher can be serialized with {@link #toByteArray()} and loaded in another process
+ * with {@link #FingerprintMatcher(byte[])} or {@link #FingerprintMatcher(ByteBuffer, FingerprintMatcherOptions)}.
+ * Loading is much faster than building the matcher from a template,
+ * which is useful when one probe is searched by many worker processes.
  * 
  * @see <a href="https://sourceafis.machinezoo.com/java">SourceAFIS for Java tutorial</a>
  * @see FingerprintTemplate
@@ -20,15 +26,10 @@ import com.machinezoo.sourceafis.engine.templates.*;
 public class FingerprintMatcher {
     /*
      * API roadmap:
-     * + FingerprintMatcher(FingerprintTemplate, FingerprintMatcherOptions)
      * + compare(FingerprintTemplate) - returns match log-odds in bits instead of current score, may be negative
      * - match(FingerprintTemplate)
      * + maybe features to support 1:N identification (parallelization, score adjustment, person model, ...)
      * 
-     * FingerprintMatcherOptions:
-     * + matchX(boolean) - enable or disable various parts of the matcher for performance reasons
-     * + processorBudget(double) - automated feature/algorithm selection to target "average" compute cost per candidate
-     * 
      * FingerprintEvidence:
      * = calculation of effective score in multi-finger or 1:N matching
      * + add(double)
@@ -39,6 +40,7 @@ public class FingerprintMatcher {
      * + thresholdAtFMR(double) - might have variant, still unclear
      */
     private volatile Probe probe = Probe.NULL;
+    private final MatcherBudget budget;
     /**
      * Creates fingerprint template representation optimized for fast 1:N matching.
      * Once the probe template is processed, candidate templates can be compared to it
@@ -55,16 +57,93 @@ public class FingerprintMatcher {
      * @see #match(FingerprintTemplate)
      */
     public FingerprintMatcher(FingerprintTemplate probe) {
+        this(probe, null);
+    }
+    /**
+     * Creates fingerprint template representation optimized for fast 1:N matching with custom matcher options.
+     * This constructor behaves like {@link #FingerprintMatcher(FingerprintTemplate)},
+     * but effort spent on every candidate is limited as configured in {@code options}.
+     * Options are copied, so later changes to {@code options} do not affect this matcher.
+     * 
+     * @param probe
+     *            probe fingerprint template to be matched to candidate fingerprints
+     * @param options
+     *            matcher options or {@code null} for default options
+     * @throws NullPointerException
+     *             if {@code probe} is {@code null}
+     * 
+     * @see FingerprintMatcherOptions
+     * @see #match(FingerprintTemplate)
+     */
+    public FingerprintMatcher(FingerprintTemplate probe, FingerprintMatcherOptions options) {
         Objects.requireNonNull(probe);
+        budget = options != null ? options.budget() : MatcherBudget.DEFAULT;
         SearchTemplate template = probe.inner;
         this.probe = new Probe(template, EdgeHashes.build(template));
     }
+    /*
+     * Matcher with different options sharing already built probe, which spares another EdgeHashes.build().
+     */
+    FingerprintMatcher(Probe probe, FingerprintMatcherOptions options) {
+        budget = options != null ? options.budget() : MatcherBudget.DEFAULT;
+        this.probe = probe;
+    }
+    /**
+     * Loads matcher serialized by {@link #toByteArray()}.
+     * Loaded matcher uses default options and it produces the same scores as the serialized matcher.
+     * <p>
+     * Loading is mostly bulk copying. It is several times faster than {@link #FingerprintMatcher(FingerprintTemplate)},
+     * because search structures of the probe are stored in serialized form instead of being rebuilt.
+     * 
+     * @param serialized
+     *            serialized matcher produced by {@link #toByteArray()}
+     * @throws NullPointerException
+     *             if {@code serialized} is {@code null}
+     * @throws IllegalArgumentException
+     *             if {@code serialized} is not a serialized matcher or it is corrupted
+     * 
+     * @see #toByteArray()
+     * @see #FingerprintMatcher(ByteBuffer, FingerprintMatcherOptions)
+     */
+    public FingerprintMatcher(byte[] serialized) {
+        this(serialized != null ? ByteBuffer.wrap(serialized) : null, null);
+    }
+    /**
+     * Loads matcher serialized by {@link #toByteArray()} from {@link ByteBuffer} with custom matcher options.
+     * This constructor reads serialized matcher between buffer's position and limit.
+     * It is otherwise equivalent to {@link #FingerprintMatcher(byte[])}.
+     * <p>
+     * Both heap and direct buffers are accepted, including memory-mapped files.
+     * Buffer's position, limit, and contents are not modified.
+     * Options are not part of the serialized matcher, because they are chosen by the process that runs the matcher.
+     * 
+     * @param serialized
+     *            buffer containing serialized matcher produced by {@link #toByteArray()}
+     * @param options
+     *            matcher options or {@code null} for default options
+     * @throws NullPointerException
+     *             if {@code serialized} is {@code null}
+     * @throws IllegalArgumentException
+     *             if {@code serialized} is not a serialized matcher, it is corrupted, or it is followed by trailing data
+     * 
+     * @see #toByteArray()
+     */
+    public FingerprintMatcher(ByteBuffer serialized, FingerprintMatcherOptions options) {
+        Objects.requireNonNull(serialized);
+        budget = options != null ? options.budget() : MatcherBudget.DEFAULT;
+        var buffer = serialized.duplicate();
+        probe = ProbeFormat.decode(buffer);
+        if (buffer.hasRemaining())
+            throw new IllegalArgumentException("Trailing data in serialized matcher.");
+    }
     /**
      * @deprecated Use {@link #FingerprintMatcher(FingerprintTemplate)} constructor to fully initialize the matcher.
      * 
      * @see #FingerprintMatcher(FingerprintTemplate)
      */
-    @Deprecated public FingerprintMatcher() {}
+    @Deprecated public FingerprintMatcher() {
+        budget = MatcherBudget.DEFAULT;
+    }
     /**
      * @deprecated Use thread-local instance of {@link FingerprintTransparency} instead.
      * 
@@ -117,8 +196,29 @@ public class FingerprintMatcher {
      */
     public double match(FingerprintTemplate candidate) {
         Objects.requireNonNull(candidate);
-        return MatcherEngine.match(probe, candidate.inner);
+        var sampler = FingerprintSampler.active;
+        if (sampler != null && sampler.sampleMatch())
+            return sampler.capture("match", () -> MatcherEngine.match(probe, candidate.inner, budget));
+        return MatcherEngine.match(probe, candidate.inner, budget);
     }
+    /**
+     * Serializes the matcher, so that it can be loaded in another process without rebuilding it.
+     * Serialized matcher contains the probe template and search structures derived from it.
+     * Matcher options are not serialized.
+     * <p>
+     * Serialized matcher is a little-endian binary format that is larger than serialized template, about 250KB for typical probe.
+     * It is intended for transfer between processes running the same version of SourceAFIS, not for long-term storage.
+     * Store probe templates instead and rebuild the matcher when SourceAFIS is upgraded.
+     * 
+     * @return serialized matcher in binary format
+     * 
+     * @see #FingerprintMatcher(byte[])
+     * @see #FingerprintMatcher(ByteBuffer, FingerprintMatcherOptions)
+     */
+    public byte[] toByteArray() {
+        return ProbeFormat.encode(probe);
+    }
+    Probe probe() { return probe; }
     /**
      * Estimates memory footprint of this object.
      * This is a deep estimate, including all nested objects.
@@ -126,5 +226,9 @@ public class FingerprintMatcher {
      * 
      * @return estimated memory footprint of this object in bytes
      */
-    public int memory() { return MemoryEstimates.object(MemoryEstimates.REFERENCE, MemoryEstimates.REFERENCE) + probe.memory(); }
+    public int memory() {
+        return MemoryEstimates.object(2 * MemoryEstimates.REFERENCE, MemoryEstimates.REFERENCE)
+            + MemoryEstimates.object(3 * Integer.BYTES + 1, Integer.BYTES)
+            + probe.memory();
+    }
 }
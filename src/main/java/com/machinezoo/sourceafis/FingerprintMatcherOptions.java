@@ -0,0 +1,141 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import com.machinezoo.sourceafis.engine.configuration.*;
+import com.machinezoo.sourceafis.engine.matcher.*;
+
+/**
+ * Limits on effort spent by {@link FingerprintMatcher} on every candidate.
+ * {@code FingerprintMatcherOptions} can be passed to {@link FingerprintMatcher} constructor
+ * to trade accuracy for speed, for example to quickly screen large gallery before matching the best candidates with default options.
+ * <p>
+ * Default options reproduce the standard matcher and its calibrated scores.
+ * Named profiles {@link #screening()}, {@link #balanced()}, and {@link #thorough()} are a good starting point.
+ * Individual limits can be then adjusted by calling methods of this class.
+ * Reduced limits lower the cost of every match, but they also lower scores of some matching fingerprints,
+ * so score thresholds calibrated for default options do not apply to scores produced with reduced limits.
+ * <p>
+ * Some limits can only be lowered, because the corresponding data structures are precomputed with {@link FingerprintTemplate}.
+ * Higher values are silently capped at their defaults.
+ *
+ * @see FingerprintMatcher#FingerprintMatcher(FingerprintTemplate, FingerprintMatcherOptions)
+ */
+public class FingerprintMatcherOptions {
+	/*
+	 * API roadmap:
+	 * + processorBudget(double) - automated feature/algorithm selection to target "average" compute cost per candidate
+	 */
+	int maxRoots = Parameters.MAX_TRIED_ROOTS;
+	int maxRootLookups = Parameters.MAX_ROOT_EDGE_LOOKUPS;
+	int maxNeighbors = Parameters.EDGE_TABLE_NEIGHBORS;
+	boolean matchSupportingEdges = true;
+	/**
+	 * Initializes default options.
+	 * Default options are equivalent to {@link #thorough()} profile.
+	 * Call methods of this class to customize the options.
+	 */
+	public FingerprintMatcherOptions() {
+	}
+	/**
+	 * Creates options for fast screening of large galleries.
+	 * Matcher tries only few alignments of the fingerprints, searches for them in a small subset of edges,
+	 * and it ignores supporting edges when scoring.
+	 * It is several times faster than the default matcher, but its scores are noticeably lower and less reliable.
+	 * It is intended to produce a shortlist of candidates that are then matched with {@link #thorough()} options.
+	 *
+	 * @return new options for fast screening
+	 */
+	public static FingerprintMatcherOptions screening() {
+		return new FingerprintMatcherOptions()
+			.maxRoots(10)
+			.maxRootLookups(400)
+			.maxNeighbors(7)
+			.matchSupportingEdges(false);
+	}
+	/**
+	 * Creates options that balance speed and accuracy.
+	 * Matcher tries fewer alignments of the fingerprints than the default matcher, but scoring is unchanged.
+	 * Scores are identical to the default matcher for most matching fingerprints.
+	 *
+	 * @return new balanced options
+	 */
+	public static FingerprintMatcherOptions balanced() {
+		return new FingerprintMatcherOptions()
+			.maxRoots(25)
+			.maxRootLookups(800);
+	}
+	/**
+	 * Creates options for the most accurate matching.
+	 * This is the default matcher configuration.
+	 *
+	 * @return new default options
+	 */
+	public static FingerprintMatcherOptions thorough() {
+		return new FingerprintMatcherOptions();
+	}
+	/**
+	 * Sets maximum number of alignments (root pairs) that are tried for every candidate.
+	 * Cost of matching is roughly proportional to this number. Default is 70.
+	 *
+	 * @param maxRoots
+	 *            maximum number of root pairs tried for every candidate
+	 * @return {@code this} (fluent method)
+	 * @throws IllegalArgumentException
+	 *             if {@code maxRoots} is not positive
+	 */
+	public FingerprintMatcherOptions maxRoots(int maxRoots) {
+		if (maxRoots < 1)
+			throw new IllegalArgumentException();
+		this.maxRoots = maxRoots;
+		return this;
+	}
+	/**
+	 * Sets maximum number of candidate edges that are looked up in the probe while searching for root pairs.
+	 * Lower values limit search for root pairs in candidates with many minutiae.
+	 * Default (and maximum) is 1633.
+	 *
+	 * @param maxRootLookups
+	 *            maximum number of candidate edge lookups while enumerating root pairs
+	 * @return {@code this} (fluent method)
+	 * @throws IllegalArgumentException
+	 *             if {@code maxRootLookups} is not positive
+	 */
+	public FingerprintMatcherOptions maxRootLookups(int maxRootLookups) {
+		if (maxRootLookups < 1)
+			throw new IllegalArgumentException();
+		this.maxRootLookups = Math.min(maxRootLookups, Parameters.MAX_ROOT_EDGE_LOOKUPS);
+		return this;
+	}
+	/**
+	 * Sets number of nearest neighbors of every minutia that are explored when pairing minutiae.
+	 * Lower values make pairing faster, but fewer minutiae get paired. Default (and maximum) is 9.
+	 *
+	 * @param maxNeighbors
+	 *            number of nearest neighbors explored for every paired minutia
+	 * @return {@code this} (fluent method)
+	 * @throws IllegalArgumentException
+	 *             if {@code maxNeighbors} is not positive
+	 */
+	public FingerprintMatcherOptions maxNeighbors(int maxNeighbors) {
+		if (maxNeighbors < 1)
+			throw new IllegalArgumentException();
+		this.maxNeighbors = Math.min(maxNeighbors, Parameters.EDGE_TABLE_NEIGHBORS);
+		return this;
+	}
+	/**
+	 * Enables or disables supporting edges in scoring.
+	 * Supporting edges are edges between paired minutiae that were not used to pair them.
+	 * They contribute to the score, but their collection adds to the cost of pairing. Default is {@code true}.
+	 *
+	 * @param enabled
+	 *            {@code true} to include supporting edges in score, {@code false} to ignore them
+	 * @return {@code this} (fluent method)
+	 */
+	public FingerprintMatcherOptions matchSupportingEdges(boolean enabled) {
+		matchSupportingEdges = enabled;
+		return this;
+	}
+	MatcherBudget budget() {
+		return new MatcherBudget(maxRoots, maxRootLookups, maxNeighbors, matchSupportingEdges);
+	}
+}
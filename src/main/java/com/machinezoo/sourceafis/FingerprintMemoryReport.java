@@ -0,0 +1,214 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.util.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+import com.machinezoo.sourceafis.engine.templates.*;
+
+/**
+ * Aggregate memory footprint of templates, matchers, and galleries broken down by data structure.
+ * This is useful for capacity planning of nodes holding large number of templates.
+ * Add objects to the report by calling {@code add()} methods and then read totals for individual data structures.
+ * <p>
+ * Heap memory is estimated the same way as in {@link FingerprintTemplate#memory()} and {@link FingerprintMatcher#memory()}.
+ * Estimates depend on object layout of the running JVM, which is detected when the first estimate is computed.
+ * On HotSpot, object layout is read from JVM options (compressed references, compressed class pointers, object alignment).
+ * On other JVMs, reference size is measured by allocating test objects. Detected layout is described by {@link #layout()}.
+ * <p>
+ * Breakdown categories partition the total, i.e. {@link #minutiae()}, {@link #edges()}, {@link #roots()},
+ * {@link #hashes()}, and {@link #other()} add up to {@link #total()}.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @see FingerprintTemplate#memory()
+ * @see FingerprintMatcher#memory()
+ * @see FingerprintGallery
+ */
+public class FingerprintMemoryReport {
+	private long templates;
+	private long heap;
+	private long offHeap;
+	private long minutiae;
+	private long edges;
+	private long roots;
+	private long hashes;
+	/**
+	 * Creates new empty report.
+	 */
+	public FingerprintMemoryReport() {
+	}
+	private void add(SearchTemplate template, boolean candidate) {
+		++templates;
+		minutiae += template.minutiaMemory();
+		edges += template.edgeMemory();
+		if (candidate)
+			roots += template.rootMemory();
+	}
+	/**
+	 * Adds template to the report.
+	 * Edge tables, which are built on first match, are included even if they have not been built yet.
+	 * Root edge sequences are included only after they are cached, which happens when the template is matched repeatedly.
+	 *
+	 * @param template
+	 *            template to add
+	 * @return {@code this} (fluent method)
+	 * @throws NullPointerException
+	 *             if {@code template} is {@code null}
+	 */
+	public FingerprintMemoryReport add(FingerprintTemplate template) {
+		add(template.inner, true);
+		heap += template.memory();
+		return this;
+	}
+	/**
+	 * Adds matcher to the report. This includes the probe template held by the matcher.
+	 * Root edge sequences are never counted for probe templates, because matchers do not use them.
+	 *
+	 * @param matcher
+	 *            matcher to add
+	 * @return {@code this} (fluent method)
+	 * @throws NullPointerException
+	 *             if {@code matcher} is {@code null}
+	 */
+	public FingerprintMemoryReport add(FingerprintMatcher matcher) {
+		var probe = matcher.probe();
+		add(probe.template, false);
+		hashes += probe.hashMemory();
+		heap += matcher.memory();
+		return this;
+	}
+	/**
+	 * Adds all templates in the gallery to the report.
+	 * Off-heap memory is reported separately from heap memory.
+	 * Unused space at the end of allocated off-heap slabs is reported in {@link #other()}.
+	 *
+	 * @param gallery
+	 *            gallery to add
+	 * @return {@code this} (fluent method)
+	 * @throws NullPointerException
+	 *             if {@code gallery} is {@code null}
+	 */
+	public FingerprintMemoryReport add(FingerprintGallery gallery) {
+		synchronized (gallery) {
+			templates += gallery.size();
+			minutiae += gallery.minutiaBytes;
+			edges += gallery.edgeBytes;
+			roots += gallery.rootBytes;
+			offHeap += gallery.reserved();
+		}
+		heap += gallery.memory();
+		return this;
+	}
+	/**
+	 * Adds all templates in the collection to the report.
+	 *
+	 * @param templates
+	 *            templates to add
+	 * @return {@code this} (fluent method)
+	 * @throws NullPointerException
+	 *             if {@code templates} or any template is {@code null}
+	 */
+	public FingerprintMemoryReport addAll(Collection<FingerprintTemplate> templates) {
+		for (var template : templates)
+			add(template);
+		return this;
+	}
+	/**
+	 * Gets the number of templates in the report, including probe templates of matchers and templates stored in galleries.
+	 *
+	 * @return number of templates
+	 */
+	public long templates() {
+		return templates;
+	}
+	/**
+	 * Gets estimated heap memory.
+	 *
+	 * @return heap memory in bytes
+	 */
+	public long heap() {
+		return heap;
+	}
+	/**
+	 * Gets off-heap memory allocated by galleries.
+	 *
+	 * @return off-heap memory in bytes
+	 */
+	public long offHeap() {
+		return offHeap;
+	}
+	/**
+	 * Gets total memory, i.e. the sum of {@link #heap()} and {@link #offHeap()}.
+	 *
+	 * @return total memory in bytes
+	 */
+	public long total() {
+		return heap + offHeap;
+	}
+	/**
+	 * Gets memory taken by minutiae.
+	 *
+	 * @return memory taken by minutiae in bytes
+	 */
+	public long minutiae() {
+		return minutiae;
+	}
+	/**
+	 * Gets memory taken by edge tables, which link every minutia to its nearest neighbors.
+	 *
+	 * @return memory taken by edge tables in bytes
+	 */
+	public long edges() {
+		return edges;
+	}
+	/**
+	 * Gets memory taken by precomputed sequences of candidate edges used to find initial minutia pairs during matching.
+	 *
+	 * @return memory taken by root edge sequences in bytes
+	 */
+	public long roots() {
+		return roots;
+	}
+	/**
+	 * Gets memory taken by edge hash tables of matchers.
+	 *
+	 * @return memory taken by hash tables in bytes
+	 */
+	public long hashes() {
+		return hashes;
+	}
+	/**
+	 * Gets memory not covered by other categories, for example object headers, indexes, and unused off-heap space.
+	 *
+	 * @return remaining memory in bytes
+	 */
+	public long other() {
+		return total() - minutiae - edges - roots - hashes;
+	}
+	/**
+	 * Describes object layout of the running JVM that is assumed by heap memory estimates.
+	 * Description includes reference size, object header size, and object alignment
+	 * as well as information whether the layout was read from JVM options, measured, or assumed.
+	 *
+	 * @return human-readable description of object layout
+	 */
+	public static String layout() {
+		return MemoryEstimates.describe();
+	}
+	private static String row(String name, long bytes, long total) {
+		return String.format("%-10s %,15d B %5.1f%%%n", name, bytes, total > 0 ? 100.0 * bytes / total : 0);
+	}
+	@Override
+	public String toString() {
+		long total = total();
+		return String.format("%,d templates, %s%n", templates, layout())
+			+ row("minutiae", minutiae, total)
+			+ row("edges", edges, total)
+			+ row("roots", roots, total)
+			+ row("hashes", hashes, total)
+			+ row("other", other(), total)
+			+ row("heap", heap, total)
+			+ row("off-heap", offHeap, total)
+			+ row("total", total, total);
+	}
+}
@@ -0,0 +1,219 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.regex.*;
+import java.util.stream.*;
+import com.machinezoo.closeablescope.*;
+import com.machinezoo.sourceafis.engine.transparency.*;
+
+/**
+ * Global sampled capture of transparency data from production traffic.
+ * While {@code FingerprintSampler} is active, every feature extraction ({@link FingerprintTemplate#FingerprintTemplate(FingerprintImage)})
+ * and every match ({@link FingerprintMatcher#match(FingerprintTemplate)}) is randomly selected for capture with configured probability.
+ * Transparency data of selected operations is saved in a ZIP file (see {@link FingerprintTransparency#zip(OutputStream)}) in configured directory.
+ * <p>
+ * Decision whether to capture is made once at the start of every operation.
+ * Operations that are not selected pay only for a check of one global variable and a random number.
+ * No thread-local {@link FingerprintTransparency} is created for them.
+ * Operations running inside application's own {@link FingerprintTransparency} are never captured.
+ * <p>
+ * Directory is treated as a rolling log. Files are named {@code TIME-SEQ-KIND.zip}, where {@code TIME} is capture time in milliseconds,
+ * {@code SEQ} is sequence number, and {@code KIND} is either {@code extraction} or {@code match}.
+ * When total size of captured files in the directory exceeds configured capacity, the oldest files are deleted.
+ * Files left in the directory by previous instances are counted toward the capacity.
+ * Other files in the directory, including other ZIP files, are neither counted nor deleted.
+ * Existing files are never overwritten. If the file name is taken, next sequence number is used.
+ * <p>
+ * Captured operation is buffered in memory and written to disk after it completes.
+ * I/O errors are counted and reported by {@link #failures()}. They never affect the captured operation.
+ * <p>
+ * Only one sampler can be active at a time. Sampler is activated by its constructor and deactivated by {@link #close()}.
+ * This class is thread-safe.
+ *
+ * @see FingerprintTransparency
+ */
+public class FingerprintSampler implements CloseableScope {
+	static volatile FingerprintSampler active;
+	/*
+	 * Sequence number can outgrow its padding in long-running applications.
+	 */
+	private static final Pattern FILENAME = Pattern.compile("\\d{13}-\\d{6,}-(extraction|match)\\.zip");
+	private final Path directory;
+	private final double extractionRate;
+	private final double matchRate;
+	private final long capacity;
+	private final ArrayDeque<Path> files = new ArrayDeque<>();
+	private final Map<Path, Long> sizes = new HashMap<>();
+	private long size;
+	private long sequence;
+	private long captured;
+	private long evicted;
+	private long failures;
+	/**
+	 * Creates and activates new sampler.
+	 * Directory is created if it does not exist.
+	 *
+	 * @param directory
+	 *            directory where captured transparency data is saved
+	 * @param extractionRate
+	 *            probability that feature extraction will be captured, for example 0.0001 for one in 10,000
+	 * @param matchRate
+	 *            probability that match will be captured
+	 * @param capacity
+	 *            maximum total size of captured files in the directory in bytes
+	 * @throws NullPointerException
+	 *             if {@code directory} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if rates are not between 0 and 1 or capacity is negative
+	 * @throws IllegalStateException
+	 *             if another sampler is already active
+	 * @throws UncheckedIOException
+	 *             if the directory cannot be created or listed
+	 */
+	public FingerprintSampler(Path directory, double extractionRate, double matchRate, long capacity) {
+		Objects.requireNonNull(directory);
+		if (!(extractionRate >= 0 && extractionRate <= 1) || !(matchRate >= 0 && matchRate <= 1))
+			throw new IllegalArgumentException("Sampling rate must be between 0 and 1.");
+		if (capacity < 0)
+			throw new IllegalArgumentException("Negative capacity.");
+		this.directory = directory;
+		this.extractionRate = extractionRate;
+		this.matchRate = matchRate;
+		this.capacity = capacity;
+		try {
+			Files.createDirectories(directory);
+			try (Stream<Path> listing = Files.list(directory)) {
+				for (var file : listing.filter(f -> FILENAME.matcher(f.getFileName().toString()).matches()).sorted().collect(Collectors.toList()))
+					track(file, Files.size(file));
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		synchronized (FingerprintSampler.class) {
+			if (active != null)
+				throw new IllegalStateException("Another sampler is already active.");
+			active = this;
+		}
+		synchronized (this) {
+			evict();
+		}
+	}
+	private void track(Path file, long length) {
+		files.add(file);
+		sizes.put(file, length);
+		size += length;
+	}
+	private void evict() {
+		while (size > capacity && !files.isEmpty()) {
+			var oldest = files.remove();
+			size -= sizes.remove(oldest);
+			try {
+				Files.deleteIfExists(oldest);
+				++evicted;
+			} catch (IOException ex) {
+				++failures;
+			}
+		}
+	}
+	boolean sampleExtraction() {
+		return extractionRate > 0 && ThreadLocalRandom.current().nextDouble() < extractionRate;
+	}
+	boolean sampleMatch() {
+		return matchRate > 0 && ThreadLocalRandom.current().nextDouble() < matchRate;
+	}
+	/*
+	 * Runs the operation with transparency data captured in memory and then saves it in the directory.
+	 */
+	<T> T capture(String kind, Supplier<T> operation) {
+		/*
+		 * Application's own transparency takes precedence. This thread-local check is done only for sampled operations.
+		 */
+		if (TransparencySink.current() != NoTransparency.SINK)
+			return operation.get();
+		var buffer = new ByteArrayOutputStream();
+		T result;
+		try (var transparency = new TransparencyZip(buffer)) {
+			result = operation.get();
+		}
+		try {
+			Path file;
+			while (true) {
+				long id;
+				synchronized (this) {
+					id = ++sequence;
+				}
+				file = directory.resolve(String.format("%013d-%06d-%s.zip", System.currentTimeMillis(), id, kind));
+				try {
+					Files.write(file, buffer.toByteArray(), StandardOpenOption.CREATE_NEW);
+					break;
+				} catch (FileAlreadyExistsException ex) {
+					/*
+					 * Another process might be writing into the same directory. Retry with the next sequence number.
+					 */
+				}
+			}
+			synchronized (this) {
+				++captured;
+				track(file, buffer.size());
+				evict();
+			}
+		} catch (IOException ex) {
+			synchronized (this) {
+				++failures;
+			}
+		}
+		return result;
+	}
+	/**
+	 * Deactivates the sampler. Files in the directory are kept.
+	 */
+	@Override
+	public void close() {
+		synchronized (FingerprintSampler.class) {
+			if (active == this)
+				active = null;
+		}
+	}
+	/**
+	 * Gets the number of operations captured and saved by this sampler.
+	 *
+	 * @return number of captured operations
+	 */
+	public synchronized long captured() {
+		return captured;
+	}
+	/**
+	 * Gets the number of files deleted to keep the directory within its capacity.
+	 *
+	 * @return number of evicted files
+	 */
+	public synchronized long evicted() {
+		return evicted;
+	}
+	/**
+	 * Gets the number of I/O errors encountered while saving or deleting files.
+	 *
+	 * @return number of I/O errors
+	 */
+	public synchronized long failures() {
+		return failures;
+	}
+	/**
+	 * Gets total size of captured files in the directory as tracked by this sampler.
+	 * This never exceeds capacity after sampler finishes saving a file.
+	 *
+	 * @return total size of captured files in bytes
+	 */
+	public synchronized long size() {
+		return size;
+	}
+	@Override
+	public String toString() {
+		return String.format("%d captured, %d evicted, %d failures, %d bytes", captured(), evicted(), failures(), size());
+	}
+}
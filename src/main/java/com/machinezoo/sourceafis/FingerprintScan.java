@@ -0,0 +1,368 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.stream.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+
+/**
+ * Streaming 1:N identification over candidates that are too many to be held in memory.
+ * Candidates are serialized templates (see {@link FingerprintTemplate#FingerprintTemplate(byte[])})
+ * supplied by {@link Iterator}, {@link Stream}, or {@link Spliterator}, for example rows fetched from a database cursor
+ * or objects downloaded from object store.
+ * <p>
+ * Candidates are pulled from the source on dedicated reader threads, so that waiting for I/O overlaps with matching.
+ * Pulled candidates wait for matching in a bounded queue (see {@link #prefetch(int)}).
+ * Candidates are then deserialized and matched in parallel on {@link ForkJoinPool#commonPool()}.
+ * Only the best {@link #limit(int)} candidates are kept. Other candidates become garbage right after they are matched.
+ * Memory usage is therefore bounded regardless of the number of candidates,
+ * and scanning proceeds at the speed of the source or at the speed of matching, whichever is slower.
+ * <p>
+ * Candidates are identified by their position in the source. Hits are sorted by score, best candidate first.
+ * <p>
+ * Configuration methods are not thread-safe, but configured scan can be used by multiple threads concurrently.
+ *
+ * @see FingerprintHit
+ * @see FingerprintCascade
+ */
+public class FingerprintScan {
+	/*
+	 * Candidates are handed over between threads in batches, so that synchronization cost is negligible compared to matching.
+	 */
+	private static final int BATCH = 32;
+	int limit = 20;
+	double threshold = 0;
+	int prefetch = 1024;
+	int readers = 1;
+	/**
+	 * Initializes scan with default configuration.
+	 * Call methods of this class to customize the scan.
+	 */
+	public FingerprintScan() {
+	}
+	/**
+	 * Sets the maximum number of returned candidates. Default is 20.
+	 *
+	 * @param limit
+	 *            maximum number of returned candidates
+	 * @return {@code this} (fluent method)
+	 * @throws IllegalArgumentException
+	 *             if {@code limit} is not positive
+	 */
+	public FingerprintScan limit(int limit) {
+		if (limit < 1)
+			throw new IllegalArgumentException();
+		this.limit = limit;
+		return this;
+	}
+	/**
+	 * Sets minimum score for a candidate to be returned.
+	 * Default is zero, i.e. returned candidates are limited only by {@link #limit(int)}.
+	 *
+	 * @param threshold
+	 *            minimum score of returned candidates
+	 * @return {@code this} (fluent method)
+	 */
+	public FingerprintScan threshold(double threshold) {
+		this.threshold = threshold;
+		return this;
+	}
+	/**
+	 * Sets the number of candidates that can be pulled from the source ahead of matching. Default is 1024.
+	 * Larger prefetch smooths out variations in source latency at the cost of memory.
+	 * Some more candidates are held by threads that are matching them.
+	 *
+	 * @param candidates
+	 *            maximum number of candidates waiting for matching
+	 * @return {@code this} (fluent method)
+	 * @throws IllegalArgumentException
+	 *             if {@code candidates} is not positive
+	 */
+	public FingerprintScan prefetch(int candidates) {
+		if (candidates < 1)
+			throw new IllegalArgumentException();
+		prefetch = candidates;
+		return this;
+	}
+	/**
+	 * Sets the number of threads pulling candidates from the source. Default is 1.
+	 * Several readers are used only when source {@link Spliterator} can be split into parts of known size
+	 * (see {@link Spliterator#SUBSIZED}), because positions of candidates would be unknown otherwise.
+	 * Every part is then read concurrently by its own thread. Other sources are always read by a single thread.
+	 *
+	 * @param threads
+	 *            maximum number of reader threads
+	 * @return {@code this} (fluent method)
+	 * @throws IllegalArgumentException
+	 *             if {@code threads} is not positive
+	 */
+	public FingerprintScan readers(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException();
+		readers = threads;
+		return this;
+	}
+	/**
+	 * Searches candidates supplied by {@link Iterator}.
+	 * The iterator is read by a single reader thread.
+	 * This is otherwise equivalent to {@link #search(FingerprintMatcher, Spliterator)}.
+	 *
+	 * @param matcher
+	 *            matcher representing the probe
+	 * @param candidates
+	 *            serialized candidate templates
+	 * @return at most {@link #limit(int)} candidates scoring at least {@link #threshold(double)}, best candidate first
+	 * @throws NullPointerException
+	 *             if {@code matcher} or {@code candidates} or any candidate is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if any candidate is not a valid template
+	 */
+	public List<FingerprintHit> search(FingerprintMatcher matcher, Iterator<byte[]> candidates) {
+		return search(matcher, Spliterators.spliteratorUnknownSize(Objects.requireNonNull(candidates), Spliterator.ORDERED));
+	}
+	/**
+	 * Searches candidates supplied by {@link Stream}.
+	 * This is a terminal operation on the stream. The stream is not closed.
+	 * This is otherwise equivalent to {@link #search(FingerprintMatcher, Spliterator)}.
+	 *
+	 * @param matcher
+	 *            matcher representing the probe
+	 * @param candidates
+	 *            serialized candidate templates
+	 * @return at most {@link #limit(int)} candidates scoring at least {@link #threshold(double)}, best candidate first
+	 * @throws NullPointerException
+	 *             if {@code matcher} or {@code candidates} or any candidate is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if any candidate is not a valid template
+	 */
+	public List<FingerprintHit> search(FingerprintMatcher matcher, Stream<byte[]> candidates) {
+		return search(matcher, candidates.spliterator());
+	}
+	/**
+	 * Searches candidates supplied by {@link Spliterator}.
+	 * Characteristics and sizes of the spliterator are queried and it may be split on the calling thread before reading starts (see {@link #readers(int)}).
+	 * Elements are then read only from reader threads. Spliterator is not accessed anymore when this method returns.
+	 * <p>
+	 * If the source or matching throws, scan is stopped and the exception is rethrown from this method.
+	 * Candidates that are not valid templates cause {@link IllegalArgumentException}.
+	 *
+	 * @param matcher
+	 *            matcher representing the probe
+	 * @param candidates
+	 *            serialized candidate templates
+	 * @return at most {@link #limit(int)} candidates scoring at least {@link #threshold(double)}, best candidate first
+	 * @throws NullPointerException
+	 *             if {@code matcher} or {@code candidates} or any candidate is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if any candidate is not a valid template or there are more than {@link Integer#MAX_VALUE} candidates
+	 */
+	public List<FingerprintHit> search(FingerprintMatcher matcher, Spliterator<byte[]> candidates) {
+		Objects.requireNonNull(matcher);
+		Objects.requireNonNull(candidates);
+		var scan = new Scan(Math.max(1, prefetch / BATCH));
+		var threads = new ArrayList<Thread>();
+		var parts = split(candidates);
+		scan.active.set(parts.size());
+		for (var part : parts) {
+			var thread = new Thread(() -> scan.read(part), "sourceafis-scan");
+			thread.setDaemon(true);
+			threads.add(thread);
+		}
+		/*
+		 * Min-heap of the best hits. Worst hit is at the top, ready to be replaced.
+		 */
+		var heap = new PriorityQueue<FingerprintHit>(FingerprintHit.RANKING.reversed());
+		try {
+			for (var thread : threads)
+				thread.start();
+			ParallelPipeline.run(scan, batch -> match(matcher, batch), hits -> {
+				for (var hit : hits) {
+					if (heap.size() < limit || FingerprintHit.RANKING.compare(hit, heap.peek()) < 0) {
+						heap.add(hit);
+						if (heap.size() > limit)
+							heap.remove();
+					}
+				}
+			});
+		} finally {
+			scan.stop(threads);
+		}
+		scan.rethrow();
+		var hits = new ArrayList<>(heap);
+		hits.sort(FingerprintHit.RANKING);
+		return hits;
+	}
+	private List<FingerprintHit> match(FingerprintMatcher matcher, Batch batch) {
+		var hits = new ArrayList<FingerprintHit>();
+		for (int i = 0; i < batch.size; ++i) {
+			double score = matcher.match(new FingerprintTemplate(Objects.requireNonNull(batch.candidates[i])));
+			if (score >= threshold)
+				hits.add(new FingerprintHit(batch.offset + i, score));
+		}
+		return hits;
+	}
+	private static class Part {
+		final Spliterator<byte[]> candidates;
+		final long offset;
+		Part(Spliterator<byte[]> candidates, long offset) {
+			this.candidates = candidates;
+			this.offset = offset;
+		}
+	}
+	/*
+	 * Splits the source only if sizes of all parts are known, so that every part knows position of its first candidate.
+	 * The largest part is split until there are enough parts or the source refuses to split further.
+	 */
+	private List<Part> split(Spliterator<byte[]> candidates) {
+		var parts = new ArrayList<Part>();
+		parts.add(new Part(candidates, 0));
+		if (!candidates.hasCharacteristics(Spliterator.SUBSIZED))
+			return parts;
+		while (parts.size() < readers) {
+			int largest = 0;
+			for (int i = 1; i < parts.size(); ++i)
+				if (parts.get(i).candidates.estimateSize() > parts.get(largest).candidates.estimateSize())
+					largest = i;
+			var part = parts.get(largest);
+			var prefix = part.candidates.trySplit();
+			if (prefix == null)
+				break;
+			parts.set(largest, new Part(part.candidates, part.offset + prefix.getExactSizeIfKnown()));
+			parts.add(largest, new Part(prefix, part.offset));
+		}
+		return parts;
+	}
+	private static class Batch {
+		final int offset;
+		final byte[][] candidates = new byte[BATCH][];
+		int size;
+		Batch(int offset) {
+			this.offset = offset;
+		}
+	}
+	private static final Batch END = new Batch(0);
+	/*
+	 * State shared by reader threads and the calling thread.
+	 * Calling thread consumes batches through the iterator interface, which is what ParallelPipeline expects.
+	 */
+	private static class Scan implements Iterator<Batch> {
+		final BlockingQueue<Batch> queue;
+		final AtomicInteger active = new AtomicInteger();
+		volatile boolean stopped;
+		volatile Throwable failure;
+		Batch next;
+		Scan(int capacity) {
+			queue = new ArrayBlockingQueue<>(capacity);
+		}
+		void read(Part part) {
+			try {
+				var reader = new Consumer<byte[]>() {
+					long position = part.offset;
+					Batch batch;
+					@Override
+					public void accept(byte[] candidate) {
+						if (position > Integer.MAX_VALUE)
+							throw new IllegalArgumentException("Too many candidates.");
+						if (batch == null)
+							batch = new Batch((int)position);
+						batch.candidates[batch.size++] = candidate;
+						++position;
+						if (batch.size == BATCH) {
+							deliver(batch);
+							batch = null;
+						}
+					}
+				};
+				while (!stopped && part.candidates.tryAdvance(reader))
+					;
+				if (reader.batch != null)
+					deliver(reader.batch);
+			} catch (Throwable ex) {
+				if (failure == null)
+					failure = ex;
+				stopped = true;
+			} finally {
+				/*
+				 * The last reader signals end of input. If the scan is stopped and the queue is full,
+				 * calling thread is not blocked and it will notice the stop on its own.
+				 */
+				if (active.decrementAndGet() == 0) {
+					try {
+						while (!queue.offer(END, 10, TimeUnit.MILLISECONDS) && !stopped)
+							;
+					} catch (InterruptedException ex) {
+						stopped = true;
+					}
+				}
+			}
+		}
+		/*
+		 * Blocks while the queue is full, but gives up when the scan is stopped, so that readers never hang.
+		 */
+		void deliver(Batch batch) {
+			try {
+				while (!stopped && !queue.offer(batch, 10, TimeUnit.MILLISECONDS))
+					;
+			} catch (InterruptedException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+		@Override
+		public boolean hasNext() {
+			while (next == null) {
+				/*
+				 * After failure, remaining batches are skipped. Failure is rethrown once the pipeline drains.
+				 */
+				if (stopped)
+					next = END;
+				else {
+					try {
+						next = queue.poll(10, TimeUnit.MILLISECONDS);
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						throw new IllegalStateException(ex);
+					}
+				}
+			}
+			return next != END;
+		}
+		@Override
+		public Batch next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			var batch = next;
+			next = null;
+			return batch;
+		}
+		/*
+		 * Readers are joined, so that the source is not accessed after search returns, for example after the caller closes it.
+		 */
+		void stop(List<Thread> threads) {
+			stopped = true;
+			queue.clear();
+			boolean interrupted = false;
+			for (var thread : threads) {
+				while (thread.isAlive()) {
+					try {
+						thread.join();
+					} catch (InterruptedException ex) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+		void rethrow() {
+			if (failure instanceof Error)
+				throw (Error)failure;
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException)failure;
+			if (failure != null)
+				throw new IllegalStateException(failure);
+		}
+	}
+}
@@ -0,0 +1,236 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.net.*;
+import java.nio.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import com.machinezoo.closeablescope.*;
+import com.machinezoo.sourceafis.engine.matcher.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+import com.machinezoo.sourceafis.engine.sharding.*;
+
+/**
+ * One partition of a gallery that is too large for a single machine.
+ * Every shard holds candidates whose IDs are routed to it by {@link FingerprintCluster#shard(String)}.
+ * Shards are searched in parallel by {@link FingerprintCluster} via {@link FingerprintShardTransport},
+ * either in the same process ({@link FingerprintShardTransport#local(List)})
+ * or over the network ({@link #serve(ServerSocket)} and {@link FingerprintShardTransport#sockets(List, java.time.Duration)}).
+ * <p>
+ * Candidates are stored in {@link FingerprintGallery}, i.e. outside of Java heap.
+ * <p>
+ * This class is thread-safe. Shard can be searched while other threads are adding candidates.
+ *
+ * @see FingerprintCluster
+ */
+public class FingerprintShard {
+	private final FingerprintGallery gallery = new FingerprintGallery();
+	/*
+	 * IDs are published before the gallery publishes the template, so readers that see the template also see its ID.
+	 */
+	private volatile String[] ids = new String[16];
+	/**
+	 * Creates new empty shard.
+	 */
+	public FingerprintShard() {
+	}
+	/**
+	 * Adds candidate to the shard.
+	 * Shard does not check whether the ID is routed to it or whether it is unique.
+	 *
+	 * @param id
+	 *            application-defined ID of the candidate, which is returned in search results
+	 * @param template
+	 *            candidate template
+	 * @throws NullPointerException
+	 *             if {@code id} or {@code template} is {@code null}
+	 */
+	public synchronized void add(String id, FingerprintTemplate template) {
+		Objects.requireNonNull(id);
+		Objects.requireNonNull(template);
+		int index = gallery.size();
+		var table = ids;
+		if (index == table.length)
+			table = Arrays.copyOf(table, 2 * table.length);
+		table[index] = id;
+		ids = table;
+		gallery.add(template);
+	}
+	/**
+	 * Gets the number of candidates in the shard.
+	 *
+	 * @return number of candidates
+	 */
+	public int size() {
+		return gallery.size();
+	}
+	/**
+	 * Matches all candidates in the shard with the probe and returns the best of them.
+	 * Candidates are matched in parallel as described in {@link FingerprintGallery#search(FingerprintMatcher, int, double)}.
+	 *
+	 * @param matcher
+	 *            matcher representing the probe
+	 * @param limit
+	 *            maximum number of returned candidates
+	 * @param threshold
+	 *            minimum score of returned candidates
+	 * @return at most {@code limit} candidates scoring at least {@code threshold}, best candidate first
+	 * @throws NullPointerException
+	 *             if {@code matcher} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code limit} is negative
+	 */
+	public List<FingerprintShardHit> search(FingerprintMatcher matcher, int limit, double threshold) {
+		return search(matcher, limit, threshold, () -> false);
+	}
+	/**
+	 * Matches all candidates in the shard with the probe unless the timeout elapses first.
+	 * This method behaves like {@link #search(FingerprintMatcher, int, double)},
+	 * but when the timeout elapses, it stops matching and throws {@link TimeoutException}.
+	 * Results of search that did not match all candidates are never returned, so that they cannot be mistaken for complete results.
+	 *
+	 * @param matcher
+	 *            matcher representing the probe
+	 * @param limit
+	 *            maximum number of returned candidates
+	 * @param threshold
+	 *            minimum score of returned candidates
+	 * @param timeout
+	 *            time allowed for the search
+	 * @return at most {@code limit} candidates scoring at least {@code threshold}, best candidate first
+	 * @throws NullPointerException
+	 *             if {@code matcher} or {@code timeout} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code limit} is negative
+	 * @throws TimeoutException
+	 *             if the timeout elapsed before all candidates were matched
+	 * @see FingerprintGallery#search(FingerprintMatcher, int, double, Duration)
+	 */
+	public List<FingerprintShardHit> search(FingerprintMatcher matcher, int limit, double threshold, Duration timeout) throws TimeoutException {
+		return complete(search(matcher, limit, threshold, Deadline.after(timeout)::expired));
+	}
+	private static List<FingerprintShardHit> complete(List<FingerprintShardHit> hits) throws TimeoutException {
+		if (hits == null)
+			throw new TimeoutException("Shard search did not finish before the deadline.");
+		return hits;
+	}
+	/*
+	 * Returns null if the search was cut off before all candidates were matched.
+	 */
+	private List<FingerprintShardHit> search(FingerprintMatcher matcher, int limit, double threshold, BooleanSupplier expired) {
+		Objects.requireNonNull(matcher);
+		if (limit < 0)
+			throw new IllegalArgumentException("Negative limit.");
+		/*
+		 * Gallery consults the condition only before matching another candidate, so positive answer means some candidates were skipped.
+		 */
+		var truncated = new AtomicBoolean();
+		var found = gallery.search(matcher, limit, threshold, () -> {
+			if (!expired.getAsBoolean())
+				return false;
+			truncated.set(true);
+			return true;
+		});
+		if (truncated.get())
+			return null;
+		/*
+		 * Read IDs after the search. IDs are published before templates, so this table has IDs of all templates the gallery has seen.
+		 */
+		var table = ids;
+		var hits = new ArrayList<FingerprintShardHit>();
+		for (var hit : found)
+			hits.add(new FingerprintShardHit(table[hit.index()], hit.score()));
+		hits.sort(FingerprintShardHit.RANKING);
+		return hits;
+	}
+	/**
+	 * Deserializes the probe and searches the shard.
+	 * Requests from {@link FingerprintCluster} carry a deadline and they are handled by {@link #search(byte[], int, double, Duration)} instead.
+	 * Probe can be either serialized template or serialized matcher.
+	 * Serialized matcher is loaded directly, which is faster than building matcher from template.
+	 *
+	 * @param probe
+	 *            serialized probe template in any format accepted by {@link FingerprintTemplate#FingerprintTemplate(byte[])}
+	 *            or serialized matcher produced by {@link FingerprintMatcher#toByteArray()}
+	 * @param limit
+	 *            maximum number of returned candidates
+	 * @param threshold
+	 *            minimum score of returned candidates
+	 * @return at most {@code limit} candidates scoring at least {@code threshold}, best candidate first
+	 * @throws NullPointerException
+	 *             if {@code probe} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code probe} is not a valid template or {@code limit} is negative
+	 * @see #search(FingerprintMatcher, int, double)
+	 */
+	public List<FingerprintShardHit> search(byte[] probe, int limit, double threshold) {
+		return search(Objects.requireNonNull(probe), limit, threshold, () -> false);
+	}
+	/**
+	 * Deserializes the probe and searches the shard unless the timeout elapses first.
+	 * This is how shards handle requests from {@link FingerprintCluster}, which passes time remaining until its deadline.
+	 * When the timeout elapses, search stops and {@link TimeoutException} is thrown.
+	 * Transports should report the exception to the cluster, which then counts the shard as timed out.
+	 *
+	 * @param probe
+	 *            serialized probe template in any format accepted by {@link FingerprintTemplate#FingerprintTemplate(byte[])}
+	 *            or serialized matcher produced by {@link FingerprintMatcher#toByteArray()}
+	 * @param limit
+	 *            maximum number of returned candidates
+	 * @param threshold
+	 *            minimum score of returned candidates
+	 * @param timeout
+	 *            time allowed for the search
+	 * @return at most {@code limit} candidates scoring at least {@code threshold}, best candidate first
+	 * @throws NullPointerException
+	 *             if {@code probe} or {@code timeout} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code probe} is not a valid template or {@code limit} is negative
+	 * @throws TimeoutException
+	 *             if the timeout elapsed before all candidates were matched
+	 * @see #search(FingerprintMatcher, int, double, Duration)
+	 */
+	public List<FingerprintShardHit> search(byte[] probe, int limit, double threshold, Duration timeout) throws TimeoutException {
+		return search(new ShardRequest(Objects.requireNonNull(probe), limit, threshold, Deadline.after(timeout)));
+	}
+	/*
+	 * Entry point for transports. Request carries the deadline and cancellation flag.
+	 */
+	List<FingerprintShardHit> search(ShardRequest request) throws TimeoutException {
+		return complete(search(request.probe, request.limit, request.threshold, request::expired));
+	}
+	private List<FingerprintShardHit> search(byte[] probe, int limit, double threshold, BooleanSupplier expired) {
+		if (limit < 0)
+			throw new IllegalArgumentException("Negative limit.");
+		/*
+		 * Request might have waited in the queue for too long. Do not bother building the matcher then.
+		 */
+		if (expired.getAsBoolean())
+			return null;
+		var matcher = ProbeFormat.accepts(ByteBuffer.wrap(probe)) ? new FingerprintMatcher(probe) : new FingerprintMatcher(new FingerprintTemplate(probe));
+		return search(matcher, limit, threshold, expired);
+	}
+	/**
+	 * Serves search requests arriving at the server socket.
+	 * Requests are sent by transport returned from {@link FingerprintShardTransport#sockets(List, java.time.Duration)}.
+	 * Every connection carries one request. Connections are accepted on a background thread and handled by a pool of background threads.
+	 * <p>
+	 * Protocol has no authentication or encryption. Server socket should be reachable only from trusted network.
+	 *
+	 * @param socket
+	 *            bound server socket, which is closed when the returned object is closed
+	 * @return handle that stops the server when closed
+	 * @throws NullPointerException
+	 *             if {@code socket} is {@code null}
+	 */
+	public CloseableScope serve(ServerSocket socket) {
+		return new ShardServer(Objects.requireNonNull(socket), this::search);
+	}
+	@Override
+	public String toString() {
+		return String.format("%d candidates", size());
+	}
+}
@@ -0,0 +1,56 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.util.*;
+
+/**
+ * Candidate found in sharded 1:N identification.
+ * Unlike {@link FingerprintHit}, candidate is identified by application-defined ID,
+ * because positions of candidates are not meaningful across shards.
+ *
+ * @see FingerprintShard#search(byte[], int, double)
+ * @see FingerprintCluster#search(FingerprintTemplate, int, double, java.time.Duration)
+ */
+public class FingerprintShardHit {
+	/*
+	 * Best candidate first. Ties are broken by ID, so that merged results do not depend on order in which shards respond.
+	 */
+	static final Comparator<FingerprintShardHit> RANKING = Comparator.comparingDouble(FingerprintShardHit::score).reversed().thenComparing(FingerprintShardHit::id);
+	private final String id;
+	private final double score;
+	/**
+	 * Creates new hit. This is used by {@link FingerprintShardTransport} implementations when decoding shard responses.
+	 *
+	 * @param id
+	 *            ID of the candidate
+	 * @param score
+	 *            similarity score between probe and the candidate
+	 * @throws NullPointerException
+	 *             if {@code id} is {@code null}
+	 */
+	public FingerprintShardHit(String id, double score) {
+		this.id = Objects.requireNonNull(id);
+		this.score = score;
+	}
+	/**
+	 * Gets ID of the candidate as passed to {@link FingerprintShard#add(String, FingerprintTemplate)}.
+	 *
+	 * @return candidate ID
+	 */
+	public String id() {
+		return id;
+	}
+	/**
+	 * Gets similarity score between probe and the candidate.
+	 * The score has the same meaning as score returned by {@link FingerprintMatcher#match(FingerprintTemplate)}.
+	 *
+	 * @return similarity score
+	 */
+	public double score() {
+		return score;
+	}
+	@Override
+	public String toString() {
+		return String.format("%s @ %.2f", id, score);
+	}
+}
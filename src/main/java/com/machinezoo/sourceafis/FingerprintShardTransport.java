@@ -0,0 +1,131 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.net.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import com.machinezoo.sourceafis.engine.sharding.*;
+
+/**
+ * Channel through which {@link FingerprintCluster} sends search requests to {@link FingerprintShard}s.
+ * Two implementations are provided: {@link #local(List)} for shards in the same process,
+ * which is useful for testing and for partitioning large gallery among cores of a large machine,
+ * and {@link #sockets(List, Duration)} for shards served by {@link FingerprintShard#serve(ServerSocket)} on other machines.
+ * Applications can implement this interface to route requests through their own RPC framework.
+ * Remote end should then call {@link FingerprintShard#search(byte[], int, double, Duration)}.
+ * <p>
+ * Implementations must be thread-safe.
+ *
+ * @see FingerprintCluster
+ * @see FingerprintShard
+ */
+public interface FingerprintShardTransport extends AutoCloseable {
+	/**
+	 * Gets the number of shards reachable via this transport.
+	 * Shards are numbered from zero.
+	 *
+	 * @return number of shards
+	 */
+	int shards();
+	/**
+	 * Sends search request to one shard.
+	 * This method should not block. Response is delivered via the returned future.
+	 * Transport errors should complete the future exceptionally.
+	 * Cancellation of the future means the caller is no longer interested in the result.
+	 *
+	 * @param shard
+	 *            shard number between zero and {@link #shards()}
+	 * @param probe
+	 *            serialized probe template
+	 * @param limit
+	 *            maximum number of returned candidates
+	 * @param threshold
+	 *            minimum score of returned candidates
+	 * @return future list of at most {@code limit} candidates scoring at least {@code threshold}, best candidate first
+	 * @see FingerprintShard#search(byte[], int, double)
+	 */
+	CompletableFuture<List<FingerprintShardHit>> search(int shard, byte[] probe, int limit, double threshold);
+	/**
+	 * Sends search request with a deadline to one shard.
+	 * This is what {@link FingerprintCluster} calls. Shard should stop searching when the timeout elapses
+	 * or when the returned future is cancelled, whichever comes first, so that abandoned requests do not waste shard's CPU.
+	 * Search that was cut off before matching all candidates should complete the future exceptionally with {@link TimeoutException}.
+	 * Cluster then counts the shard as timed out instead of treating incomplete results as complete.
+	 * Timeout is relative, because clocks of the client and of the shard may differ.
+	 * <p>
+	 * Default implementation ignores the timeout and calls {@link #search(int, byte[], int, double)}.
+	 * Implementations should override it and pass the timeout to {@link FingerprintShard#search(byte[], int, double, Duration)}.
+	 *
+	 * @param shard
+	 *            shard number between zero and {@link #shards()}
+	 * @param probe
+	 *            serialized probe template
+	 * @param limit
+	 *            maximum number of returned candidates
+	 * @param threshold
+	 *            minimum score of returned candidates
+	 * @param timeout
+	 *            time remaining until caller's deadline
+	 * @return future list of at most {@code limit} candidates scoring at least {@code threshold}, best candidate first
+	 * @see FingerprintShard#search(byte[], int, double, Duration)
+	 */
+	default CompletableFuture<List<FingerprintShardHit>> search(int shard, byte[] probe, int limit, double threshold, Duration timeout) {
+		return search(shard, probe, limit, threshold);
+	}
+	/**
+	 * Releases resources held by the transport.
+	 * Default implementation does nothing.
+	 */
+	@Override
+	default void close() {
+	}
+	/**
+	 * Creates transport for shards in the current process.
+	 * Shards are searched in parallel in {@link ForkJoinPool#commonPool()}.
+	 *
+	 * @param shards
+	 *            list of shards, indexed by shard number
+	 * @return in-process transport
+	 * @throws NullPointerException
+	 *             if {@code shards} or any shard is {@code null}
+	 */
+	static FingerprintShardTransport local(List<FingerprintShard> shards) {
+		return local(shards, ForkJoinPool.commonPool());
+	}
+	/**
+	 * Creates transport for shards in the current process that are searched by the specified executor.
+	 * Cancelled and timed out searches stop early and free the executor.
+	 *
+	 * @param shards
+	 *            list of shards, indexed by shard number
+	 * @param executor
+	 *            executor that runs shard searches
+	 * @return in-process transport
+	 * @throws NullPointerException
+	 *             if {@code shards}, any shard, or {@code executor} is {@code null}
+	 */
+	static FingerprintShardTransport local(List<FingerprintShard> shards, Executor executor) {
+		Objects.requireNonNull(executor);
+		var handlers = new ArrayList<ShardHandler>();
+		for (var shard : shards)
+			handlers.add(Objects.requireNonNull(shard)::search);
+		return new LocalShardTransport(handlers, executor);
+	}
+	/**
+	 * Creates transport for shards served by {@link FingerprintShard#serve(ServerSocket)}.
+	 * Every request opens new connection.
+	 * The returned transport should be closed to release its background threads.
+	 *
+	 * @param addresses
+	 *            addresses of shard servers, indexed by shard number
+	 * @param timeout
+	 *            timeout for connecting and for every read from the socket
+	 * @return socket transport
+	 * @throws NullPointerException
+	 *             if {@code addresses}, any address, or {@code timeout} is {@code null}
+	 */
+	static FingerprintShardTransport sockets(List<InetSocketAddress> addresses, Duration timeout) {
+		return new SocketShardTransport(addresses, timeout);
+	}
+}
@@ -1,6 +1,7 @@
 // Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
 package com.machinezoo.sourceafis;
 
+import java.nio.*;
 import java.util.*;
 import javax.imageio.*;
 import com.fasterxml.jackson.annotation.*;
@@ -95,37 +96,75 @@ public class FingerprintTemplate {
      */
     public FingerprintTemplate(FingerprintImage image) {
         Objects.requireNonNull(image);
-        inner = new SearchTemplate(FeatureExtractor.extract(image.matrix, image.dpi));
+        var sampler = FingerprintSampler.active;
+        if (sampler != null && sampler.sampleExtraction())
+            inner = sampler.capture("extraction", () -> extract(image));
+        else
+            inner = extract(image);
+    }
+    private static SearchTemplate extract(FingerprintImage image) {
+        return new SearchTemplate(FeatureExtractor.extract(image.matrix, image.dpi));
     }
     /**
      * Deserializes fingerprint template from byte array.
      * This constructor reads <a href="https://cbor.io/">CBOR</a>-encoded template produced by {@link #toByteArray()}
      * and reconstructs an exact copy of the original fingerprint template.
+     * Compact binary templates produced by {@link #toCompactByteArray(boolean)} are recognized and accepted too.
      * <p>
      * Templates produced by previous versions of SourceAFIS may fail to deserialize correctly.
      * Applications should re-extract all templates from original images when upgrading SourceAFIS.
      * 
      * @param serialized
      *            serialized fingerprint template in <a href="https://cbor.io/">CBOR</a> format produced by {@link #toByteArray()}
+     *            or in compact binary format produced by {@link #toCompactByteArray(boolean)}
      * @throws NullPointerException
      *             if {@code serialized} is {@code null}
      * @throws IllegalArgumentException
      *             if {@code serialized} is not in the correct format or it is corrupted
      * 
      * @see #toByteArray()
+     * @see #toCompactByteArray(boolean)
      * @see <a href="https://sourceafis.machinezoo.com/template">Template format</a>
      * @see FingerprintImage#FingerprintImage(byte[])
      * @see FingerprintCompatibility#importTemplate(byte[])
      */
     public FingerprintTemplate(byte[] serialized) { this(serialized, true); }
+    /**
+     * Deserializes fingerprint template from {@link ByteBuffer}.
+     * This constructor reads serialized template between buffer's position and limit.
+     * It is otherwise equivalent to {@link #FingerprintTemplate(byte[])}.
+     * <p>
+     * Both heap and direct buffers are accepted. Template is parsed directly from the buffer without copying it to a byte array,
+     * which is useful when templates are stored in memory-mapped files or received in network buffers.
+     * Buffer's position, limit, and contents are not modified.
+     * To read many concatenated templates, use {@link FingerprintTemplateReader}.
+     * 
+     * @param serialized
+     *            buffer containing serialized fingerprint template produced by {@link #toByteArray()} or {@link #toCompactByteArray(boolean)}
+     * @throws NullPointerException
+     *             if {@code serialized} is {@code null}
+     * @throws IllegalArgumentException
+     *             if {@code serialized} is not in the correct format or it is corrupted
+     * 
+     * @see #FingerprintTemplate(byte[])
+     * @see FingerprintTemplateReader
+     */
+    public FingerprintTemplate(ByteBuffer serialized) { this(serialized, true); }
     private static final ObjectMapper mapper = new ObjectMapper(new CBORFactory())
         .setVisibility(PropertyAccessor.FIELD, Visibility.ANY);
     FingerprintTemplate(byte[] serialized, boolean foreignToo) {
+        this(serialized != null ? ByteBuffer.wrap(serialized) : null, foreignToo);
+    }
+    FingerprintTemplate(ByteBuffer serialized, boolean foreignToo) {
         try {
             Objects.requireNonNull(serialized);
-            PersistentTemplate persistent = mapper.readValue(serialized, PersistentTemplate.class);
-            persistent.validate();
-            inner = new SearchTemplate(persistent.mutable());
+            var buffer = serialized.duplicate();
+            if (CompactTemplateFormat.accepts(buffer)) {
+                inner = CompactTemplateFormat.decode(buffer);
+                if (buffer.hasRemaining())
+                    throw new IllegalArgumentException("Trailing data in template.");
+            } else
+                inner = CborTemplateReader.read(buffer);
         } catch (Throwable ex) {
             if (!foreignToo)
                 throw new IllegalArgumentException("This is not a valid SourceAFIS template.", ex);
@@ -133,7 +172,7 @@ public class FingerprintTemplate {
              * If it's not a native template, try foreign templates.
              */
             try {
-                FingerprintCompatibility.importTemplates(serialized, Exceptions.silence());
+                FingerprintCompatibility.importTemplates(ByteBuffers.array(serialized), Exceptions.silence());
             } catch (Throwable ex2) {
                 /*
                  * Not a foreign template either. Throw the original exception.
@@ -243,6 +282,31 @@ public class FingerprintTemplate {
         PersistentTemplate persistent = new PersistentTemplate(inner.features());
         return Exceptions.wrap().get(() -> mapper.writeValueAsBytes(persistent));
     }
+    /**
+     * Serializes fingerprint template into compact binary format.
+     * Compact template can be deserialized by calling {@link #FingerprintTemplate(byte[])} constructor.
+     * <p>
+     * Compact template is a versioned little-endian binary format protected by a checksum.
+     * Unlike {@link #toByteArray()}, it preserves internal minutia order,
+     * so that deserialization does not have to sort minutiae.
+     * It can optionally embed search structures (the edge table) that are otherwise rebuilt during deserialization.
+     * Embedding the edge table makes the template several times larger, but deserialization becomes mostly bulk copying.
+     * This is useful for applications that load large number of templates at startup.
+     * <p>
+     * Compact format is specific to this implementation of SourceAFIS.
+     * It is subject to the same compatibility rules as {@link #toByteArray()}.
+     * Applications should prefer {@link #toByteArray()} unless template loading speed is critical.
+     * 
+     * @param edges
+     *            {@code true} to embed precomputed edge table in the template
+     * @return serialized fingerprint template in compact binary format
+     * 
+     * @see #FingerprintTemplate(byte[])
+     * @see #toByteArray()
+     */
+    public byte[] toCompactByteArray(boolean edges) {
+        return CompactTemplateFormat.encode(inner, edges);
+    }
     /**
      * @deprecated Use {@link #toByteArray()} to serialize the template.
      * 
@@ -268,6 +332,8 @@ public class FingerprintTemplate {
      * Estimates memory footprint of the template.
      * Memory (RAM) footprint of templates is usually much larger than serialized size.
      * The estimate should be fairly accurate on all commonly used JVMs.
+     * Template grows when it is matched repeatedly, because it then caches candidate-side search structures.
+     * These are included only after they are built.
      * 
      * @return estimated memory footprint of the template in bytes
      */
@@ -0,0 +1,168 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import com.machinezoo.noexception.*;
+import com.machinezoo.sourceafis.engine.templates.*;
+
+/**
+ * Sequential reader of concatenated native fingerprint templates.
+ * Input is a plain concatenation of templates produced by {@link FingerprintTemplate#toByteArray()}
+ * and/or {@link FingerprintTemplate#toCompactByteArray(boolean)} without any framing or separators.
+ * Both formats are self-delimiting, so the reader can find where every template ends.
+ * <p>
+ * Templates can be read from {@link ByteBuffer}, {@link ReadableByteChannel} (including {@link FileChannel}), or {@link InputStream}.
+ * Templates in {@link ByteBuffer} are parsed in place without copying, which makes memory-mapped files
+ * (see {@link FileChannel#map(FileChannel.MapMode, long, long)}) the fastest way to bulk-load templates.
+ * Channels and streams are read in large blocks into an internal buffer that is reused for all templates,
+ * so there is no per-template copy of serialized data.
+ * <p>
+ * Reader stops at the first template that is corrupted or truncated and throws {@link IllegalArgumentException}.
+ * Templates larger than 16MB are considered corrupted, so that corrupted template header cannot make the reader buffer the whole input.
+ * It is not possible to resume reading after such exception, because position of the next template is unknown.
+ * I/O errors are thrown as {@link WrappedException}.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @see FingerprintTemplate#FingerprintTemplate(ByteBuffer)
+ * @see FingerprintTemplate#toByteArray()
+ * @see FingerprintTemplate#toCompactByteArray(boolean)
+ */
+public class FingerprintTemplateReader implements Iterator<FingerprintTemplate>, Closeable {
+	/*
+	 * Initial size of the internal buffer. It grows if it cannot hold the whole template.
+	 */
+	private static final int BUFFER = 64 * 1024;
+	/*
+	 * Real templates are much smaller. Corrupted length in template header must not make the reader buffer the whole input.
+	 */
+	private static final int MAX_TEMPLATE = 16 << 20;
+	/*
+	 * Both template formats can be recognized from the first four bytes.
+	 */
+	private static final int MAGIC = 4;
+	private final ReadableByteChannel channel;
+	/*
+	 * Buffer is always in read mode. Unread data is between position and limit.
+	 */
+	private ByteBuffer buffer;
+	private boolean eof;
+	/**
+	 * Creates reader of templates stored in {@link ByteBuffer}.
+	 * Templates are read from buffer's position up to its limit.
+	 * Buffer's position, limit, and contents are not modified.
+	 *
+	 * @param templates
+	 *            buffer containing concatenated native templates
+	 * @throws NullPointerException
+	 *             if {@code templates} is {@code null}
+	 */
+	public FingerprintTemplateReader(ByteBuffer templates) {
+		Objects.requireNonNull(templates);
+		channel = null;
+		buffer = templates.duplicate();
+		eof = true;
+	}
+	/**
+	 * Creates reader of templates from {@link ReadableByteChannel}.
+	 * The channel must be in blocking mode.
+	 * Closing the reader closes the channel.
+	 *
+	 * @param channel
+	 *            channel producing concatenated native templates
+	 * @throws NullPointerException
+	 *             if {@code channel} is {@code null}
+	 */
+	public FingerprintTemplateReader(ReadableByteChannel channel) {
+		Objects.requireNonNull(channel);
+		this.channel = channel;
+		buffer = ByteBuffer.allocate(BUFFER);
+		buffer.flip();
+	}
+	/**
+	 * Creates reader of templates from {@link InputStream}.
+	 * Closing the reader closes the stream.
+	 *
+	 * @param stream
+	 *            stream producing concatenated native templates
+	 * @throws NullPointerException
+	 *             if {@code stream} is {@code null}
+	 */
+	public FingerprintTemplateReader(InputStream stream) {
+		this(Channels.newChannel(Objects.requireNonNull(stream)));
+	}
+	private boolean fill() {
+		if (eof)
+			return false;
+		if (buffer.remaining() == buffer.capacity()) {
+			if (buffer.capacity() >= MAX_TEMPLATE)
+				throw new IllegalArgumentException("Template is too large or corrupted.");
+			var grown = ByteBuffer.allocate(Math.min(MAX_TEMPLATE, 2 * buffer.capacity()));
+			grown.put(buffer);
+			buffer = grown;
+		} else
+			buffer.compact();
+		int read = Exceptions.wrap().getAsInt(() -> channel.read(buffer));
+		buffer.flip();
+		if (read < 0)
+			eof = true;
+		return !eof;
+	}
+	/**
+	 * Checks whether there is another template in the input.
+	 * This method may block while reading from channel or stream.
+	 *
+	 * @return {@code true} if there's at least one more byte of input
+	 */
+	@Override
+	public boolean hasNext() {
+		while (!buffer.hasRemaining())
+			if (!fill())
+				return false;
+		return true;
+	}
+	/**
+	 * Reads next template.
+	 * This method may block while reading from channel or stream.
+	 *
+	 * @return next template in the input
+	 * @throws NoSuchElementException
+	 *             if there are no more templates
+	 * @throws IllegalArgumentException
+	 *             if the template is not in the correct format, it is corrupted, or it is truncated by end of input
+	 */
+	@Override
+	public FingerprintTemplate next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		while (buffer.remaining() < MAGIC)
+			if (!fill())
+				break;
+		while (true) {
+			try {
+				if (CompactTemplateFormat.accepts(buffer))
+					return new FingerprintTemplate(CompactTemplateFormat.decode(buffer));
+				else
+					return new FingerprintTemplate(CborTemplateReader.read(buffer));
+			} catch (TruncatedTemplateException ex) {
+				if (!fill())
+					throw ex;
+			}
+		}
+	}
+	/**
+	 * Closes underlying channel or stream.
+	 * This method does nothing if the reader was created from {@link ByteBuffer}.
+	 *
+	 * @throws IOException
+	 *             if closing the channel or stream fails
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel != null)
+			channel.close();
+	}
+}
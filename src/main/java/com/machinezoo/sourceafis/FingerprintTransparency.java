@@ -75,6 +75,28 @@ public abstract class FingerprintTransparency implements CloseableScope {
 		 */
 		return true;
 	}
+	/**
+	 * Opts in to compact binary encoding of large matrices produced by feature extractor.
+	 * Default implementation returns {@code false}, i.e. all structured transparency data is serialized in CBOR format.
+	 * <p>
+	 * If this method returns {@code true}, image-sized matrices, masks, and histograms are passed to {@link #take(String, String, byte[])}
+	 * with MIME type {@code application/x-sourceafis-matrix} instead of {@code application/cbor}.
+	 * Such data is a 17-byte header (ASCII {@code SAFM}, element type byte, and little-endian 32-bit width, height, and depth)
+	 * followed by packed little-endian array of 32-bit floats (type 1), bits (type 2), 32-bit integers (type 3), or unsigned 16-bit integers (type 4).
+	 * Floats are narrowed from doubles. Bits are packed 8 per byte starting with the least significant bit.
+	 * Elements are in row-major order with the depth dimension changing fastest.
+	 * Depth is 1 for plain matrices, 2 for vector fields, and number of bins for histograms.
+	 * <p>
+	 * Compact encoding is several times smaller and faster to produce than CBOR, which matters when capturing transparency data in production.
+	 * This method should always return the same result. Result may be cached.
+	 * 
+	 * @return whether large matrices should be encoded compactly
+	 * 
+	 * @see #zip(OutputStream, boolean)
+	 */
+	public boolean acceptsCompactMatrices() {
+		return false;
+	}
 	/**
 	 * Records transparency data. Subclasses must override this method, because the default implementation does nothing.
 	 * While this {@code FingerprintTransparency} object is active (between call to the constructor and call to {@link #close()}),
@@ -203,4 +225,23 @@ public abstract class FingerprintTransparency implements CloseableScope {
 	public static FingerprintTransparency zip(OutputStream stream) {
 		return new TransparencyZip(stream);
 	}
+	/**
+	 * Writes all transparency data to a ZIP file, optionally using compact encoding of large matrices.
+	 * This is the same as {@link #zip(OutputStream)} except that compact logger
+	 * returns {@code true} from {@link #acceptsCompactMatrices()} and it uses the fastest compression level.
+	 * Packed matrices have {@code .matrix} extension.
+	 * Compact ZIP file is smaller than the default one and it is several times faster to produce.
+	 * 
+	 * @param stream
+	 *            output stream where ZIP file will be written (will be closed when the returned {@code FingerprintTransparency} is closed)
+	 * @param compact
+	 *            {@code true} to use compact encoding of large matrices, {@code false} to produce the same output as {@link #zip(OutputStream)}
+	 * @return algorithm transparency logger that writes data to a ZIP file
+	 * 
+	 * @see #zip(OutputStream)
+	 * @see #acceptsCompactMatrices()
+	 */
+	public static FingerprintTransparency zip(OutputStream stream, boolean compact) {
+		return new TransparencyZip(stream, compact);
+	}
 }
@@ -42,6 +42,10 @@ public class ImageEqualization {
 			}
 		}
 		DoubleMatrix result = new DoubleMatrix(blocks.pixels);
+		double[] in = image.cells;
+		double[] out = result.cells;
+		int width = image.width;
+		int maxDepth = histogram.bins - 1;
 		for (IntPoint block : blocks.primary.blocks) {
 			IntRect area = blocks.primary.block(block);
 			if (blockMask.get(block)) {
@@ -49,17 +53,23 @@ public class ImageEqualization {
 				double[] topright = mappings.get(new IntPoint(block.x + 1, block.y));
 				double[] bottomleft = mappings.get(new IntPoint(block.x, block.y + 1));
 				double[] bottomright = mappings.get(new IntPoint(block.x + 1, block.y + 1));
-				for (int y = area.top(); y < area.bottom(); ++y)
-					for (int x = area.left(); x < area.right(); ++x) {
-						int depth = histogram.constrain((int)(image.get(x, y) * histogram.bins));
-						double rx = (x - area.x + 0.5) / area.width;
-						double ry = (y - area.y + 0.5) / area.height;
-						result.set(x, y, Doubles.interpolate(bottomleft[depth], bottomright[depth], topleft[depth], topright[depth], rx, ry));
+				/*
+				 * Interpolation weights depend only on position within the block. Compute them once per block.
+				 */
+				double[] rxs = new double[area.width];
+				for (int x = 0; x < area.width; ++x)
+					rxs[x] = (x + 0.5) / area.width;
+				for (int y = area.top(); y < area.bottom(); ++y) {
+					double ry = (y - area.y + 0.5) / area.height;
+					int offset = y * width + area.left();
+					for (int x = 0; x < area.width; ++x) {
+						int depth = Math.max(0, Math.min(maxDepth, (int)(in[offset + x] * histogram.bins)));
+						out[offset + x] = Doubles.interpolate(bottomleft[depth], bottomright[depth], topleft[depth], topright[depth], rxs[x], ry);
 					}
+				}
 			} else {
 				for (int y = area.top(); y < area.bottom(); ++y)
-					for (int x = area.left(); x < area.right(); ++x)
-						result.set(x, y, -1);
+					Arrays.fill(out, y * width + area.left(), y * width + area.right(), -1);
 			}
 		}
 		// https://sourceafis.machinezoo.com/transparency/equalized-image
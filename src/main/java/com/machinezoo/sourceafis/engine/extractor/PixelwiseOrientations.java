@@ -56,6 +56,8 @@ public class PixelwiseOrientations {
 	public static DoublePointMatrix compute(DoubleMatrix input, BooleanMatrix mask, BlockMap blocks) {
 		ConsideredOrientation[][] neighbors = plan();
 		DoublePointMatrix orientation = new DoublePointMatrix(input.size());
+		double[] in = input.cells;
+		double[] out = orientation.vectors;
 		for (int blockY = 0; blockY < blocks.primary.blocks.y; ++blockY) {
 			IntRange maskRange = maskRange(mask, blockY);
 			if (maskRange.length() > 0) {
@@ -67,13 +69,18 @@ public class PixelwiseOrientations {
 						int radius = Math.max(Math.abs(neighbor.offset.x), Math.abs(neighbor.offset.y));
 						if (y - radius >= 0 && y + radius < input.height) {
 							IntRange xRange = new IntRange(Math.max(radius, validXRange.start), Math.min(input.width - radius, validXRange.end));
-							for (int x = xRange.start; x < xRange.end; ++x) {
-								double before = input.get(x - neighbor.offset.x, y - neighbor.offset.y);
-								double at = input.get(x, y);
-								double after = input.get(x + neighbor.offset.x, y + neighbor.offset.y);
-								double strength = at - Math.max(before, after);
-								if (strength > 0)
-									orientation.add(x, y, neighbor.orientation.multiply(strength));
+							int shift = neighbor.offset.y * input.width + neighbor.offset.x;
+							double dx = neighbor.orientation.x;
+							double dy = neighbor.orientation.y;
+							int end = y * input.width + xRange.end;
+							for (int i = y * input.width + xRange.start; i < end; ++i) {
+								/*
+								 * Branch-free loop that JIT compiler can vectorize. Pixels with non-positive strength add zero vector.
+								 * Accumulated vectors never hold negative zero, so adding zero leaves them bit-for-bit unchanged.
+								 */
+								double strength = Math.max(0, in[i] - Math.max(in[i - shift], in[i + shift]));
+								out[2 * i] += strength * dx;
+								out[2 * i + 1] += strength * dy;
 							}
 						}
 					}
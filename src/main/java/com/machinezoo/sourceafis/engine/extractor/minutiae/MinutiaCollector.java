@@ -6,9 +6,9 @@ import com.machinezoo.sourceafis.engine.features.*;
 
 public class MinutiaCollector {
 	public static void collect(List<FeatureMinutia> minutiae, Skeleton skeleton, MinutiaType type) {
-		for (SkeletonMinutia sminutia : skeleton.minutiae)
-			if (sminutia.ridges.size() == 1)
-				minutiae.add(new FeatureMinutia(sminutia.position, sminutia.ridges.get(0).direction(), type));
+		for (int sminutia : skeleton.minutiae())
+			if (skeleton.ridgeCount(sminutia) == 1)
+				minutiae.add(new FeatureMinutia(skeleton.position(sminutia), skeleton.direction(skeleton.firstRidge(sminutia)), type));
 	}
 	public static List<FeatureMinutia> collect(Skeleton ridges, Skeleton valleys) {
 		var minutiae = new ArrayList<FeatureMinutia>();
@@ -7,11 +7,11 @@ import com.machinezoo.sourceafis.engine.transparency.*;
 
 public class SkeletonFragmentFilter {
 	public static void apply(Skeleton skeleton) {
-		for (SkeletonMinutia minutia : skeleton.minutiae)
-			if (minutia.ridges.size() == 1) {
-				SkeletonRidge ridge = minutia.ridges.get(0);
-				if (ridge.end().ridges.size() == 1 && ridge.points.size() < Parameters.MIN_FRAGMENT_LENGTH)
-					ridge.detach();
+		for (int minutia : skeleton.minutiae())
+			if (skeleton.ridgeCount(minutia) == 1) {
+				int ridge = skeleton.firstRidge(minutia);
+				if (skeleton.ridgeCount(skeleton.end(ridge)) == 1 && skeleton.pointCount(ridge) < Parameters.MIN_FRAGMENT_LENGTH)
+					skeleton.detach(ridge);
 			}
 		SkeletonDotFilter.apply(skeleton);
 		// https://sourceafis.machinezoo.com/transparency/removed-fragments
@@ -1,20 +1,22 @@
 // Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
 package com.machinezoo.sourceafis.engine.extractor.skeletons;
 
-import com.machinezoo.sourceafis.engine.features.*;
-
-class SkeletonGap implements Comparable<SkeletonGap> {
-	int distance;
-	SkeletonMinutia end1;
-	SkeletonMinutia end2;
-	@Override
-	public int compareTo(SkeletonGap other) {
-		int distanceCmp = Integer.compare(distance, other.distance);
-		if (distanceCmp != 0)
-			return distanceCmp;
-		int end1Cmp = end1.position.compareTo(other.end1.position);
-		if (end1Cmp != 0)
-			return end1Cmp;
-		return end2.position.compareTo(other.end2.position);
+/*
+ * Gaps are packed into primitive longs, so that thousands of them can be collected and sorted without allocation.
+ * Squared distance occupies the highest bits, followed by indexes of both endings.
+ * Endings are indexed in position order, so natural ordering of the packed longs
+ * sorts gaps by distance, then by position of the first ending, then by position of the second ending.
+ */
+class SkeletonGap {
+	private static final int INDEX_BITS = 24;
+	private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+	static long pack(int distance, int end1, int end2) {
+		return ((long)distance << (2 * INDEX_BITS)) | ((long)end1 << INDEX_BITS) | end2;
+	}
+	static int end1(long gap) {
+		return (int)((gap >>> INDEX_BITS) & INDEX_MASK);
+	}
+	static int end2(long gap) {
+		return (int)(gap & INDEX_MASK);
 	}
 }
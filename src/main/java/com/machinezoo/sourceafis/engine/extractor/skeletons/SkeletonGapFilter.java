@@ -6,14 +6,13 @@ import com.machinezoo.sourceafis.engine.configuration.*;
 import com.machinezoo.sourceafis.engine.features.*;
 import com.machinezoo.sourceafis.engine.primitives.*;
 import com.machinezoo.sourceafis.engine.transparency.*;
+import it.unimi.dsi.fastutil.longs.*;
 
 public class SkeletonGapFilter {
-	private static void addGapRidge(BooleanMatrix shadow, SkeletonGap gap, IntPoint[] line) {
-		SkeletonRidge ridge = new SkeletonRidge();
-		for (IntPoint point : line)
-			ridge.points.add(point);
-		ridge.start(gap.end1);
-		ridge.end(gap.end2);
+	private static void addGapRidge(Skeleton skeleton, BooleanMatrix shadow, int end1, int end2, IntPoint[] line) {
+		int ridge = skeleton.addRidge(line);
+		skeleton.start(ridge, end1);
+		skeleton.end(ridge, end2);
 		for (IntPoint point : line)
 			shadow.set(point, true);
 	}
@@ -23,48 +22,89 @@ public class SkeletonGapFilter {
 				return true;
 		return false;
 	}
-	private static IntPoint angleSampleForGapRemoval(SkeletonMinutia minutia) {
-		SkeletonRidge ridge = minutia.ridges.get(0);
-		if (Parameters.GAP_ANGLE_OFFSET < ridge.points.size())
-			return ridge.points.get(Parameters.GAP_ANGLE_OFFSET);
+	private static IntPoint angleSampleForGapRemoval(Skeleton skeleton, int minutia) {
+		int ridge = skeleton.firstRidge(minutia);
+		if (Parameters.GAP_ANGLE_OFFSET < skeleton.pointCount(ridge))
+			return skeleton.point(ridge, Parameters.GAP_ANGLE_OFFSET);
 		else
-			return ridge.end().position;
+			return skeleton.position(skeleton.end(ridge));
 	}
-	private static boolean isWithinGapLimits(SkeletonMinutia end1, SkeletonMinutia end2) {
-		int distanceSq = end1.position.minus(end2.position).lengthSq();
+	private static boolean isWithinGapLimits(Skeleton skeleton, int end1, IntPoint position1, int end2, IntPoint position2) {
+		int distanceSq = Integers.sq(position1.x - position2.x) + Integers.sq(position1.y - position2.y);
 		if (distanceSq <= Integers.sq(Parameters.MAX_RUPTURE_SIZE))
 			return true;
 		if (distanceSq > Integers.sq(Parameters.MAX_GAP_SIZE))
 			return false;
-		double gapDirection = DoubleAngle.atan(end1.position, end2.position);
-		double direction1 = DoubleAngle.atan(end1.position, angleSampleForGapRemoval(end1));
+		double gapDirection = DoubleAngle.atan(position1, position2);
+		double direction1 = DoubleAngle.atan(position1, angleSampleForGapRemoval(skeleton, end1));
 		if (DoubleAngle.distance(direction1, DoubleAngle.opposite(gapDirection)) > Parameters.MAX_GAP_ANGLE)
 			return false;
-		double direction2 = DoubleAngle.atan(end2.position, angleSampleForGapRemoval(end2));
+		double direction2 = DoubleAngle.atan(position2, angleSampleForGapRemoval(skeleton, end2));
 		if (DoubleAngle.distance(direction2, gapDirection) > Parameters.MAX_GAP_ANGLE)
 			return false;
 		return true;
 	}
-	public static void apply(Skeleton skeleton) {
-		PriorityQueue<SkeletonGap> queue = new PriorityQueue<>();
-		for (SkeletonMinutia end1 : skeleton.minutiae)
-			if (end1.ridges.size() == 1 && end1.ridges.get(0).points.size() >= Parameters.SHORTEST_JOINED_ENDING)
-				for (SkeletonMinutia end2 : skeleton.minutiae)
-					if (end2 != end1 && end2.ridges.size() == 1 && end1.ridges.get(0).end() != end2
-						&& end2.ridges.get(0).points.size() >= Parameters.SHORTEST_JOINED_ENDING && isWithinGapLimits(end1, end2)) {
-						SkeletonGap gap = new SkeletonGap();
-						gap.distance = end1.position.minus(end2.position).lengthSq();
-						gap.end1 = end1;
-						gap.end2 = end2;
-						queue.add(gap);
+	/*
+	 * Comparing all endings with each other is quadratic, which gets very slow on low quality images with fragmented ridges.
+	 * Endings are therefore bucketed in a grid with cell size equal to maximum gap size.
+	 * Only endings in the same or adjacent cells can be joined.
+	 */
+	private static long[] findGaps(Skeleton skeleton, int[] endings) {
+		int columns = Integers.roundUpDiv(skeleton.size.x, Parameters.MAX_GAP_SIZE);
+		int rows = Integers.roundUpDiv(skeleton.size.y, Parameters.MAX_GAP_SIZE);
+		IntPoint[] positions = new IntPoint[endings.length];
+		int[] cells = new int[endings.length];
+		int[] offsets = new int[columns * rows + 1];
+		for (int i = 0; i < endings.length; ++i) {
+			IntPoint position = positions[i] = skeleton.position(endings[i]);
+			cells[i] = position.y / Parameters.MAX_GAP_SIZE * columns + position.x / Parameters.MAX_GAP_SIZE;
+			++offsets[cells[i] + 1];
+		}
+		for (int i = 0; i < columns * rows; ++i)
+			offsets[i + 1] += offsets[i];
+		int[] fill = Arrays.copyOf(offsets, columns * rows);
+		int[] members = new int[endings.length];
+		for (int i = 0; i < endings.length; ++i)
+			members[fill[cells[i]]++] = i;
+		LongArrayList gaps = new LongArrayList();
+		for (int i = 0; i < endings.length; ++i) {
+			int end1 = endings[i];
+			int column = positions[i].x / Parameters.MAX_GAP_SIZE;
+			int row = positions[i].y / Parameters.MAX_GAP_SIZE;
+			for (int y = Math.max(0, row - 1); y <= Math.min(rows - 1, row + 1); ++y)
+				for (int x = Math.max(0, column - 1); x <= Math.min(columns - 1, column + 1); ++x) {
+					int cell = y * columns + x;
+					for (int k = offsets[cell]; k < offsets[cell + 1]; ++k) {
+						int j = members[k];
+						int end2 = endings[j];
+						if (j != i && skeleton.end(skeleton.firstRidge(end1)) != end2 && isWithinGapLimits(skeleton, end1, positions[i], end2, positions[j]))
+							gaps.add(SkeletonGap.pack(positions[i].minus(positions[j]).lengthSq(), i, j));
 					}
+				}
+		}
+		long[] sorted = gaps.toLongArray();
+		Arrays.sort(sorted);
+		return sorted;
+	}
+	public static void apply(Skeleton skeleton) {
+		/*
+		 * Sort endings by position. Packed positions sort the same way as IntPoint.
+		 */
+		int[] endings = Arrays.stream(skeleton.minutiae())
+			.filter(m -> skeleton.ridgeCount(m) == 1 && skeleton.pointCount(skeleton.firstRidge(m)) >= Parameters.SHORTEST_JOINED_ENDING)
+			.boxed()
+			.sorted(Comparator.comparingInt(m -> skeleton.pack(skeleton.position(m))))
+			.mapToInt(m -> m)
+			.toArray();
+		long[] gaps = findGaps(skeleton, endings);
 		BooleanMatrix shadow = skeleton.shadow();
-		while (!queue.isEmpty()) {
-			SkeletonGap gap = queue.remove();
-			if (gap.end1.ridges.size() == 1 && gap.end2.ridges.size() == 1) {
-				IntPoint[] line = gap.end1.position.lineTo(gap.end2.position);
+		for (long gap : gaps) {
+			int end1 = endings[SkeletonGap.end1(gap)];
+			int end2 = endings[SkeletonGap.end2(gap)];
+			if (skeleton.ridgeCount(end1) == 1 && skeleton.ridgeCount(end2) == 1) {
+				IntPoint[] line = skeleton.position(end1).lineTo(skeleton.position(end2));
 				if (!isRidgeOverlapping(line, shadow))
-					addGapRidge(shadow, gap, line);
+					addGapRidge(skeleton, shadow, end1, end2, line);
 			}
 		}
 		SkeletonKnotFilter.apply(skeleton);
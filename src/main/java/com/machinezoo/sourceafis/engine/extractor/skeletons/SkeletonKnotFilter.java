@@ -2,26 +2,25 @@
 package com.machinezoo.sourceafis.engine.extractor.skeletons;
 
 import com.machinezoo.sourceafis.engine.features.*;
-import com.machinezoo.sourceafis.engine.primitives.*;
 
 public class SkeletonKnotFilter {
 	public static void apply(Skeleton skeleton) {
-		for (SkeletonMinutia minutia : skeleton.minutiae) {
-			if (minutia.ridges.size() == 2 && minutia.ridges.get(0).reversed != minutia.ridges.get(1)) {
-				SkeletonRidge extended = minutia.ridges.get(0).reversed;
-				SkeletonRidge removed = minutia.ridges.get(1);
-				if (extended.points.size() < removed.points.size()) {
-					SkeletonRidge tmp = extended;
+		for (int minutia : skeleton.minutiae()) {
+			if (skeleton.ridgeCount(minutia) == 2 && Skeleton.reversed(skeleton.ridge(minutia, 0)) != skeleton.ridge(minutia, 1)) {
+				int extended = Skeleton.reversed(skeleton.ridge(minutia, 0));
+				int removed = skeleton.ridge(minutia, 1);
+				if (skeleton.pointCount(extended) < skeleton.pointCount(removed)) {
+					int tmp = extended;
 					extended = removed;
 					removed = tmp;
-					extended = extended.reversed;
-					removed = removed.reversed;
+					extended = Skeleton.reversed(extended);
+					removed = Skeleton.reversed(removed);
 				}
-				extended.points.remove(extended.points.size() - 1);
-				for (IntPoint point : removed.points)
-					extended.points.add(point);
-				extended.end(removed.end());
-				removed.detach();
+				skeleton.removeLastPoint(extended);
+				int[] points = skeleton.points(removed);
+				skeleton.addPoints(extended, points, 0, points.length);
+				skeleton.end(extended, skeleton.end(removed));
+				skeleton.detach(removed);
 			}
 		}
 		SkeletonDotFilter.apply(skeleton);
@@ -3,27 +3,24 @@ package com.machinezoo.sourceafis.engine.extractor.skeletons;
 
 import com.machinezoo.sourceafis.engine.configuration.*;
 import com.machinezoo.sourceafis.engine.features.*;
-import com.machinezoo.sourceafis.engine.primitives.*;
 import com.machinezoo.sourceafis.engine.transparency.*;
 
 public class SkeletonPoreFilter {
 	public static void apply(Skeleton skeleton) {
-		for (SkeletonMinutia minutia : skeleton.minutiae) {
-			if (minutia.ridges.size() == 3) {
+		for (int minutia : skeleton.minutiae()) {
+			if (skeleton.ridgeCount(minutia) == 3) {
 				for (int exit = 0; exit < 3; ++exit) {
-					SkeletonRidge exitRidge = minutia.ridges.get(exit);
-					SkeletonRidge arm1 = minutia.ridges.get((exit + 1) % 3);
-					SkeletonRidge arm2 = minutia.ridges.get((exit + 2) % 3);
-					if (arm1.end() == arm2.end() && exitRidge.end() != arm1.end() && arm1.end() != minutia && exitRidge.end() != minutia) {
-						SkeletonMinutia end = arm1.end();
-						if (end.ridges.size() == 3 && arm1.points.size() <= Parameters.MAX_PORE_ARM && arm2.points.size() <= Parameters.MAX_PORE_ARM) {
-							arm1.detach();
-							arm2.detach();
-							SkeletonRidge merged = new SkeletonRidge();
-							merged.start(minutia);
-							merged.end(end);
-							for (IntPoint point : minutia.position.lineTo(end.position))
-								merged.points.add(point);
+					int exitRidge = skeleton.ridge(minutia, exit);
+					int arm1 = skeleton.ridge(minutia, (exit + 1) % 3);
+					int arm2 = skeleton.ridge(minutia, (exit + 2) % 3);
+					int end = skeleton.end(arm1);
+					if (end == skeleton.end(arm2) && skeleton.end(exitRidge) != end && end != minutia && skeleton.end(exitRidge) != minutia) {
+						if (skeleton.ridgeCount(end) == 3 && skeleton.pointCount(arm1) <= Parameters.MAX_PORE_ARM && skeleton.pointCount(arm2) <= Parameters.MAX_PORE_ARM) {
+							skeleton.detach(arm1);
+							skeleton.detach(arm2);
+							int merged = skeleton.addRidge(skeleton.position(minutia).lineTo(skeleton.position(end)));
+							skeleton.start(merged, minutia);
+							skeleton.end(merged, end);
 						}
 						break;
 					}
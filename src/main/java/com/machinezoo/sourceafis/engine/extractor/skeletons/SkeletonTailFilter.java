@@ -7,10 +7,10 @@ import com.machinezoo.sourceafis.engine.transparency.*;
 
 public class SkeletonTailFilter {
 	public static void apply(Skeleton skeleton) {
-		for (SkeletonMinutia minutia : skeleton.minutiae) {
-			if (minutia.ridges.size() == 1 && minutia.ridges.get(0).end().ridges.size() >= 3)
-				if (minutia.ridges.get(0).points.size() < Parameters.MIN_TAIL_LENGTH)
-					minutia.ridges.get(0).detach();
+		for (int minutia : skeleton.minutiae()) {
+			if (skeleton.ridgeCount(minutia) == 1 && skeleton.ridgeCount(skeleton.end(skeleton.firstRidge(minutia))) >= 3)
+				if (skeleton.pointCount(skeleton.firstRidge(minutia)) < Parameters.MIN_TAIL_LENGTH)
+					skeleton.detach(skeleton.firstRidge(minutia));
 		}
 		SkeletonDotFilter.apply(skeleton);
 		SkeletonKnotFilter.apply(skeleton);
@@ -1,107 +1,133 @@
 // Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
 package com.machinezoo.sourceafis.engine.extractor.skeletons;
 
-import static java.util.stream.Collectors.*;
 import java.util.*;
 import com.machinezoo.sourceafis.engine.features.*;
 import com.machinezoo.sourceafis.engine.primitives.*;
 import com.machinezoo.sourceafis.engine.transparency.*;
+import it.unimi.dsi.fastutil.ints.*;
 
 public class SkeletonTracing {
-	private static List<IntPoint> findMinutiae(BooleanMatrix thinned) {
-		List<IntPoint> result = new ArrayList<>();
-		for (IntPoint at : thinned.size())
-			if (thinned.get(at)) {
-				int count = 0;
-				for (IntPoint relative : IntPoint.CORNER_NEIGHBORS)
-					if (thinned.get(at.plus(relative), false))
-						++count;
-				if (count == 1 || count > 2)
-					result.add(at);
-			}
-		return result;
+	/*
+	 * Minutia points are packed as y * width + x. Scanning the image row by row yields them already sorted.
+	 */
+	private static int[] findMinutiae(BooleanMatrix thinned) {
+		IntArrayList result = new IntArrayList();
+		for (int y = 0; y < thinned.height; ++y)
+			for (int x = 0; x < thinned.width; ++x)
+				if (thinned.get(x, y)) {
+					int count = 0;
+					for (IntPoint relative : IntPoint.CORNER_NEIGHBORS)
+						if (thinned.get(x + relative.x, y + relative.y, false))
+							++count;
+					if (count == 1 || count > 2)
+						result.add(y * thinned.width + x);
+				}
+		return result.toIntArray();
 	}
-	private static Map<IntPoint, List<IntPoint>> linkNeighboringMinutiae(List<IntPoint> minutiae) {
-		Map<IntPoint, List<IntPoint>> linking = new HashMap<>();
-		for (IntPoint minutiaPos : minutiae) {
-			List<IntPoint> ownLinks = null;
-			for (IntPoint neighborRelative : IntPoint.CORNER_NEIGHBORS) {
-				IntPoint neighborPos = minutiaPos.plus(neighborRelative);
-				if (linking.containsKey(neighborPos)) {
-					List<IntPoint> neighborLinks = linking.get(neighborPos);
-					if (neighborLinks != ownLinks) {
-						if (ownLinks != null) {
-							neighborLinks.addAll(ownLinks);
-							for (IntPoint mergedPos : ownLinks)
-								linking.put(mergedPos, neighborLinks);
-						}
-						ownLinks = neighborLinks;
-					}
+	private static int root(int[] parents, int point) {
+		while (parents[point] != point)
+			point = parents[point] = parents[parents[point]];
+		return point;
+	}
+	/*
+	 * Neighboring minutia points are merged into one minutia placed in the center of the cluster.
+	 * Clusters are found with union-find over the sorted list of minutia points.
+	 * Minutiae are created in the order in which their clusters first appear in the sorted list.
+	 * Returned array maps every pixel to its minutia or to NONE if the pixel is not a minutia point.
+	 */
+	private static int[] minutiaCenters(Skeleton skeleton, BooleanMatrix thinned, int[] points) {
+		int width = thinned.width;
+		int[] indexes = new int[width * thinned.height];
+		Arrays.fill(indexes, Skeleton.NONE);
+		for (int i = 0; i < points.length; ++i)
+			indexes[points[i]] = i;
+		int[] parents = new int[points.length];
+		for (int i = 0; i < points.length; ++i) {
+			parents[i] = i;
+			int x = points[i] % width;
+			int y = points[i] / width;
+			for (IntPoint relative : IntPoint.CORNER_NEIGHBORS) {
+				int nx = x + relative.x;
+				int ny = y + relative.y;
+				if (nx >= 0 && ny >= 0 && nx < width && ny < thinned.height) {
+					int neighbor = indexes[ny * width + nx];
+					if (neighbor != Skeleton.NONE && neighbor < i)
+						parents[root(parents, neighbor)] = root(parents, i);
 				}
 			}
-			if (ownLinks == null)
-				ownLinks = new ArrayList<>();
-			ownLinks.add(minutiaPos);
-			linking.put(minutiaPos, ownLinks);
 		}
-		return linking;
-	}
-	private static Map<IntPoint, SkeletonMinutia> minutiaCenters(Skeleton skeleton, Map<IntPoint, List<IntPoint>> linking) {
-		Map<IntPoint, SkeletonMinutia> centers = new HashMap<>();
-		for (IntPoint currentPos : linking.keySet().stream().sorted().collect(toList())) {
-			List<IntPoint> linkedMinutiae = linking.get(currentPos);
-			IntPoint primaryPos = linkedMinutiae.get(0);
-			if (!centers.containsKey(primaryPos)) {
-				IntPoint sum = IntPoint.ZERO;
-				for (IntPoint linkedPos : linkedMinutiae)
-					sum = sum.plus(linkedPos);
-				IntPoint center = new IntPoint(sum.x / linkedMinutiae.size(), sum.y / linkedMinutiae.size());
-				SkeletonMinutia minutia = new SkeletonMinutia(center);
-				skeleton.addMinutia(minutia);
-				centers.put(primaryPos, minutia);
-			}
-			centers.put(currentPos, centers.get(primaryPos));
+		int[] sumX = new int[points.length];
+		int[] sumY = new int[points.length];
+		int[] counts = new int[points.length];
+		for (int i = 0; i < points.length; ++i) {
+			int root = root(parents, i);
+			sumX[root] += points[i] % width;
+			sumY[root] += points[i] / width;
+			++counts[root];
+		}
+		int[] minutiae = new int[points.length];
+		Arrays.fill(minutiae, Skeleton.NONE);
+		/*
+		 * Reuse the pixel index, because it already holds NONE for all pixels that are not minutia points.
+		 */
+		int[] owners = indexes;
+		for (int i = 0; i < points.length; ++i) {
+			int root = root(parents, i);
+			if (minutiae[root] == Skeleton.NONE)
+				minutiae[root] = skeleton.addMinutia(new IntPoint(sumX[root] / counts[root], sumY[root] / counts[root]));
+			owners[points[i]] = minutiae[root];
 		}
-		return centers;
+		return owners;
 	}
-	private static void traceRidges(BooleanMatrix thinned, Map<IntPoint, SkeletonMinutia> minutiaePoints) {
-		Map<IntPoint, SkeletonRidge> leads = new HashMap<>();
-		for (IntPoint minutiaPoint : minutiaePoints.keySet().stream().sorted().collect(toList())) {
+	private static void traceRidges(Skeleton skeleton, BooleanMatrix thinned, int[] points, int[] owners) {
+		int width = thinned.width;
+		boolean[] leads = new boolean[owners.length];
+		IntArrayList ridge = new IntArrayList();
+		for (int minutiaPoint : points) {
+			int mx = minutiaPoint % width;
+			int my = minutiaPoint / width;
 			for (IntPoint startRelative : IntPoint.CORNER_NEIGHBORS) {
-				IntPoint start = minutiaPoint.plus(startRelative);
-				if (thinned.get(start, false) && !minutiaePoints.containsKey(start) && !leads.containsKey(start)) {
-					SkeletonRidge ridge = new SkeletonRidge();
-					ridge.points.add(minutiaPoint);
-					ridge.points.add(start);
-					IntPoint previous = minutiaPoint;
-					IntPoint current = start;
+				int sx = mx + startRelative.x;
+				int sy = my + startRelative.y;
+				if (thinned.get(sx, sy, false) && owners[sy * width + sx] == Skeleton.NONE && !leads[sy * width + sx]) {
+					ridge.clear();
+					ridge.add(minutiaPoint);
+					ridge.add(sy * width + sx);
+					int previous = minutiaPoint;
+					int cx = sx;
+					int cy = sy;
 					do {
-						IntPoint next = IntPoint.ZERO;
+						int nx = 0;
+						int ny = 0;
 						for (IntPoint nextRelative : IntPoint.CORNER_NEIGHBORS) {
-							next = current.plus(nextRelative);
-							if (thinned.get(next, false) && !next.equals(previous))
+							nx = cx + nextRelative.x;
+							ny = cy + nextRelative.y;
+							if (thinned.get(nx, ny, false) && ny * width + nx != previous)
 								break;
 						}
-						previous = current;
-						current = next;
-						ridge.points.add(current);
-					} while (!minutiaePoints.containsKey(current));
-					IntPoint end = current;
-					ridge.start(minutiaePoints.get(minutiaPoint));
-					ridge.end(minutiaePoints.get(end));
-					leads.put(ridge.points.get(1), ridge);
-					leads.put(ridge.reversed.points.get(1), ridge);
+						previous = cy * width + cx;
+						cx = nx;
+						cy = ny;
+						ridge.add(cy * width + cx);
+					} while (owners[cy * width + cx] == Skeleton.NONE);
+					int traced = skeleton.addRidge(ridge.elements(), ridge.size());
+					skeleton.start(traced, owners[minutiaPoint]);
+					skeleton.end(traced, owners[cy * width + cx]);
+					leads[ridge.getInt(1)] = true;
+					leads[ridge.getInt(ridge.size() - 2)] = true;
 				}
 			}
 		}
 	}
 	private static void fixLinkingGaps(Skeleton skeleton) {
-		for (SkeletonMinutia minutia : skeleton.minutiae) {
-			for (SkeletonRidge ridge : minutia.ridges) {
-				if (!ridge.points.get(0).equals(minutia.position)) {
-					IntPoint[] filling = ridge.points.get(0).lineTo(minutia.position);
-					for (int i = 1; i < filling.length; ++i)
-						ridge.reversed.points.add(filling[i]);
+		for (int minutia : skeleton.minutiae()) {
+			IntPoint position = skeleton.position(minutia);
+			for (int ridge = skeleton.firstRidge(minutia); ridge != Skeleton.NONE; ridge = skeleton.nextRidge(ridge)) {
+				IntPoint first = skeleton.point(ridge, 0);
+				if (!first.equals(position)) {
+					int[] filling = skeleton.pack(first.lineTo(position));
+					skeleton.addPoints(Skeleton.reversed(ridge), filling, 1, filling.length);
 				}
 			}
 		}
@@ -109,9 +135,8 @@ public class SkeletonTracing {
 	public static Skeleton trace(BooleanMatrix thinned, SkeletonType type) {
 		var skeleton = new Skeleton(type, thinned.size());
 		var minutiaPoints = findMinutiae(thinned);
-		var linking = linkNeighboringMinutiae(minutiaPoints);
-		var minutiaMap = minutiaCenters(skeleton, linking);
-		traceRidges(thinned, minutiaMap);
+		var owners = minutiaCenters(skeleton, thinned, minutiaPoints);
+		traceRidges(skeleton, thinned, minutiaPoints, owners);
 		fixLinkingGaps(skeleton);
 		// https://sourceafis.machinezoo.com/transparency/traced-skeleton
 		TransparencySink.current().logSkeleton("traced-skeleton", skeleton);
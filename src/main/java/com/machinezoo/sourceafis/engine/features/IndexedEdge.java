@@ -11,6 +11,14 @@ public class IndexedEdge extends EdgeShape {
         this.reference = (byte)reference;
         this.neighbor = (byte)neighbor;
     }
+    /*
+     * Restores edge from serialized probe without recomputing its shape.
+     */
+    public IndexedEdge(short length, float referenceAngle, float neighborAngle, int reference, int neighbor) {
+        super(length, referenceAngle, neighborAngle);
+        this.reference = (byte)reference;
+        this.neighbor = (byte)neighbor;
+    }
     public int reference() { return Byte.toUnsignedInt(reference); }
     public int neighbor() { return Byte.toUnsignedInt(neighbor); }
     public static int memory() { return MemoryEstimates.object(Short.BYTES + 2 * Float.BYTES + 2 * Byte.BYTES, Float.BYTES); }
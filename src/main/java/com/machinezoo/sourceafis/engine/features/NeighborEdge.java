@@ -4,10 +4,13 @@ package com.machinezoo.sourceafis.engine.features;
 import java.util.*;
 import com.machinezoo.sourceafis.engine.configuration.*;
 import com.machinezoo.sourceafis.engine.primitives.*;
-import com.machinezoo.sourceafis.engine.transparency.*;
 
 public class NeighborEdge extends EdgeShape {
     public final short neighbor;
+    public NeighborEdge(short length, float referenceAngle, float neighborAngle, short neighbor) {
+        super(length, referenceAngle, neighborAngle);
+        this.neighbor = neighbor;
+    }
     public NeighborEdge(SearchMinutia[] minutiae, int reference, int neighbor) {
         super(minutiae[reference], minutiae[neighbor]);
         this.neighbor = (short)neighbor;
@@ -38,8 +41,6 @@ public class NeighborEdge extends EdgeShape {
             edges[reference] = star.toArray(new NeighborEdge[star.size()]);
             star.clear();
         }
-        // https://sourceafis.machinezoo.com/transparency/edge-table
-        TransparencySink.current().log("edge-table", edges);
         return edges;
     }
     public static int memory() { return MemoryEstimates.object(2 * Short.BYTES + 2 * Float.BYTES, Float.BYTES); }
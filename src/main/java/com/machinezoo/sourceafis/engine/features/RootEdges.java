@@ -0,0 +1,112 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.features;
+
+import java.nio.*;
+import com.machinezoo.sourceafis.engine.configuration.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+
+/*
+ * Candidate edges in the order in which they are looked up in probe's edge hash during root enumeration.
+ * Long edges come first, followed by short edges, and the sequence is cut at MAX_ROOT_EDGE_LOOKUPS.
+ * The sequence depends only on the candidate template, so it is computed once per template
+ * instead of recomputing edge shapes every time the template is matched.
+ * Edges are stored in parallel primitive arrays to keep them compact and sequentially readable.
+ */
+public class RootEdges {
+	public final int count;
+	public final short[] references;
+	public final short[] lengths;
+	public final float[] referenceAngles;
+	public final float[] neighborAngles;
+	public final int[] hashes;
+	public RootEdges(SearchMinutia[] minutiae) {
+		count = count(minutiae.length);
+		references = new short[count];
+		lengths = new short[count];
+		referenceAngles = new float[count];
+		neighborAngles = new float[count];
+		hashes = new int[count];
+		int index = 0;
+		for (boolean shortEdges : new boolean[] { false, true }) {
+			for (int period = 1; period < minutiae.length; ++period) {
+				for (int phase = 0; phase <= period; ++phase) {
+					for (int reference = phase; reference < minutiae.length; reference += period + 1) {
+						int neighbor = (reference + period) % minutiae.length;
+						var edge = new EdgeShape(minutiae[reference], minutiae[neighbor]);
+						if ((edge.length >= Parameters.MIN_ROOT_EDGE_LENGTH) ^ shortEdges) {
+							references[index] = (short)reference;
+							lengths[index] = edge.length;
+							referenceAngles[index] = edge.referenceAngle;
+							neighborAngles[index] = edge.neighborAngle;
+							hashes[index] = EdgeShape.hash(edge.length, edge.referenceAngle, edge.neighborAngle);
+							++index;
+							if (index >= count)
+								return;
+						}
+					}
+				}
+			}
+		}
+	}
+	private RootEdges(int count, short[] references, short[] lengths, float[] referenceAngles, float[] neighborAngles, int[] hashes) {
+		this.count = count;
+		this.references = references;
+		this.lengths = lengths;
+		this.referenceAngles = referenceAngles;
+		this.neighborAngles = neighborAngles;
+		this.hashes = hashes;
+	}
+	/*
+	 * Raw column dump for off-heap storage, which lets stored templates skip recomputation of edge shapes.
+	 * Data never leaves the process, so there is no versioning or validation.
+	 */
+	public int serializedSize() {
+		return Integer.BYTES + count * (2 * Short.BYTES + 2 * Float.BYTES + Integer.BYTES);
+	}
+	public void write(ByteBuffer buffer) {
+		buffer.putInt(count);
+		buffer.asShortBuffer().put(references);
+		buffer.position(buffer.position() + count * Short.BYTES);
+		buffer.asShortBuffer().put(lengths);
+		buffer.position(buffer.position() + count * Short.BYTES);
+		buffer.asFloatBuffer().put(referenceAngles);
+		buffer.position(buffer.position() + count * Float.BYTES);
+		buffer.asFloatBuffer().put(neighborAngles);
+		buffer.position(buffer.position() + count * Float.BYTES);
+		buffer.asIntBuffer().put(hashes);
+		buffer.position(buffer.position() + count * Integer.BYTES);
+	}
+	public static RootEdges read(ByteBuffer buffer) {
+		int count = buffer.getInt();
+		var references = new short[count];
+		buffer.asShortBuffer().get(references);
+		buffer.position(buffer.position() + count * Short.BYTES);
+		var lengths = new short[count];
+		buffer.asShortBuffer().get(lengths);
+		buffer.position(buffer.position() + count * Short.BYTES);
+		var referenceAngles = new float[count];
+		buffer.asFloatBuffer().get(referenceAngles);
+		buffer.position(buffer.position() + count * Float.BYTES);
+		var neighborAngles = new float[count];
+		buffer.asFloatBuffer().get(neighborAngles);
+		buffer.position(buffer.position() + count * Float.BYTES);
+		var hashes = new int[count];
+		buffer.asIntBuffer().get(hashes);
+		buffer.position(buffer.position() + count * Integer.BYTES);
+		return new RootEdges(count, references, lengths, referenceAngles, neighborAngles, hashes);
+	}
+	/*
+	 * Every pass visits every ordered pair of minutiae exactly once and the two passes have complementary filters,
+	 * so the number of edges is fully determined by minutia count.
+	 */
+	public static int count(int minutiae) {
+		return (int)Math.min(Parameters.MAX_ROOT_EDGE_LOOKUPS, (long)minutiae * (minutiae - 1));
+	}
+	public static int memory(int minutiae) {
+		int count = count(minutiae);
+		return MemoryEstimates.object(Integer.BYTES + 5 * MemoryEstimates.REFERENCE, MemoryEstimates.REFERENCE)
+			+ 2 * MemoryEstimates.array(Short.BYTES, count)
+			+ 2 * MemoryEstimates.array(Float.BYTES, count)
+			+ MemoryEstimates.array(Integer.BYTES, count);
+	}
+}
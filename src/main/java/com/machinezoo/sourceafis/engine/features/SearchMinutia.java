@@ -8,6 +8,12 @@ public class SearchMinutia {
     public final short y;
     public final float direction;
     public final MinutiaType type;
+    public SearchMinutia(short x, short y, float direction, MinutiaType type) {
+        this.x = x;
+        this.y = y;
+        this.direction = direction;
+        this.type = type;
+    }
     public SearchMinutia(FeatureMinutia feature) {
         this.x = (short)feature.position.x;
         this.y = (short)feature.position.y;
@@ -2,30 +2,267 @@
 package com.machinezoo.sourceafis.engine.features;
 
 import java.util.*;
+import com.machinezoo.sourceafis.engine.configuration.*;
 import com.machinezoo.sourceafis.engine.primitives.*;
+import it.unimi.dsi.fastutil.ints.*;
 
+/*
+ * Skeleton graph is stored in flat primitive arrays, because object graph of minutiae, ridges, and points
+ * used to allocate millions of small objects per image and it was slow to traverse.
+ *
+ * Minutiae and ridges are addressed by index. Every ridge is represented by a pair of directed ridges
+ * with indexes 2 * r and 2 * r + 1, so that ridge reversal is a simple XOR with 1.
+ * Even directed ridge is the forward one, i.e. the direction in which the ridge was created.
+ * Every minutia keeps a doubly linked list of directed ridges that start in it.
+ * List order matters, because filters refer to the first few ridges of the minutia.
+ *
+ * Ridge points are packed as y * width + x and stored in forward direction in one shared array.
+ * Every ridge has its own segment in the shared array. Segments are relocated to the end of the array when extended.
+ */
 public class Skeleton {
+	public static final int NONE = -1;
 	public final SkeletonType type;
 	public final IntPoint size;
-	public final List<SkeletonMinutia> minutiae = new ArrayList<>();
+	private final IntArrayList minutiae = new IntArrayList();
+	private int minutiaCount;
+	private int[] positions = new int[16];
+	private int[] heads = new int[16];
+	private int[] tails = new int[16];
+	private int[] degrees = new int[16];
+	private int directedCount;
+	private int[] starts = new int[32];
+	private int[] nexts = new int[32];
+	private int[] previous = new int[32];
+	private int[] offsets = new int[16];
+	private int[] lengths = new int[16];
+	private int pointCount;
+	private int[] pool = new int[256];
 	public Skeleton(SkeletonType type, IntPoint size) {
 		this.type = type;
 		this.size = size;
 	}
-	public void addMinutia(SkeletonMinutia minutia) {
+	public int pack(int x, int y) {
+		return y * size.x + x;
+	}
+	public int pack(IntPoint point) {
+		return pack(point.x, point.y);
+	}
+	public IntPoint unpack(int point) {
+		return new IntPoint(point % size.x, point / size.x);
+	}
+	public int addMinutia(IntPoint position) {
+		int minutia = minutiaCount;
+		++minutiaCount;
+		positions = IntArrays.grow(positions, minutiaCount);
+		heads = IntArrays.grow(heads, minutiaCount);
+		tails = IntArrays.grow(tails, minutiaCount);
+		degrees = IntArrays.grow(degrees, minutiaCount);
+		positions[minutia] = pack(position);
+		heads[minutia] = NONE;
+		tails[minutia] = NONE;
+		degrees[minutia] = 0;
 		minutiae.add(minutia);
+		return minutia;
+	}
+	public void removeMinutiae(IntPredicate predicate) {
+		minutiae.removeIf(predicate);
+	}
+	/*
+	 * Returns a snapshot, so that callers can iterate over it while the skeleton is being modified.
+	 */
+	public int[] minutiae() {
+		return minutiae.toIntArray();
+	}
+	public IntPoint position(int minutia) {
+		return unpack(positions[minutia]);
+	}
+	public int ridgeCount(int minutia) {
+		return degrees[minutia];
+	}
+	public int firstRidge(int minutia) {
+		return heads[minutia];
+	}
+	public int nextRidge(int ridge) {
+		return nexts[ridge];
 	}
-	public void removeMinutia(SkeletonMinutia minutia) {
-		minutiae.remove(minutia);
+	public int ridge(int minutia, int index) {
+		if (index < 0 || index >= degrees[minutia])
+			throw new IndexOutOfBoundsException();
+		int ridge = heads[minutia];
+		for (int i = 0; i < index; ++i)
+			ridge = nexts[ridge];
+		return ridge;
+	}
+	public static int reversed(int ridge) {
+		return ridge ^ 1;
+	}
+	public static boolean forward(int ridge) {
+		return (ridge & 1) == 0;
+	}
+	public int start(int ridge) {
+		return starts[ridge];
+	}
+	public int end(int ridge) {
+		return starts[reversed(ridge)];
+	}
+	private void unlink(int ridge) {
+		int minutia = starts[ridge];
+		if (previous[ridge] != NONE)
+			nexts[previous[ridge]] = nexts[ridge];
+		else
+			heads[minutia] = nexts[ridge];
+		if (nexts[ridge] != NONE)
+			previous[nexts[ridge]] = previous[ridge];
+		else
+			tails[minutia] = previous[ridge];
+		--degrees[minutia];
+	}
+	private void link(int ridge) {
+		int minutia = starts[ridge];
+		previous[ridge] = tails[minutia];
+		nexts[ridge] = NONE;
+		if (tails[minutia] != NONE)
+			nexts[tails[minutia]] = ridge;
+		else
+			heads[minutia] = ridge;
+		tails[minutia] = ridge;
+		++degrees[minutia];
+	}
+	/*
+	 * Attaching ridge to a minutia appends it to the end of the minutia's ridge list.
+	 */
+	public void start(int ridge, int minutia) {
+		if (starts[ridge] != minutia) {
+			if (starts[ridge] != NONE)
+				unlink(ridge);
+			starts[ridge] = minutia;
+			if (minutia != NONE)
+				link(ridge);
+		}
+	}
+	public void end(int ridge, int minutia) {
+		start(reversed(ridge), minutia);
+	}
+	public void detach(int ridge) {
+		start(ridge, NONE);
+		end(ridge, NONE);
+	}
+	/*
+	 * Creates new detached ridge from points packed by pack(). Forward directed ridge is returned.
+	 */
+	public int addRidge(int[] packed, int count) {
+		int ridge = directedCount;
+		directedCount += 2;
+		starts = IntArrays.grow(starts, directedCount);
+		nexts = IntArrays.grow(nexts, directedCount);
+		previous = IntArrays.grow(previous, directedCount);
+		offsets = IntArrays.grow(offsets, directedCount / 2);
+		lengths = IntArrays.grow(lengths, directedCount / 2);
+		for (int i = ridge; i < directedCount; ++i) {
+			starts[i] = NONE;
+			nexts[i] = NONE;
+			previous[i] = NONE;
+		}
+		offsets[ridge / 2] = reserve(count);
+		lengths[ridge / 2] = count;
+		System.arraycopy(packed, 0, pool, offsets[ridge / 2], count);
+		return ridge;
+	}
+	public int addRidge(IntPoint[] line) {
+		return addRidge(pack(line), line.length);
+	}
+	private int reserve(int count) {
+		int offset = pointCount;
+		pointCount += count;
+		pool = IntArrays.grow(pool, pointCount);
+		return offset;
+	}
+	public int pointCount(int ridge) {
+		return lengths[ridge / 2];
+	}
+	public int packedPoint(int ridge, int index) {
+		int segment = ridge / 2;
+		if (index < 0 || index >= lengths[segment])
+			throw new IndexOutOfBoundsException();
+		return pool[offsets[segment] + (forward(ridge) ? index : lengths[segment] - 1 - index)];
+	}
+	public IntPoint point(int ridge, int index) {
+		return unpack(packedPoint(ridge, index));
+	}
+	/*
+	 * Returns packed points in the direction of the ridge.
+	 */
+	public int[] points(int ridge) {
+		int segment = ridge / 2;
+		int length = lengths[segment];
+		int[] result = Arrays.copyOfRange(pool, offsets[segment], offsets[segment] + length);
+		if (!forward(ridge))
+			IntArrays.reverse(result);
+		return result;
+	}
+	public int[] pack(IntPoint[] line) {
+		int[] packed = new int[line.length];
+		for (int i = 0; i < line.length; ++i)
+			packed[i] = pack(line[i]);
+		return packed;
+	}
+	/*
+	 * Appends points to the end of the ridge as seen in its direction.
+	 * Reversed ridges therefore grow at the start of the forward ridge.
+	 */
+	public void addPoints(int ridge, int[] packed, int from, int to) {
+		int segment = ridge / 2;
+		int length = lengths[segment];
+		int count = to - from;
+		if (forward(ridge) && offsets[segment] + length == pointCount) {
+			reserve(count);
+			System.arraycopy(packed, from, pool, offsets[segment] + length, count);
+		} else {
+			int offset = reserve(length + count);
+			if (forward(ridge)) {
+				System.arraycopy(pool, offsets[segment], pool, offset, length);
+				System.arraycopy(packed, from, pool, offset + length, count);
+			} else {
+				for (int i = 0; i < count; ++i)
+					pool[offset + i] = packed[to - 1 - i];
+				System.arraycopy(pool, offsets[segment], pool, offset + count, length);
+			}
+			offsets[segment] = offset;
+		}
+		lengths[segment] = length + count;
+	}
+	public void removeLastPoint(int ridge) {
+		int segment = ridge / 2;
+		if (lengths[segment] <= 0)
+			throw new IndexOutOfBoundsException();
+		if (!forward(ridge))
+			++offsets[segment];
+		--lengths[segment];
+	}
+	public float direction(int ridge) {
+		int first = Parameters.RIDGE_DIRECTION_SKIP;
+		int last = Parameters.RIDGE_DIRECTION_SKIP + Parameters.RIDGE_DIRECTION_SAMPLE - 1;
+		int count = pointCount(ridge);
+		if (last >= count) {
+			int shift = last - count + 1;
+			last -= shift;
+			first -= shift;
+		}
+		if (first < 0)
+			first = 0;
+		return (float)DoubleAngle.atan(point(ridge, first), point(ridge, last));
 	}
 	public BooleanMatrix shadow() {
 		BooleanMatrix shadow = new BooleanMatrix(size);
-		for (SkeletonMinutia minutia : minutiae) {
-			shadow.set(minutia.position, true);
-			for (SkeletonRidge ridge : minutia.ridges)
-				if (ridge.start().position.y <= ridge.end().position.y)
-					for (IntPoint point : ridge.points)
-						shadow.set(point, true);
+		for (int i = 0; i < minutiae.size(); ++i) {
+			int minutia = minutiae.getInt(i);
+			shadow.set(position(minutia), true);
+			for (int ridge = firstRidge(minutia); ridge != NONE; ridge = nextRidge(ridge))
+				if (positions[start(ridge)] / size.x <= positions[end(ridge)] / size.x) {
+					int segment = ridge / 2;
+					for (int j = offsets[segment]; j < offsets[segment] + lengths[segment]; ++j)
+						shadow.set(pool[j] % size.x, pool[j] / size.x, true);
+				}
 		}
 		return shadow;
 	}
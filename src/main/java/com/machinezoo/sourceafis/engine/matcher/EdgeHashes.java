@@ -12,17 +12,14 @@ import it.unimi.dsi.fastutil.ints.*;
 public class EdgeHashes {
 	private static final float COMPLEMENTARY_MAX_ANGLE_ERROR = FloatAngle.complementary(Parameters.MAX_ANGLE_ERROR);
 	public static int hash(EdgeShape edge) {
-		int lengthBin = edge.length / Parameters.MAX_DISTANCE_ERROR;
-		int referenceAngleBin = (int)(edge.referenceAngle / Parameters.MAX_ANGLE_ERROR);
-		int neighborAngleBin = (int)(edge.neighborAngle / Parameters.MAX_ANGLE_ERROR);
-		return (referenceAngleBin << 24) + (neighborAngleBin << 16) + lengthBin;
+		return EdgeShape.hash(edge.length, edge.referenceAngle, edge.neighborAngle);
 	}
-	public static boolean matching(EdgeShape probe, EdgeShape candidate) {
-		int lengthDelta = probe.length - candidate.length;
+	public static boolean matching(EdgeShape probe, short length, float referenceAngle, float neighborAngle) {
+		int lengthDelta = probe.length - length;
 		if (lengthDelta >= -Parameters.MAX_DISTANCE_ERROR && lengthDelta <= Parameters.MAX_DISTANCE_ERROR) {
-			float referenceDelta = FloatAngle.difference(probe.referenceAngle, candidate.referenceAngle);
+			float referenceDelta = FloatAngle.difference(probe.referenceAngle, referenceAngle);
 			if (referenceDelta <= Parameters.MAX_ANGLE_ERROR || referenceDelta >= COMPLEMENTARY_MAX_ANGLE_ERROR) {
-				float neighborDelta = FloatAngle.difference(probe.neighborAngle, candidate.neighborAngle);
+				float neighborDelta = FloatAngle.difference(probe.neighborAngle, neighborAngle);
 				if (neighborDelta <= Parameters.MAX_ANGLE_ERROR || neighborDelta >= COMPLEMENTARY_MAX_ANGLE_ERROR)
 					return true;
 			}
@@ -8,18 +8,29 @@ import com.machinezoo.sourceafis.engine.primitives.*;
 
 public class EdgeSpider {
 	private static final float COMPLEMENTARY_MAX_ANGLE_ERROR = FloatAngle.complementary(Parameters.MAX_ANGLE_ERROR);
-	private static List<MinutiaPair> matchPairs(NeighborEdge[] pstar, NeighborEdge[] cstar, MinutiaPairPool pool) {
+	/*
+	 * Stars are sorted by edge length, so matcher budget can limit them to the nearest neighbors by taking a prefix.
+	 */
+	private static List<MinutiaPair> matchPairs(NeighborEdge[] pstar, NeighborEdge[] cstar, int neighbors, MinutiaPairPool pool) {
+		int plength = Math.min(pstar.length, neighbors);
+		int clength = Math.min(cstar.length, neighbors);
 		List<MinutiaPair> results = new ArrayList<>();
 		int start = 0;
 		int end = 0;
-		for (int cindex = 0; cindex < cstar.length; ++cindex) {
+		for (int cindex = 0; cindex < clength; ++cindex) {
 			var cedge = cstar[cindex];
-			while (start < pstar.length && pstar[start].length < cedge.length - Parameters.MAX_DISTANCE_ERROR)
+			while (start < plength && pstar[start].length < cedge.length - Parameters.MAX_DISTANCE_ERROR)
 				++start;
 			if (end < start)
 				end = start;
-			while (end < pstar.length && pstar[end].length <= cedge.length + Parameters.MAX_DISTANCE_ERROR)
+			while (end < plength && pstar[end].length <= cedge.length + Parameters.MAX_DISTANCE_ERROR)
 				++end;
+			/*
+			 * Edge compatibility is tested one edge at a time with short-circuit branches.
+			 * Batched branch-free test producing bitmask of compatible edges was measured to be slower,
+			 * because the length window leaves only a few edges to test and the branches are well predicted.
+			 * Same applies to EdgeHashes.matching(), where most hash collisions are rejected by the length test.
+			 */
 			for (int pindex = start; pindex < end; ++pindex) {
 				var pedge = pstar[pindex];
 				float rdiff = FloatAngle.difference(pedge.referenceAngle, cedge.referenceAngle);
@@ -30,6 +41,9 @@ public class EdgeSpider {
 						pair.probe = pedge.neighbor;
 						pair.candidate = cedge.neighbor;
 						pair.distance = cedge.length;
+						pair.distanceError = Math.abs(pedge.length - cedge.length);
+						pair.referenceError = FloatAngle.distance(pedge.referenceAngle, cedge.referenceAngle);
+						pair.neighborError = FloatAngle.distance(pedge.neighborAngle, cedge.neighborAngle);
 						results.add(pair);
 					}
 				}
@@ -37,11 +51,11 @@ public class EdgeSpider {
 		}
 		return results;
 	}
-	private static void collectEdges(NeighborEdge[][] pedges, NeighborEdge[][] cedges, PairingGraph pairing, PriorityQueue<MinutiaPair> queue) {
+	private static void collectEdges(NeighborEdge[][] pedges, NeighborEdge[][] cedges, int neighbors, PairingGraph pairing, PriorityQueue<MinutiaPair> queue) {
 		var reference = pairing.tree[pairing.count - 1];
 		var pstar = pedges[reference.probe];
 		var cstar = cedges[reference.candidate];
-		for (var pair : matchPairs(pstar, cstar, pairing.pool)) {
+		for (var pair : matchPairs(pstar, cstar, neighbors, pairing.pool)) {
 			pair.probeRef = reference.probe;
 			pair.candidateRef = reference.candidate;
 			if (pairing.byCandidate[pair.candidate] == null && pairing.byProbe[pair.probe] == null)
@@ -54,11 +68,11 @@ public class EdgeSpider {
 		while (!queue.isEmpty() && (pairing.byProbe[queue.peek().probe] != null || pairing.byCandidate[queue.peek().candidate] != null))
 			pairing.support(queue.remove());
 	}
-	public static void crawl(NeighborEdge[][] pedges, NeighborEdge[][] cedges, PairingGraph pairing, MinutiaPair root, PriorityQueue<MinutiaPair> queue) {
+	public static void crawl(NeighborEdge[][] pedges, NeighborEdge[][] cedges, int neighbors, PairingGraph pairing, MinutiaPair root, PriorityQueue<MinutiaPair> queue) {
 		queue.add(root);
 		do {
 			pairing.addPair(queue.remove());
-			collectEdges(pedges, cedges, pairing, queue);
+			collectEdges(pedges, cedges, neighbors, pairing, queue);
 			skipPaired(pairing, queue);
 		} while (!queue.isEmpty());
 	}
@@ -0,0 +1,23 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.matcher;
+
+import com.machinezoo.sourceafis.engine.configuration.*;
+
+/*
+ * Per-matcher limits on matching effort. Default budget reproduces matcher behavior defined by Parameters.
+ * Root edge lookups and edge table neighbors can only be lowered,
+ * because candidate root edges and edge tables are precomputed with templates using default limits.
+ */
+public class MatcherBudget {
+	public static final MatcherBudget DEFAULT = new MatcherBudget(Parameters.MAX_TRIED_ROOTS, Parameters.MAX_ROOT_EDGE_LOOKUPS, Parameters.EDGE_TABLE_NEIGHBORS, true);
+	public final int maxTriedRoots;
+	public final int maxRootEdgeLookups;
+	public final int edgeTableNeighbors;
+	public final boolean supportingEdges;
+	public MatcherBudget(int maxTriedRoots, int maxRootEdgeLookups, int edgeTableNeighbors, boolean supportingEdges) {
+		this.maxTriedRoots = maxTriedRoots;
+		this.maxRootEdgeLookups = Math.min(maxRootEdgeLookups, Parameters.MAX_ROOT_EDGE_LOOKUPS);
+		this.edgeTableNeighbors = Math.min(edgeTableNeighbors, Parameters.EDGE_TABLE_NEIGHBORS);
+		this.supportingEdges = supportingEdges;
+	}
+}
@@ -0,0 +1,19 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.matcher;
+
+import com.machinezoo.sourceafis.engine.features.*;
+
+/*
+ * Relative cost of matching a candidate, used to balance parallel 1:N matching.
+ * Root enumeration performs one edge hash lookup per root edge of the candidate,
+ * which grows quadratically with minutia count until it is capped by MAX_ROOT_EDGE_LOOKUPS at about 40 minutiae.
+ * Constant part covers per-match overhead and pairing, which is bounded by MAX_TRIED_ROOTS.
+ * Fitted on sample templates, where one unit is roughly a quarter of a microsecond.
+ * Actual cost also depends on the probe and on how similar the candidate is to it, which is unknown before matching.
+ */
+public class MatcherCost {
+	public static final int FIXED = 256;
+	public static int estimate(int minutiae) {
+		return FIXED + RootEdges.count(minutiae);
+	}
+}
@@ -5,12 +5,14 @@ import com.machinezoo.sourceafis.engine.templates.*;
 import com.machinezoo.sourceafis.engine.transparency.*;
 
 public class MatcherEngine {
-	public static double match(Probe probe, SearchTemplate candidate) {
+	public static double match(Probe probe, SearchTemplate candidate, MatcherBudget budget) {
 		/*
 		 * Thread-local storage is fairly fast, but it's still a hash lookup,
 		 * so do not access TransparencySink.current() repeatedly in tight loops.
+		 * When transparency is not active, which is the common case, skip all logging calls in the root loop.
 		 */
 		var transparency = TransparencySink.current();
+		boolean logging = transparency != NoTransparency.SINK;
 		var thread = MatcherThread.current();
 		try {
 			thread.pairing.reserveProbe(probe);
@@ -18,19 +20,25 @@ public class MatcherEngine {
 			/*
 			 * Collection of support edges is very slow. It must be disabled on matcher level for it to have no performance impact.
 			 */
-			thread.pairing.supportEnabled = transparency.acceptsPairing();
-			RootEnumerator.enumerate(probe, candidate, thread.roots);
+			thread.pairing.supportEnabled = logging && transparency.acceptsPairing();
+			thread.pairing.supportCounted = budget.supportingEdges;
+			var probeEdges = probe.template.edges();
+			var candidateEdges = candidate.edges();
+			RootEnumerator.enumerate(probe, candidate, thread.roots, budget);
 			// https://sourceafis.machinezoo.com/transparency/roots
-			transparency.logRootPairs(thread.roots.count, thread.roots.pairs);
+			if (logging)
+				transparency.logRootPairs(thread.roots.count, thread.roots.pairs);
 			double high = 0;
 			int best = -1;
 			for (int i = 0; i < thread.roots.count; ++i) {
-				EdgeSpider.crawl(probe.template.edges, candidate.edges, thread.pairing, thread.roots.pairs[i], thread.queue);
-				// https://sourceafis.machinezoo.com/transparency/pairing
-				transparency.logPairing(thread.pairing);
+				EdgeSpider.crawl(probeEdges, candidateEdges, budget.edgeTableNeighbors, thread.pairing, thread.roots.pairs[i], thread.queue);
 				Scoring.compute(probe.template, candidate, thread.pairing, thread.score);
-				// https://sourceafis.machinezoo.com/transparency/score
-				transparency.logScore(thread.score);
+				if (logging) {
+					// https://sourceafis.machinezoo.com/transparency/pairing
+					transparency.logPairing(thread.pairing);
+					// https://sourceafis.machinezoo.com/transparency/score
+					transparency.logScore(thread.score);
+				}
 				double partial = thread.score.shapedScore;
 				if (best < 0 || partial > high) {
 					high = partial;
@@ -38,9 +46,9 @@ public class MatcherEngine {
 				}
 				thread.pairing.clear();
 			}
-			if (best >= 0 && (transparency.acceptsBestPairing() || transparency.acceptsBestScore())) {
+			if (logging && best >= 0 && (transparency.acceptsBestPairing() || transparency.acceptsBestScore())) {
 				thread.pairing.supportEnabled = transparency.acceptsBestPairing();
-				EdgeSpider.crawl(probe.template.edges, candidate.edges, thread.pairing, thread.roots.pairs[best], thread.queue);
+				EdgeSpider.crawl(probeEdges, candidateEdges, budget.edgeTableNeighbors, thread.pairing, thread.roots.pairs[best], thread.queue);
 				// https://sourceafis.machinezoo.com/transparency/pairing
 				transparency.logBestPairing(thread.pairing);
 				Scoring.compute(probe.template, candidate, thread.pairing, thread.score);
@@ -50,7 +58,8 @@ public class MatcherEngine {
 			}
 			thread.roots.discard();
 			// https://sourceafis.machinezoo.com/transparency/best-match
-			transparency.logBestMatch(best);
+			if (logging)
+				transparency.logBestMatch(best);
 			return high;
 		} catch (Throwable ex) {
 			MatcherThread.kill();
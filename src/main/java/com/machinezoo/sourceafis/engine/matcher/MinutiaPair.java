@@ -8,6 +8,12 @@ public class MinutiaPair {
 	public int candidateRef;
 	public int distance;
 	public int supportingEdges;
+	/*
+	 * Errors between probe and candidate edge leading to this pair, saved when the pair is created, so that scoring does not have to recompute edges.
+	 */
+	public int distanceError;
+	public float referenceError;
+	public float neighborError;
 	@Override
 	public String toString() {
 		return String.format("%d<->%d @ %d<->%d #%d", probe, candidate, probeRef, candidateRef, supportingEdges);
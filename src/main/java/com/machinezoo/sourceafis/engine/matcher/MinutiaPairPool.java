@@ -24,6 +24,9 @@ public class MinutiaPairPool {
 		pair.candidateRef = 0;
 		pair.distance = 0;
 		pair.supportingEdges = 0;
+		pair.distanceError = 0;
+		pair.referenceError = 0;
+		pair.neighborError = 0;
 		pool[pooled] = pair;
 	}
 }
@@ -2,6 +2,8 @@
 package com.machinezoo.sourceafis.engine.matcher;
 
 import java.util.*;
+import com.machinezoo.sourceafis.engine.configuration.*;
+import com.machinezoo.sourceafis.engine.features.*;
 import com.machinezoo.sourceafis.engine.templates.*;
 
 public class PairingGraph {
@@ -12,10 +14,26 @@ public class PairingGraph {
 	public MinutiaPair[] byCandidate = new MinutiaPair[1];
 	public final List<MinutiaPair> support = new ArrayList<>();
 	public boolean supportEnabled;
+	/*
+	 * Matcher budget can disable counting of supporting edges. Pairing and scoring then consider only the pairing tree.
+	 */
+	public boolean supportCounted = true;
+	/*
+	 * Scoring statistics are accumulated as pairs are added and supported, so that scoring does not need another pass over the pairing.
+	 * Errors are summed in the order of pairing tree, which is the order in which scoring used to sum them.
+	 */
+	public int supportingEdgeSum;
+	public int supportedMinutiaCount;
+	public int minutiaTypeHits;
+	public int distanceErrorSum;
+	public float angleErrorSum;
+	private SearchMinutia[] probeMinutiae;
+	private SearchMinutia[] candidateMinutiae;
 	public PairingGraph(MinutiaPairPool pool) {
 		this.pool = pool;
 	}
 	public void reserveProbe(Probe probe) {
+		probeMinutiae = probe.template.minutiae;
 		int capacity = probe.template.minutiae.length;
 		if (capacity > tree.length) {
 			tree = new MinutiaPair[capacity];
@@ -23,6 +41,7 @@ public class PairingGraph {
 		}
 	}
 	public void reserveCandidate(SearchTemplate candidate) {
+		candidateMinutiae = candidate.minutiae;
 		int capacity = candidate.minutiae.length;
 		if (byCandidate.length < capacity)
 			byCandidate = new MinutiaPair[capacity];
@@ -31,12 +50,28 @@ public class PairingGraph {
 		tree[count] = pair;
 		byProbe[pair.probe] = pair;
 		byCandidate[pair.candidate] = pair;
+		if (probeMinutiae[pair.probe].type == candidateMinutiae[pair.candidate].type)
+			++minutiaTypeHits;
+		/*
+		 * Root pair has no edge leading to it.
+		 */
+		if (count > 0) {
+			distanceErrorSum += Math.max(Scoring.INNER_DISTANCE_RADIUS, pair.distanceError);
+			angleErrorSum += Math.max(Scoring.INNER_ANGLE_RADIUS, pair.referenceError);
+			angleErrorSum += Math.max(Scoring.INNER_ANGLE_RADIUS, pair.neighborError);
+		}
 		++count;
 	}
+	private void supportMinutia(MinutiaPair pair) {
+		++pair.supportingEdges;
+		++supportingEdgeSum;
+		if (pair.supportingEdges == Parameters.MIN_SUPPORTING_EDGES)
+			++supportedMinutiaCount;
+	}
 	public void support(MinutiaPair pair) {
-		if (byProbe[pair.probe] != null && byProbe[pair.probe].candidate == pair.candidate) {
-			++byProbe[pair.probe].supportingEdges;
-			++byProbe[pair.probeRef].supportingEdges;
+		if (supportCounted && byProbe[pair.probe] != null && byProbe[pair.probe].candidate == pair.candidate) {
+			supportMinutia(byProbe[pair.probe]);
+			supportMinutia(byProbe[pair.probeRef]);
 			if (supportEnabled)
 				support.add(pair);
 			else
@@ -58,6 +93,11 @@ public class PairingGraph {
 			tree[i] = null;
 		}
 		count = 0;
+		supportingEdgeSum = 0;
+		supportedMinutiaCount = 0;
+		minutiaTypeHits = 0;
+		distanceErrorSum = 0;
+		angleErrorSum = 0;
 		if (supportEnabled) {
 			for (MinutiaPair pair : support)
 				pool.release(pair);
@@ -19,10 +19,16 @@ public class Probe {
         this.template = template;
         this.hash = edgeHash;
     }
+    /*
+     * Root edges are used only on candidate side. They are excluded in case the probe template is also matched as a candidate elsewhere.
+     */
     public int memory() {
         return MemoryEstimates.object(2 * MemoryEstimates.REFERENCE, MemoryEstimates.REFERENCE)
-            + template.memory()
-            + MemoryEstimates.object(10 * MemoryEstimates.REFERENCE, MemoryEstimates.REFERENCE)
+            + template.memory() - template.rootMemory()
+            + hashMemory();
+    }
+    public int hashMemory() {
+        return MemoryEstimates.object(10 * MemoryEstimates.REFERENCE, MemoryEstimates.REFERENCE)
             + MemoryEstimates.array(Integer.BYTES, hash.size() * 3 / 2)
             + MemoryEstimates.array(MemoryEstimates.REFERENCE, hash.size() * 3 / 2)
             + hash.values().stream()
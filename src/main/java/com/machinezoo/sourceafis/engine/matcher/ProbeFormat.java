@@ -0,0 +1,187 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.matcher;
+
+import java.nio.*;
+import java.util.*;
+import java.util.zip.*;
+import com.machinezoo.sourceafis.engine.features.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+import com.machinezoo.sourceafis.engine.templates.*;
+import com.machinezoo.sourceafis.engine.transparency.*;
+import it.unimi.dsi.fastutil.ints.*;
+
+/*
+ * Little-endian binary form of prepared probe, i.e. probe template together with its edge hash,
+ * so that matcher can be built once and then loaded in other processes by bulk copying.
+ *
+ * Layout:
+ * - magic "SAFP" (4 bytes)
+ * - format version (u16)
+ * - flags (u16), currently zero
+ * - probe template in compact format with embedded edge table (see CompactTemplateFormat)
+ * - edge count (i32)
+ * - edge references, neighbors (2x u8 per edge), lengths (i16 per edge), reference angles, and neighbor angles (2x f32 per edge)
+ * - bucket count (i32)
+ * - bucket keys (i32 per bucket, ascending), bucket sizes (u16 per bucket)
+ * - edge indexes of all buckets (u16 per bucket entry)
+ * - CRC32C of everything above (u32)
+ *
+ * Every edge appears in several buckets. Edges are therefore stored once and buckets refer to them by index.
+ * Edge order within buckets is preserved, because it determines the order in which roots are tried.
+ */
+public class ProbeFormat {
+	private static final byte[] MAGIC = { 'S', 'A', 'F', 'P' };
+	private static final int VERSION = 1;
+	private static final int HEADER = MAGIC.length + 2 * Short.BYTES;
+	private static final int EDGE = 2 * Byte.BYTES + Short.BYTES + 2 * Float.BYTES;
+	/*
+	 * Checks magic at buffer's position without moving the position.
+	 */
+	public static boolean accepts(ByteBuffer serialized) {
+		if (serialized.remaining() < MAGIC.length)
+			return false;
+		for (int i = 0; i < MAGIC.length; ++i)
+			if (serialized.get(serialized.position() + i) != MAGIC[i])
+				return false;
+		return true;
+	}
+	public static byte[] encode(Probe probe) {
+		byte[] template = CompactTemplateFormat.encode(probe.template, true);
+		int[] keys = probe.hash.keySet().toIntArray();
+		Arrays.sort(keys);
+		/*
+		 * Number edges in the order of their first appearance, so that encoding is deterministic.
+		 */
+		var indexes = new IdentityHashMap<IndexedEdge, Integer>();
+		var edges = new ArrayList<IndexedEdge>();
+		int entries = 0;
+		for (int key : keys) {
+			for (var edge : probe.hash.get(key)) {
+				if (!indexes.containsKey(edge)) {
+					indexes.put(edge, edges.size());
+					edges.add(edge);
+				}
+				++entries;
+			}
+		}
+		int size = HEADER + template.length + Integer.BYTES + edges.size() * EDGE
+			+ Integer.BYTES + keys.length * (Integer.BYTES + Short.BYTES) + entries * Short.BYTES + Integer.BYTES;
+		var buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put(MAGIC);
+		buffer.putShort((short)VERSION);
+		buffer.putShort((short)0);
+		buffer.put(template);
+		buffer.putInt(edges.size());
+		for (var edge : edges)
+			buffer.put((byte)edge.reference());
+		for (var edge : edges)
+			buffer.put((byte)edge.neighbor());
+		for (var edge : edges)
+			buffer.putShort(edge.length);
+		for (var edge : edges)
+			buffer.putFloat(edge.referenceAngle);
+		for (var edge : edges)
+			buffer.putFloat(edge.neighborAngle);
+		buffer.putInt(keys.length);
+		for (int key : keys)
+			buffer.putInt(key);
+		for (int key : keys)
+			buffer.putShort((short)probe.hash.get(key).size());
+		for (int key : keys)
+			for (var edge : probe.hash.get(key))
+				buffer.putShort((short)(int)indexes.get(edge));
+		var crc = new CRC32C();
+		crc.update(buffer.array(), 0, buffer.position());
+		buffer.putInt((int)crc.getValue());
+		return buffer.array();
+	}
+	private static void require(boolean condition, String message) {
+		if (!condition)
+			throw new IllegalArgumentException(message);
+	}
+	private static void available(ByteBuffer buffer, long bytes) {
+		if (buffer.remaining() < bytes)
+			throw new TruncatedTemplateException();
+	}
+	private static boolean edgeAngle(float angle) {
+		return angle >= 0 && angle <= FloatAngle.PI2;
+	}
+	/*
+	 * Reads one probe starting at buffer's position. Position is moved past the probe only if parsing succeeds.
+	 */
+	public static Probe decode(ByteBuffer serialized) {
+		require(accepts(serialized), "Not a serialized probe.");
+		var buffer = serialized.slice().order(ByteOrder.LITTLE_ENDIAN);
+		available(buffer, HEADER);
+		buffer.position(MAGIC.length);
+		require(Short.toUnsignedInt(buffer.getShort()) == VERSION, "Unsupported probe version.");
+		require(buffer.getShort() == 0, "Unknown probe flags.");
+		var template = CompactTemplateFormat.decode(buffer);
+		int minutiae = template.minutiae.length;
+		available(buffer, Integer.BYTES);
+		int edgeCount = buffer.getInt();
+		require(edgeCount >= 0 && edgeCount <= 0xffff, "Edge count out of range.");
+		available(buffer, (long)edgeCount * EDGE);
+		byte[] references = new byte[edgeCount];
+		buffer.get(references);
+		byte[] neighbors = new byte[edgeCount];
+		buffer.get(neighbors);
+		short[] lengths = new short[edgeCount];
+		buffer.asShortBuffer().get(lengths);
+		buffer.position(buffer.position() + edgeCount * Short.BYTES);
+		float[] referenceAngles = new float[edgeCount];
+		buffer.asFloatBuffer().get(referenceAngles);
+		buffer.position(buffer.position() + edgeCount * Float.BYTES);
+		float[] neighborAngles = new float[edgeCount];
+		buffer.asFloatBuffer().get(neighborAngles);
+		buffer.position(buffer.position() + edgeCount * Float.BYTES);
+		var edges = new IndexedEdge[edgeCount];
+		for (int i = 0; i < edgeCount; ++i) {
+			int reference = Byte.toUnsignedInt(references[i]);
+			int neighbor = Byte.toUnsignedInt(neighbors[i]);
+			require(reference < minutiae && neighbor < minutiae && reference != neighbor, "Edge endpoint out of range.");
+			require(lengths[i] >= 0, "Negative edge length.");
+			require(edgeAngle(referenceAngles[i]) && edgeAngle(neighborAngles[i]), "Edge angle out of range.");
+			edges[i] = new IndexedEdge(lengths[i], referenceAngles[i], neighborAngles[i], reference, neighbor);
+		}
+		available(buffer, Integer.BYTES);
+		int bucketCount = buffer.getInt();
+		require(bucketCount >= 0, "Negative bucket count.");
+		available(buffer, (long)bucketCount * (Integer.BYTES + Short.BYTES));
+		int[] keys = new int[bucketCount];
+		buffer.asIntBuffer().get(keys);
+		buffer.position(buffer.position() + bucketCount * Integer.BYTES);
+		short[] sizes = new short[bucketCount];
+		buffer.asShortBuffer().get(sizes);
+		buffer.position(buffer.position() + bucketCount * Short.BYTES);
+		long entries = 0;
+		for (short size : sizes)
+			entries += Short.toUnsignedInt(size);
+		available(buffer, entries * Short.BYTES + Integer.BYTES);
+		int end = buffer.position() + (int)entries * Short.BYTES;
+		var crc = new CRC32C();
+		crc.update(buffer.duplicate().position(0).limit(end));
+		require(buffer.getInt(end) == (int)crc.getValue(), "Probe checksum mismatch.");
+		short[] indexes = new short[(int)entries];
+		buffer.asShortBuffer().get(indexes);
+		buffer.position(end + Integer.BYTES);
+		Int2ObjectMap<List<IndexedEdge>> hash = new Int2ObjectOpenHashMap<>(bucketCount);
+		int offset = 0;
+		for (int i = 0; i < bucketCount; ++i) {
+			require(i == 0 || keys[i] > keys[i - 1], "Bucket keys are not sorted.");
+			int size = Short.toUnsignedInt(sizes[i]);
+			require(size > 0, "Empty bucket.");
+			var bucket = new ArrayList<IndexedEdge>(size);
+			for (int j = 0; j < size; ++j, ++offset) {
+				int index = Short.toUnsignedInt(indexes[offset]);
+				require(index < edgeCount, "Edge index out of range.");
+				bucket.add(edges[index]);
+			}
+			hash.put(keys[i], bucket);
+		}
+		serialized.position(serialized.position() + buffer.position());
+		// https://sourceafis.machinezoo.com/transparency/edge-hash
+		TransparencySink.current().logEdgeHash(hash);
+		return new Probe(template, hash);
+	}
+}
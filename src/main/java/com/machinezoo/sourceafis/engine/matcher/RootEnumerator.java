@@ -6,8 +6,49 @@ import com.machinezoo.sourceafis.engine.features.*;
 import com.machinezoo.sourceafis.engine.templates.*;
 
 public class RootEnumerator {
-	public static void enumerate(Probe probe, SearchTemplate candidate, RootList roots) {
-		var cminutiae = candidate.minutiae;
+	public static void enumerate(Probe probe, SearchTemplate candidate, RootList roots, MatcherBudget budget) {
+		var cedges = candidate.reusedRootEdges();
+		if (cedges != null)
+			enumerate(probe, cedges, roots, budget);
+		else
+			enumerate(probe, candidate.minutiae, roots, budget);
+	}
+	private static void add(IndexedEdge match, int creference, RootList roots) {
+		int duplicateKey = (match.reference() << 16) | creference;
+		if (roots.duplicates.add(duplicateKey)) {
+			MinutiaPair pair = roots.pool.allocate();
+			pair.probe = match.reference();
+			pair.candidate = creference;
+			roots.add(pair);
+		}
+	}
+	/*
+	 * Candidate edges are precomputed with the template in lookup order and already limited to MAX_ROOT_EDGE_LOOKUPS.
+	 * Budget can only shorten the sequence.
+	 */
+	private static void enumerate(Probe probe, RootEdges cedges, RootList roots, MatcherBudget budget) {
+		int lookups = Math.min(cedges.count, budget.maxRootEdgeLookups);
+		int tried = 0;
+		for (int i = 0; i < lookups; ++i) {
+			var matches = probe.hash.get(cedges.hashes[i]);
+			if (matches != null) {
+				int creference = cedges.references[i];
+				for (var match : matches) {
+					if (EdgeHashes.matching(match, cedges.lengths[i], cedges.referenceAngles[i], cedges.neighborAngles[i])) {
+						add(match, creference, roots);
+						++tried;
+						if (tried >= budget.maxTriedRoots)
+							return;
+					}
+				}
+			}
+		}
+	}
+	/*
+	 * Same sequence as in RootEdges, but computed on the fly, so that enumeration of templates matched only once
+	 * stops as soon as enough roots are found instead of computing the whole sequence.
+	 */
+	private static void enumerate(Probe probe, SearchMinutia[] cminutiae, RootList roots, MatcherBudget budget) {
 		int lookups = 0;
 		int tried = 0;
 		for (boolean shortEdges : new boolean[] { false, true }) {
@@ -17,26 +58,20 @@ public class RootEnumerator {
 						int cneighbor = (creference + period) % cminutiae.length;
 						var cedge = new EdgeShape(cminutiae[creference], cminutiae[cneighbor]);
 						if ((cedge.length >= Parameters.MIN_ROOT_EDGE_LENGTH) ^ shortEdges) {
+							if (lookups >= budget.maxRootEdgeLookups)
+								return;
 							var matches = probe.hash.get(EdgeHashes.hash(cedge));
 							if (matches != null) {
 								for (var match : matches) {
-									if (EdgeHashes.matching(match, cedge)) {
-										int duplicateKey = (match.reference() << 16) | creference;
-										if (roots.duplicates.add(duplicateKey)) {
-											MinutiaPair pair = roots.pool.allocate();
-											pair.probe = match.reference();
-											pair.candidate = creference;
-											roots.add(pair);
-										}
+									if (EdgeHashes.matching(match, cedge.length, cedge.referenceAngle, cedge.neighborAngle)) {
+										add(match, creference, roots);
 										++tried;
-										if (tried >= Parameters.MAX_TRIED_ROOTS)
+										if (tried >= budget.maxTriedRoots)
 											return;
 									}
 								}
 							}
 							++lookups;
-							if (lookups >= Parameters.MAX_ROOT_EDGE_LOOKUPS)
-								return;
 						}
 					}
 				}
@@ -1,18 +1,24 @@
 // Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
 package com.machinezoo.sourceafis.engine.matcher;
 
+import java.util.*;
 import com.machinezoo.sourceafis.engine.configuration.*;
 import it.unimi.dsi.fastutil.ints.*;
 
 public class RootList {
 	public final MinutiaPairPool pool;
 	public int count;
-	public final MinutiaPair[] pairs = new MinutiaPair[Parameters.MAX_TRIED_ROOTS];
+	public MinutiaPair[] pairs = new MinutiaPair[Parameters.MAX_TRIED_ROOTS];
 	public final IntSet duplicates = new IntOpenHashSet();
 	public RootList(MinutiaPairPool pool) {
 		this.pool = pool;
 	}
 	public void add(MinutiaPair pair) {
+		/*
+		 * Matcher budget can allow more roots than the default.
+		 */
+		if (count >= pairs.length)
+			pairs = Arrays.copyOf(pairs, 2 * pairs.length);
 		pairs[count] = pair;
 		++count;
 	}
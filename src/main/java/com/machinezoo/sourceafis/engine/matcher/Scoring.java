@@ -2,11 +2,15 @@
 package com.machinezoo.sourceafis.engine.matcher;
 
 import com.machinezoo.sourceafis.engine.configuration.*;
-import com.machinezoo.sourceafis.engine.features.*;
 import com.machinezoo.sourceafis.engine.primitives.*;
 import com.machinezoo.sourceafis.engine.templates.*;
 
 public class Scoring {
+	static final int INNER_DISTANCE_RADIUS = (int)Math.round(Parameters.DISTANCE_ERROR_FLATNESS * Parameters.MAX_DISTANCE_ERROR);
+	static final float INNER_ANGLE_RADIUS = (float)(Parameters.ANGLE_ERROR_FLATNESS * Parameters.MAX_ANGLE_ERROR);
+	/*
+	 * Sums over pairs were accumulated in PairingGraph during the crawl. Only the final score is computed here.
+	 */
 	public static void compute(SearchTemplate probe, SearchTemplate candidate, PairingGraph pairing, ScoringData score) {
 		var pminutiae = probe.minutiae;
 		var cminutiae = candidate.minutiae;
@@ -16,33 +20,15 @@ public class Scoring {
 		score.minutiaFractionInCandidate = pairing.count / (double)cminutiae.length;
 		score.minutiaFraction = 0.5 * (score.minutiaFractionInProbe + score.minutiaFractionInCandidate);
 		score.minutiaFractionScore = Parameters.MINUTIA_FRACTION_SCORE * score.minutiaFraction;
-		score.supportingEdgeSum = 0;
-		score.supportedMinutiaCount = 0;
-		score.minutiaTypeHits = 0;
-		for (int i = 0; i < pairing.count; ++i) {
-			MinutiaPair pair = pairing.tree[i];
-			score.supportingEdgeSum += pair.supportingEdges;
-			if (pair.supportingEdges >= Parameters.MIN_SUPPORTING_EDGES)
-				++score.supportedMinutiaCount;
-			if (pminutiae[pair.probe].type == cminutiae[pair.candidate].type)
-				++score.minutiaTypeHits;
-		}
+		score.supportingEdgeSum = pairing.supportingEdgeSum;
+		score.supportedMinutiaCount = pairing.supportedMinutiaCount;
+		score.minutiaTypeHits = pairing.minutiaTypeHits;
 		score.edgeCount = pairing.count + score.supportingEdgeSum;
 		score.edgeScore = Parameters.EDGE_SCORE * score.edgeCount;
 		score.supportedMinutiaScore = Parameters.SUPPORTED_MINUTIA_SCORE * score.supportedMinutiaCount;
 		score.minutiaTypeScore = Parameters.MINUTIA_TYPE_SCORE * score.minutiaTypeHits;
-		int innerDistanceRadius = (int)Math.round(Parameters.DISTANCE_ERROR_FLATNESS * Parameters.MAX_DISTANCE_ERROR);
-		float innerAngleRadius = (float)(Parameters.ANGLE_ERROR_FLATNESS * Parameters.MAX_ANGLE_ERROR);
-		score.distanceErrorSum = 0;
-		score.angleErrorSum = 0;
-		for (int i = 1; i < pairing.count; ++i) {
-			MinutiaPair pair = pairing.tree[i];
-			EdgeShape probeEdge = new EdgeShape(pminutiae[pair.probeRef], pminutiae[pair.probe]);
-			EdgeShape candidateEdge = new EdgeShape(cminutiae[pair.candidateRef], cminutiae[pair.candidate]);
-			score.distanceErrorSum += Math.max(innerDistanceRadius, Math.abs(probeEdge.length - candidateEdge.length));
-			score.angleErrorSum += Math.max(innerAngleRadius, FloatAngle.distance(probeEdge.referenceAngle, candidateEdge.referenceAngle));
-			score.angleErrorSum += Math.max(innerAngleRadius, FloatAngle.distance(probeEdge.neighborAngle, candidateEdge.neighborAngle));
-		}
+		score.distanceErrorSum = pairing.distanceErrorSum;
+		score.angleErrorSum = pairing.angleErrorSum;
 		score.distanceAccuracyScore = 0;
 		score.angleAccuracyScore = 0;
 		int distanceErrorPotential = Parameters.MAX_DISTANCE_ERROR * Math.max(0, pairing.count - 1);
@@ -0,0 +1,18 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.primitives;
+
+import java.nio.*;
+
+public class ByteBuffers {
+	/*
+	 * Returns bytes between position and limit without moving the position.
+	 * Backing array is returned directly when it contains exactly these bytes. Otherwise bytes are copied.
+	 */
+	public static byte[] array(ByteBuffer buffer) {
+		if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.limit() == buffer.array().length)
+			return buffer.array();
+		byte[] array = new byte[buffer.remaining()];
+		buffer.duplicate().get(array);
+		return array;
+	}
+}
@@ -0,0 +1,44 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.primitives;
+
+import java.time.*;
+
+/*
+ * Point in System.nanoTime() time. Deadlines cross process boundaries as remaining time, because nanoTime() is local to the JVM.
+ */
+public class Deadline {
+	public static final Deadline NONE = new Deadline(0, false);
+	/*
+	 * Comparison of nanoTime() values is only valid for spans shorter than 2^63 ns. Longer timeouts are as good as none.
+	 */
+	private static final long FOREVER = Long.MAX_VALUE / 2;
+	private final long time;
+	private final boolean bounded;
+	private Deadline(long time, boolean bounded) {
+		this.time = time;
+		this.bounded = bounded;
+	}
+	public static Deadline afterNanos(long nanos) {
+		if (nanos >= FOREVER)
+			return NONE;
+		return new Deadline(System.nanoTime() + Math.max(0, nanos), true);
+	}
+	public static Deadline after(Duration timeout) {
+		long nanos;
+		try {
+			nanos = timeout.toNanos();
+		} catch (ArithmeticException ex) {
+			nanos = timeout.isNegative() ? 0 : Long.MAX_VALUE;
+		}
+		return afterNanos(nanos);
+	}
+	public boolean expired() {
+		return bounded && System.nanoTime() - time >= 0;
+	}
+	/*
+	 * Returns Long.MAX_VALUE for unbounded deadline.
+	 */
+	public long remainingNanos() {
+		return bounded ? Math.max(0, time - System.nanoTime()) : Long.MAX_VALUE;
+	}
+}
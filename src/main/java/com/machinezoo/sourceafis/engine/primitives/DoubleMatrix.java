@@ -4,7 +4,11 @@ package com.machinezoo.sourceafis.engine.primitives;
 public class DoubleMatrix {
 	public final int width;
 	public final int height;
-	private final double[] cells;
+	/*
+	 * Row-major storage. It is exposed, so that extractor kernels can run tight loops over rows,
+	 * which JIT compiler can vectorize, instead of calling get() and set() for every pixel.
+	 */
+	public final double[] cells;
 	public DoubleMatrix(int width, int height) {
 		this.width = width;
 		this.height = height;
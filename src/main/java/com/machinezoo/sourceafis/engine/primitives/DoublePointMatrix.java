@@ -4,7 +4,10 @@ package com.machinezoo.sourceafis.engine.primitives;
 public class DoublePointMatrix {
 	public final int width;
 	public final int height;
-	private final double[] vectors;
+	/*
+	 * Row-major storage with X and Y of every vector interleaved. It is exposed for extractor kernels like cells in DoubleMatrix.
+	 */
+	public final double[] vectors;
 	public DoublePointMatrix(int width, int height) {
 		this.width = width;
 		this.height = height;
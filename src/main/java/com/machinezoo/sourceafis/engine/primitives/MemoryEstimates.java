@@ -1,6 +1,9 @@
 // Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
 package com.machinezoo.sourceafis.engine.primitives;
 
+import java.lang.management.*;
+import java.lang.reflect.*;
+
 /*
  * JOL library can measure memory footprint of objects,
  * but its recent versions require special permissions (granted on command line or otherwise)
@@ -61,22 +64,101 @@ public class MemoryEstimates {
     }
     private static final int BITNESS = detectBitness();
     /*
-     * Assume compressed 32-bit references even on 64-bit platforms.
-     * This will be wrong on 32GB+ heaps or when compressed references are disabled (-XX:-UseCompressedOops).
+     * Object layout is configurable on HotSpot. Compressed references are disabled automatically on 32GB+ heaps,
+     * which makes the default assumptions wrong exactly where memory estimates matter the most.
+     * We therefore read layout options from the diagnostic MXBean. It is accessed via reflection,
+     * so that we depend only on the standard java.management module and degrade gracefully on other JVMs.
+     */
+    @SuppressWarnings("unchecked")
+    private static String option(String name) {
+        try {
+            var type = (Class<? extends PlatformManagedObject>)Class.forName("com.sun.management.HotSpotDiagnosticMXBean");
+            var option = type.getMethod("getVMOption", String.class).invoke(ManagementFactory.getPlatformMXBean(type), name);
+            return (String)option.getClass().getMethod("getValue").invoke(option);
+        } catch (Throwable ex) {
+            return null;
+        }
+    }
+    /*
+     * Other JVMs do not expose HotSpot options. Reference size is then measured from the number of bytes the current thread allocates
+     * when creating reference arrays of two different lengths. The difference is not affected by headers or padding.
+     * Returns zero if the measurement is not supported or it is inconclusive.
+     */
+    private static final int SAMPLES = 1000;
+    private static Object[][] sink;
+    private static long measureArrays(Method allocated, ThreadMXBean threads, long thread, int length) throws Exception {
+        long start = (Long)allocated.invoke(threads, thread);
+        var arrays = new Object[SAMPLES][];
+        for (int i = 0; i < SAMPLES; ++i)
+            arrays[i] = new Object[length];
+        long end = (Long)allocated.invoke(threads, thread);
+        /*
+         * Publish the arrays, so that JIT compiler cannot eliminate the allocations.
+         */
+        sink = arrays;
+        sink = null;
+        return end - start;
+    }
+    private static int measureReference() {
+        try {
+            var allocated = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+            var threads = ManagementFactory.getThreadMXBean();
+            long thread = Thread.currentThread().getId();
+            /*
+             * Take the minimum of several attempts to filter out unrelated allocations.
+             */
+            long shorter = Long.MAX_VALUE;
+            long longer = Long.MAX_VALUE;
+            for (int attempt = 0; attempt < 3; ++attempt) {
+                shorter = Math.min(shorter, measureArrays(allocated, threads, thread, 0));
+                longer = Math.min(longer, measureArrays(allocated, threads, thread, 16));
+            }
+            long reference = Math.round((longer - shorter) / (16.0 * SAMPLES));
+            return reference == 4 || reference == 8 ? (int)reference : 0;
+        } catch (Throwable ex) {
+            return 0;
+        }
+    }
+    private static boolean flag(String value, boolean fallback) {
+        return value != null ? Boolean.parseBoolean(value) : fallback;
+    }
+    private static final String COMPRESSED_REFERENCES = option("UseCompressedOops");
+    private static final String COMPRESSED_CLASSES = option("UseCompressedClassPointers");
+    private static final String COMPACT_HEADERS = option("UseCompactObjectHeaders");
+    private static final String ALIGNMENT = option("ObjectAlignmentInBytes");
+    private static final int MEASURED_REFERENCE = BITNESS == 64 && COMPRESSED_REFERENCES == null ? measureReference() : 0;
+    /*
+     * Layout was either read from VM options, measured, or assumed.
      */
-    public static final int REFERENCE = 4;
+    public static final String SOURCE = COMPRESSED_REFERENCES != null ? "options" : MEASURED_REFERENCE != 0 ? "measured" : "assumed";
+    /*
+     * Without any information, assume compressed 32-bit references even on 64-bit platforms, because that is the default on heaps under 32GB.
+     */
+    public static final int REFERENCE = BITNESS == 32 ? 4
+        : MEASURED_REFERENCE != 0 ? MEASURED_REFERENCE
+        : flag(COMPRESSED_REFERENCES, true) ? 4 : 8;
     /*
      * Mark word in standard object layout matches platform bitness.
      */
     private static final int MARK = BITNESS / 8;
+    /*
+     * Class pointers are compressed independently of references since Java 15.
+     * If we have no information, assume they are compressed together with references as in Java 11.
+     */
+    public static final int CLASS_POINTER = BITNESS == 32 ? 4 : flag(COMPRESSED_CLASSES, REFERENCE == 4) ? 4 : 8;
     /*
      * Assume standard object layout: mark word + class pointer.
+     * Compact object headers (Java 24+) store class pointer in the mark word.
      */
-    private static final int OBJECT_HEADER = MARK + REFERENCE;
+    public static final int OBJECT_HEADER = flag(COMPACT_HEADERS, false) ? MARK : MARK + CLASS_POINTER;
     /*
      * Assume that padding ensures alignment of longs and doubles even on 32-bit platforms.
+     * HotSpot allows configuring larger alignment.
      */
-    private static final int PADDING = 8;
+    public static final int PADDING = ALIGNMENT != null ? Integer.parseInt(ALIGNMENT) : 8;
+    public static String describe() {
+        return String.format("%d-bit JVM, %d-byte references, %d-byte object header, %d-byte alignment (%s)", BITNESS, REFERENCE, OBJECT_HEADER, PADDING, SOURCE);
+    }
     private static int pad(int padding, int size) { return (size + padding - 1) / padding * padding; }
     private static int pad(int size) { return pad(PADDING, size); }
     /*
@@ -0,0 +1,59 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.primitives;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/*
+ * Maps items in parallel while delivering results in input order on the calling thread.
+ * Number of items in flight is bounded, so that memory stays bounded no matter how long the input is.
+ * Input iterator and output consumer are only ever called from the calling thread, so they don't need to be thread-safe.
+ */
+public class ParallelPipeline {
+	/*
+	 * Enough items in flight to keep all cores busy even if some items take much longer than others.
+	 */
+	public static int window() {
+		return 16 * ForkJoinPool.commonPool().getParallelism();
+	}
+	public static <I, O> void run(Iterator<I> input, Function<I, O> mapper, Consumer<O> output) {
+		/*
+		 * Single-core machines gain nothing from parallelism. CompletableFuture would even spawn a thread per task there.
+		 */
+		if (ForkJoinPool.getCommonPoolParallelism() < 2) {
+			while (input.hasNext())
+				output.accept(mapper.apply(input.next()));
+			return;
+		}
+		int window = window();
+		var pending = new ArrayDeque<CompletableFuture<O>>(window);
+		try {
+			while (input.hasNext()) {
+				if (pending.size() >= window)
+					output.accept(join(pending.poll()));
+				I item = input.next();
+				pending.add(CompletableFuture.supplyAsync(() -> mapper.apply(item), ForkJoinPool.commonPool()));
+			}
+			while (!pending.isEmpty())
+				output.accept(join(pending.poll()));
+		} finally {
+			/*
+			 * If output or input throws, don't leave orphaned tasks behind.
+			 */
+			for (var future : pending)
+				future.cancel(false);
+		}
+	}
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException ex) {
+			if (ex.getCause() instanceof RuntimeException)
+				throw (RuntimeException)ex.getCause();
+			if (ex.getCause() instanceof Error)
+				throw (Error)ex.getCause();
+			throw ex;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.primitives;
+
+/*
+ * Table-driven length and angle of integer vectors, which avoids sqrt() and atan2() in edge construction.
+ * Vectors are folded into the first quadrant, where length and angle are looked up in precomputed tables.
+ * Results are exact (rounded length, float angle) for vectors shorter than RADIUS in both coordinates.
+ * Longer vectors are scaled down by the smallest power of two that makes them fit in the tables,
+ * which loses some precision, but it is deterministic and edges that long are rarely important.
+ */
+public class PolarCache {
+	public static final int BITS = 8;
+	public static final int RADIUS = 1 << BITS;
+	private static final int[] DISTANCES = new int[Integers.sq(RADIUS)];
+	private static final float[] ANGLES = new float[Integers.sq(RADIUS)];
+	static {
+		for (int y = 0; y < RADIUS; ++y)
+			for (int x = 0; x < RADIUS; ++x) {
+				DISTANCES[y * RADIUS + x] = (int)Math.round(Math.sqrt(Integers.sq(x) + Integers.sq(y)));
+				if (y > 0 || x > 0)
+					ANGLES[y * RADIUS + x] = (float)DoubleAngle.atan(new DoublePoint(x, y));
+				else
+					ANGLES[y * RADIUS + x] = 0;
+			}
+	}
+	/*
+	 * Coordinates must be non-negative.
+	 */
+	private static int shift(int x, int y) {
+		return 32 - Integer.numberOfLeadingZeros((x | y) >>> BITS);
+	}
+	public static int length(int x, int y) {
+		x = Math.abs(x);
+		y = Math.abs(y);
+		int shift = shift(x, y);
+		return DISTANCES[(y >> shift) * RADIUS + (x >> shift)] << shift;
+	}
+	/*
+	 * Returns angle in range [0, 2 * PI). Zero vector has zero angle.
+	 */
+	public static float angle(int x, int y) {
+		float quadrant = 0;
+		if (y < 0) {
+			x = -x;
+			y = -y;
+			quadrant = FloatAngle.PI;
+		}
+		if (x < 0) {
+			int tmp = -x;
+			x = y;
+			y = tmp;
+			quadrant += FloatAngle.HALF_PI;
+		}
+		int shift = shift(x, y);
+		return ANGLES[(y >> shift) * RADIUS + (x >> shift)] + quadrant;
+	}
+}
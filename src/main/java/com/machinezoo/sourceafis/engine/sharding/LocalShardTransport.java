@@ -0,0 +1,50 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.sharding;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import com.machinezoo.sourceafis.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+
+public class LocalShardTransport implements FingerprintShardTransport {
+	private final List<ShardHandler> shards;
+	private final Executor executor;
+	public LocalShardTransport(List<ShardHandler> shards, Executor executor) {
+		this.shards = List.copyOf(shards);
+		this.executor = executor;
+	}
+	@Override
+	public int shards() {
+		return shards.size();
+	}
+	@Override
+	public CompletableFuture<List<FingerprintShardHit>> search(int shard, byte[] probe, int limit, double threshold) {
+		return search(shard, new ShardRequest(probe, limit, threshold, Deadline.NONE));
+	}
+	@Override
+	public CompletableFuture<List<FingerprintShardHit>> search(int shard, byte[] probe, int limit, double threshold, Duration timeout) {
+		return search(shard, new ShardRequest(probe, limit, threshold, Deadline.after(timeout)));
+	}
+	private CompletableFuture<List<FingerprintShardHit>> search(int shard, ShardRequest request) {
+		var handler = shards.get(shard);
+		var future = CompletableFuture.supplyAsync(() -> {
+			try {
+				return handler.search(request);
+			} catch (TimeoutException ex) {
+				/*
+				 * Future.get() then throws ExecutionException with TimeoutException as its cause.
+				 */
+				throw new CompletionException(ex);
+			}
+		}, executor);
+		/*
+		 * Cancellation of CompletableFuture does not interrupt the task. Running search polls the flag instead.
+		 */
+		future.whenComplete((hits, error) -> {
+			if (future.isCancelled())
+				request.cancel();
+		});
+		return future;
+	}
+}
@@ -0,0 +1,15 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.sharding;
+
+import java.util.*;
+import java.util.concurrent.*;
+import com.machinezoo.sourceafis.*;
+
+/*
+ * Shard-side search. TimeoutException means the search was cut off by deadline or cancellation
+ * and some candidates were not matched. It must not be confused with successful response.
+ */
+@FunctionalInterface
+public interface ShardHandler {
+	List<FingerprintShardHit> search(ShardRequest request) throws TimeoutException;
+}
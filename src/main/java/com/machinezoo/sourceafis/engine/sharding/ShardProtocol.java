@@ -0,0 +1,93 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.sharding;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import com.machinezoo.sourceafis.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+
+/*
+ * Wire format of socket transport. Every connection carries one request and one response.
+ *
+ * Request: magic "SAFS" (i32), limit (i32), threshold (f64), timeout in nanoseconds (i64, Long.MAX_VALUE if none), probe length (i32), probe bytes.
+ * Timeout is time remaining until client's deadline when the request is sent. Server counts it from the moment it reads the request.
+ * Response: magic (i32), status (i32), and then either hit count (i32) followed by ID (UTF) and score (f64) of every hit if status is OK,
+ * error message (UTF) if status is ERROR, or nothing if status is TIMEOUT, which means the search was cut off by the deadline.
+ *
+ * All numbers are big-endian as written by DataOutputStream.
+ */
+public class ShardProtocol {
+	private static final int MAGIC = 0x53414653;
+	private static final int OK = 0;
+	private static final int ERROR = 1;
+	private static final int TIMEOUT = 2;
+	/*
+	 * Limits protect the server from allocating huge arrays when it receives garbage.
+	 */
+	private static final int MAX_PROBE = 16 << 20;
+	private static final int MAX_HITS = 1 << 20;
+	public static void writeRequest(DataOutputStream output, ShardRequest request) throws IOException {
+		output.writeInt(MAGIC);
+		output.writeInt(request.limit);
+		output.writeDouble(request.threshold);
+		output.writeLong(request.deadline.remainingNanos());
+		output.writeInt(request.probe.length);
+		output.write(request.probe);
+		output.flush();
+	}
+	private static void magic(DataInputStream input) throws IOException {
+		if (input.readInt() != MAGIC)
+			throw new IOException("Not a shard protocol message.");
+	}
+	public static ShardRequest readRequest(DataInputStream input) throws IOException {
+		magic(input);
+		int limit = input.readInt();
+		double threshold = input.readDouble();
+		long timeout = input.readLong();
+		int length = input.readInt();
+		if (limit < 0 || limit > MAX_HITS || timeout < 0 || length < 0 || length > MAX_PROBE)
+			throw new IOException("Malformed shard request.");
+		byte[] probe = new byte[length];
+		input.readFully(probe);
+		return new ShardRequest(probe, limit, threshold, Deadline.afterNanos(timeout));
+	}
+	public static void writeHits(DataOutputStream output, List<FingerprintShardHit> hits) throws IOException {
+		output.writeInt(MAGIC);
+		output.writeInt(OK);
+		output.writeInt(hits.size());
+		for (var hit : hits) {
+			output.writeUTF(hit.id());
+			output.writeDouble(hit.score());
+		}
+		output.flush();
+	}
+	public static void writeError(DataOutputStream output, String message) throws IOException {
+		output.writeInt(MAGIC);
+		output.writeInt(ERROR);
+		output.writeUTF(message != null ? message : "Shard search failed.");
+		output.flush();
+	}
+	public static void writeTimeout(DataOutputStream output) throws IOException {
+		output.writeInt(MAGIC);
+		output.writeInt(TIMEOUT);
+		output.flush();
+	}
+	public static List<FingerprintShardHit> readResponse(DataInputStream input) throws IOException, TimeoutException {
+		magic(input);
+		int status = input.readInt();
+		if (status == TIMEOUT)
+			throw new TimeoutException("Shard search did not finish before the deadline.");
+		if (status != OK)
+			throw new IOException("Shard error: " + input.readUTF());
+		int count = input.readInt();
+		if (count < 0 || count > MAX_HITS)
+			throw new IOException("Malformed shard response.");
+		var hits = new ArrayList<FingerprintShardHit>(count);
+		for (int i = 0; i < count; ++i) {
+			String id = input.readUTF();
+			hits.add(new FingerprintShardHit(id, input.readDouble()));
+		}
+		return hits;
+	}
+}
@@ -0,0 +1,27 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.sharding;
+
+import com.machinezoo.sourceafis.engine.primitives.*;
+
+public class ShardRequest {
+	public final byte[] probe;
+	public final int limit;
+	public final double threshold;
+	public final Deadline deadline;
+	/*
+	 * Set when the client is no longer interested in the result, so that the shard stops searching.
+	 */
+	private volatile boolean cancelled;
+	public ShardRequest(byte[] probe, int limit, double threshold, Deadline deadline) {
+		this.probe = probe;
+		this.limit = limit;
+		this.threshold = threshold;
+		this.deadline = deadline;
+	}
+	public void cancel() {
+		cancelled = true;
+	}
+	public boolean expired() {
+		return cancelled || deadline.expired();
+	}
+}
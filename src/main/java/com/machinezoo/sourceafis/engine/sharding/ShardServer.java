@@ -0,0 +1,95 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.sharding;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import com.machinezoo.closeablescope.CloseableScope;
+import com.machinezoo.noexception.*;
+import com.machinezoo.sourceafis.*;
+
+public class ShardServer implements CloseableScope {
+	/*
+	 * Clients that connect and then stall must not occupy worker threads forever.
+	 */
+	private static final int READ_TIMEOUT = 30_000;
+	private static final int ACCEPT_BACKOFF = 100;
+	private final ServerSocket socket;
+	private final ShardHandler handler;
+	/*
+	 * Search is CPU-bound, so there is no point in running more searches than there are cores.
+	 * Excess connections wait in the queue.
+	 */
+	private final ExecutorService workers;
+	public ShardServer(ServerSocket socket, ShardHandler handler) {
+		this.socket = socket;
+		this.handler = handler;
+		workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), ShardThreads.factory("sourceafis-shard"));
+		var acceptor = ShardThreads.factory("sourceafis-shard-acceptor").newThread(this::accept);
+		acceptor.start();
+	}
+	private void accept() {
+		while (!socket.isClosed()) {
+			try {
+				var connection = socket.accept();
+				try {
+					workers.execute(() -> handle(connection));
+				} catch (RejectedExecutionException ex) {
+					connection.close();
+				}
+			} catch (IOException ex) {
+				/*
+				 * Accept fails when the server socket is closed.
+				 */
+				if (socket.isClosed())
+					return;
+				/*
+				 * Other failures are usually transient, but some of them, for example running out of file descriptors,
+				 * persist for a while. Back off, so that the loop does not spin.
+				 */
+				if (!backoff())
+					return;
+			}
+		}
+	}
+	/*
+	 * Returns false if the acceptor thread was interrupted and should stop.
+	 */
+	private static boolean backoff() {
+		try {
+			Thread.sleep(ACCEPT_BACKOFF);
+			return true;
+		} catch (InterruptedException ex) {
+			return false;
+		}
+	}
+	private void handle(Socket connection) {
+		try (connection) {
+			connection.setSoTimeout(READ_TIMEOUT);
+			var input = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+			var output = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+			var request = ShardProtocol.readRequest(input);
+			List<FingerprintShardHit> hits;
+			try {
+				hits = handler.search(request);
+			} catch (TimeoutException ex) {
+				ShardProtocol.writeTimeout(output);
+				return;
+			} catch (RuntimeException ex) {
+				ShardProtocol.writeError(output, ex.getMessage());
+				return;
+			}
+			ShardProtocol.writeHits(output, hits);
+		} catch (IOException ex) {
+			/*
+			 * Client went away or sent garbage. There is nobody to report the error to.
+			 */
+		}
+	}
+	@Override
+	public void close() {
+		Exceptions.wrap().run(socket::close);
+		workers.shutdown();
+	}
+}
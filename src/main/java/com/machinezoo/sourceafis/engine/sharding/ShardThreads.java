@@ -0,0 +1,19 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.sharding;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class ShardThreads {
+	/*
+	 * Daemon threads, so that forgotten servers and transports do not keep the JVM alive.
+	 */
+	public static ThreadFactory factory(String name) {
+		var counter = new AtomicInteger();
+		return runnable -> {
+			var thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,71 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.sharding;
+
+import java.io.*;
+import java.net.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import com.machinezoo.sourceafis.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+
+public class SocketShardTransport implements FingerprintShardTransport {
+	private final List<InetSocketAddress> addresses;
+	private final int timeout;
+	/*
+	 * Requests spend most of their time waiting for remote shards, so every request gets its own thread.
+	 */
+	private final ExecutorService executor = Executors.newCachedThreadPool(ShardThreads.factory("sourceafis-shard-client"));
+	public SocketShardTransport(List<InetSocketAddress> addresses, Duration timeout) {
+		this.addresses = List.copyOf(addresses);
+		this.timeout = (int)Math.min(Integer.MAX_VALUE, Math.max(1, timeout.toMillis()));
+	}
+	@Override
+	public int shards() {
+		return addresses.size();
+	}
+	private List<FingerprintShardHit> request(InetSocketAddress address, Socket socket, ShardRequest request) {
+		try (socket) {
+			socket.connect(address, timeout);
+			socket.setSoTimeout(timeout);
+			ShardProtocol.writeRequest(new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())), request);
+			return ShardProtocol.readResponse(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		} catch (TimeoutException ex) {
+			throw new CompletionException(ex);
+		}
+	}
+	@Override
+	public CompletableFuture<List<FingerprintShardHit>> search(int shard, byte[] probe, int limit, double threshold) {
+		return search(shard, new ShardRequest(probe, limit, threshold, Deadline.NONE));
+	}
+	@Override
+	public CompletableFuture<List<FingerprintShardHit>> search(int shard, byte[] probe, int limit, double threshold, Duration timeout) {
+		return search(shard, new ShardRequest(probe, limit, threshold, Deadline.after(timeout)));
+	}
+	private CompletableFuture<List<FingerprintShardHit>> search(int shard, ShardRequest request) {
+		var address = addresses.get(shard);
+		var socket = new Socket();
+		var future = CompletableFuture.supplyAsync(() -> request(address, socket, request), executor);
+		/*
+		 * Closing the socket unblocks the thread waiting for the response. Server stops searching when the deadline passes.
+		 */
+		future.whenComplete((hits, error) -> {
+			if (future.isCancelled()) {
+				try {
+					socket.close();
+				} catch (IOException ex) {
+					/*
+					 * The result is not wanted anymore, so there is nobody to report the error to.
+					 */
+				}
+			}
+		});
+		return future;
+	}
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+}
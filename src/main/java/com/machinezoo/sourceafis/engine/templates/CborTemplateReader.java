@@ -0,0 +1,339 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.templates;
+
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+import com.machinezoo.sourceafis.engine.features.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+
+/*
+ * Hand-written parser for CBOR produced by serializing PersistentTemplate.
+ * Going through ObjectMapper and FeatureTemplate allocates a lot of temporary objects,
+ * which dominates startup time of applications that load large number of templates.
+ * This parser reads the known schema directly into primitive arrays and validates while parsing.
+ *
+ * Parsing is intentionally as lenient as ObjectMapper: keys can come in any order, version string is optional,
+ * arrays and strings can have indefinite length, numbers can use any CBOR encoding, tags are ignored,
+ * and trailing data is left unread, so that concatenated templates can be parsed one by one. Version string is skipped without UTF-8 validation. Unknown keys are rejected as ObjectMapper does by default.
+ */
+public class CborTemplateReader {
+	private static final int UNSIGNED = 0;
+	private static final int NEGATIVE = 1;
+	private static final int BYTES = 2;
+	private static final int TEXT = 3;
+	private static final int ARRAY = 4;
+	private static final int MAP = 5;
+	private static final int TAG = 6;
+	private static final int SIMPLE = 7;
+	private static final int INDEFINITE = 31;
+	private static final int BREAK = 0xff;
+	private static final int NULL = 0xf6;
+	private static final byte[] VERSION = ascii("version");
+	private static final byte[] WIDTH = ascii("width");
+	private static final byte[] HEIGHT = ascii("height");
+	private static final byte[] POSITIONS_X = ascii("positionsX");
+	private static final byte[] POSITIONS_Y = ascii("positionsY");
+	private static final byte[] DIRECTIONS = ascii("directions");
+	private static final byte[] TYPES = ascii("types");
+	private static byte[] ascii(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+	private final ByteBuffer data;
+	private final int limit;
+	private int offset;
+	/*
+	 * Major type and additional info of the last header. Argument is the length, count, or value encoded in the header.
+	 */
+	private int major;
+	private int info;
+	private long argument;
+	private short width;
+	private short height;
+	private short[] positionsX;
+	private short[] positionsY;
+	private float[] directions;
+	private MinutiaType[] types;
+	private CborTemplateReader(ByteBuffer data) {
+		this.data = data;
+		limit = data.limit();
+		offset = data.position();
+	}
+	/*
+	 * Reads one template starting at buffer's position. Position is moved past the template only if parsing succeeds.
+	 */
+	public static SearchTemplate read(ByteBuffer serialized) {
+		Objects.requireNonNull(serialized);
+		var reader = new CborTemplateReader(serialized);
+		reader.template();
+		var template = reader.build();
+		serialized.position(reader.offset);
+		return template;
+	}
+	private int next() {
+		if (offset >= limit)
+			throw new TruncatedTemplateException();
+		return data.get(offset++) & 0xff;
+	}
+	private int peek() {
+		if (offset >= limit)
+			throw new TruncatedTemplateException();
+		return data.get(offset) & 0xff;
+	}
+	private long unsigned(int bytes) {
+		long value = 0;
+		for (int i = 0; i < bytes; ++i)
+			value = (value << 8) | next();
+		return value;
+	}
+	private void header() {
+		do {
+			int initial = next();
+			major = initial >>> 5;
+			info = initial & 0x1f;
+			if (info < 24)
+				argument = info;
+			else if (info == 24)
+				argument = unsigned(1);
+			else if (info == 25)
+				argument = unsigned(2);
+			else if (info == 26)
+				argument = unsigned(4);
+			else if (info == 27)
+				argument = unsigned(8);
+			else if (info == INDEFINITE && major != UNSIGNED && major != NEGATIVE && major != TAG)
+				argument = -1;
+			else
+				throw new IllegalArgumentException("Malformed CBOR header.");
+			/*
+			 * Only 64-bit floats can legitimately use the highest bit. Everything else would overflow long.
+			 */
+			if (argument < 0 && info != INDEFINITE && major != SIMPLE)
+				throw new IllegalArgumentException("CBOR value out of range.");
+		} while (major == TAG);
+	}
+	/*
+	 * Returns element count or -1 for indefinite length.
+	 * Definite lengths are checked against remaining data, so that corrupted length cannot trigger huge allocation.
+	 */
+	private int length(int expected) {
+		if (major != expected)
+			throw new IllegalArgumentException("Unexpected CBOR data type.");
+		if (argument < 0)
+			return -1;
+		if (argument > limit - offset)
+			throw new TruncatedTemplateException();
+		return (int)argument;
+	}
+	private boolean more(int length, int count) {
+		if (length >= 0)
+			return count < length;
+		if (peek() == BREAK) {
+			++offset;
+			return false;
+		}
+		return true;
+	}
+	private boolean nil() {
+		if (peek() == NULL) {
+			++offset;
+			return true;
+		}
+		return false;
+	}
+	private long integer() {
+		header();
+		return value();
+	}
+	private long value() {
+		if (major == UNSIGNED)
+			return argument;
+		if (major == NEGATIVE)
+			return -1 - argument;
+		throw new IllegalArgumentException("Expected integer.");
+	}
+	private short coordinate() {
+		long value = integer();
+		if (Math.abs(value) > 10_000)
+			throw new IllegalArgumentException("Minutia position out of range.");
+		return (short)value;
+	}
+	private short dimension() {
+		if (nil())
+			return 0;
+		long value = integer();
+		if (value < Short.MIN_VALUE || value > Short.MAX_VALUE)
+			throw new IllegalArgumentException("Template dimension out of range.");
+		return (short)value;
+	}
+	private static float half(int bits) {
+		int exponent = (bits >>> 10) & 0x1f;
+		int mantissa = bits & 0x3ff;
+		float magnitude;
+		if (exponent == 0)
+			magnitude = mantissa * 0x1p-24f;
+		else if (exponent == 0x1f)
+			magnitude = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+		else
+			magnitude = Float.intBitsToFloat(((exponent + 112) << 23) | (mantissa << 13));
+		return (bits & 0x8000) != 0 ? -magnitude : magnitude;
+	}
+	private float direction() {
+		header();
+		float value;
+		if (major == SIMPLE) {
+			if (info == 25)
+				value = half((int)argument);
+			else if (info == 26)
+				value = Float.intBitsToFloat((int)argument);
+			else if (info == 27)
+				value = (float)Double.longBitsToDouble(argument);
+			else
+				throw new IllegalArgumentException("Expected number.");
+		} else
+			value = value();
+		if (!FloatAngle.normalized(value))
+			throw new IllegalArgumentException("Denormalized minutia direction.");
+		return value;
+	}
+	private short[] coordinates(String name) {
+		if (nil())
+			throw new IllegalArgumentException("Null array of " + name + " positions.");
+		header();
+		int length = length(ARRAY);
+		short[] array = new short[length >= 0 ? length : 16];
+		int count = 0;
+		for (; more(length, count); ++count) {
+			if (count >= array.length)
+				array = Arrays.copyOf(array, 2 * array.length);
+			array[count] = coordinate();
+		}
+		return count == array.length ? array : Arrays.copyOf(array, count);
+	}
+	private float[] directions() {
+		if (nil())
+			throw new IllegalArgumentException("Null array of minutia directions.");
+		header();
+		int length = length(ARRAY);
+		float[] array = new float[length >= 0 ? length : 16];
+		int count = 0;
+		for (; more(length, count); ++count) {
+			if (count >= array.length)
+				array = Arrays.copyOf(array, 2 * array.length);
+			array[count] = direction();
+		}
+		return count == array.length ? array : Arrays.copyOf(array, count);
+	}
+	/*
+	 * Minutia types are ASCII characters, so there's no need to decode UTF-8.
+	 * Any non-ASCII byte is rejected as unknown minutia type.
+	 */
+	private MinutiaType[] types() {
+		if (nil())
+			throw new IllegalArgumentException("Null minutia type string.");
+		header();
+		int length = length(TEXT);
+		MinutiaType[] array = new MinutiaType[length >= 0 ? length : 16];
+		int count = 0;
+		int chunks = 0;
+		/*
+		 * Indefinite-length string is a sequence of definite-length chunks. Definite-length string is its own single chunk.
+		 */
+		while (length >= 0 ? chunks == 0 : more(-1, 0)) {
+			int chunk = length;
+			if (length < 0) {
+				header();
+				chunk = length(TEXT);
+				if (chunk < 0)
+					throw new IllegalArgumentException("Nested indefinite-length string.");
+			}
+			if (count + chunk > array.length)
+				array = Arrays.copyOf(array, Math.max(2 * array.length, count + chunk));
+			for (int i = 0; i < chunk; ++i) {
+				int character = next();
+				if (character == 'E')
+					array[count++] = MinutiaType.ENDING;
+				else if (character == 'B')
+					array[count++] = MinutiaType.BIFURCATION;
+				else
+					throw new IllegalArgumentException("Unknown minutia type.");
+			}
+			++chunks;
+		}
+		return count == array.length ? array : Arrays.copyOf(array, count);
+	}
+	/*
+	 * Version is informative only. It is skipped without decoding.
+	 */
+	private void version() {
+		if (nil())
+			return;
+		header();
+		int length = length(TEXT);
+		if (length >= 0)
+			offset += length;
+		else {
+			while (more(-1, 0)) {
+				header();
+				int chunk = length(TEXT);
+				if (chunk < 0)
+					throw new IllegalArgumentException("Nested indefinite-length string.");
+				offset += chunk;
+			}
+		}
+	}
+	private boolean key(int start, int length, byte[] expected) {
+		if (length != expected.length)
+			return false;
+		for (int i = 0; i < length; ++i)
+			if (data.get(start + i) != expected[i])
+				return false;
+		return true;
+	}
+	private void template() {
+		header();
+		int length = length(MAP);
+		for (int count = 0; more(length, count); ++count) {
+			header();
+			/*
+			 * ObjectMapper accepts byte string keys too.
+			 */
+			int keyLength = length(major == BYTES ? BYTES : TEXT);
+			if (keyLength < 0)
+				throw new IllegalArgumentException("Unsupported indefinite-length key.");
+			int keyStart = offset;
+			offset += keyLength;
+			if (key(keyStart, keyLength, VERSION))
+				version();
+			else if (key(keyStart, keyLength, WIDTH))
+				width = dimension();
+			else if (key(keyStart, keyLength, HEIGHT))
+				height = dimension();
+			else if (key(keyStart, keyLength, POSITIONS_X))
+				positionsX = coordinates("X");
+			else if (key(keyStart, keyLength, POSITIONS_Y))
+				positionsY = coordinates("Y");
+			else if (key(keyStart, keyLength, DIRECTIONS))
+				directions = directions();
+			else if (key(keyStart, keyLength, TYPES))
+				types = types();
+			else
+				throw new IllegalArgumentException("Unknown template property.");
+		}
+	}
+	private SearchTemplate build() {
+		/*
+		 * Width and height are informative only. Don't validate them. Ditto for version string.
+		 */
+		Objects.requireNonNull(positionsX, "Null array of X positions.");
+		Objects.requireNonNull(positionsY, "Null array of Y positions.");
+		Objects.requireNonNull(directions, "Null array of minutia directions.");
+		Objects.requireNonNull(types, "Null minutia type string.");
+		if (positionsX.length != types.length || positionsY.length != types.length || directions.length != types.length)
+			throw new IllegalArgumentException("Inconsistent lengths of minutia property arrays.");
+		var minutiae = new SearchMinutia[types.length];
+		for (int i = 0; i < minutiae.length; ++i)
+			minutiae[i] = new SearchMinutia(positionsX[i], positionsY[i], directions[i], types[i]);
+		return new SearchTemplate(width, height, minutiae);
+	}
+}
@@ -0,0 +1,202 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.templates;
+
+import java.nio.*;
+import java.util.zip.*;
+import com.machinezoo.sourceafis.engine.features.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+
+/*
+ * Little-endian binary template that preserves shuffled minutia order and optionally embeds the edge table,
+ * so that loading it is mostly bulk copying instead of sorting and building the edge table again.
+ *
+ * Layout:
+ * - magic "SAFT" (4 bytes)
+ * - format version (u16)
+ * - flags (u16), bit 0 set if edge table is present
+ * - width, height (2x i16)
+ * - minutia count (i32)
+ * - minutia X positions, Y positions (2x i16 per minutia), directions (f32 per minutia), types (u8 per minutia)
+ * - if edge table is present: edge count for every minutia (u16 per minutia),
+ *   followed by neighbors, lengths (2x i16 per edge), reference angles, and neighbor angles (2x f32 per edge)
+ * - CRC32C of everything above (u32)
+ *
+ * Properties are stored in columns, so that every column can be copied in bulk.
+ * Unlike CBOR template, this format has explicit version and older versions can be supported in the future.
+ */
+public class CompactTemplateFormat {
+	private static final byte[] MAGIC = { 'S', 'A', 'F', 'T' };
+	private static final int VERSION = 1;
+	private static final int EDGES = 1;
+	private static final int HEADER = MAGIC.length + 2 * Short.BYTES + 2 * Short.BYTES + Integer.BYTES;
+	/*
+	 * Sizes of minutia and edge columns are exposed for memory reports.
+	 */
+	public static final int MINUTIA = 2 * Short.BYTES + Float.BYTES + Byte.BYTES;
+	public static final int EDGE = 2 * Short.BYTES + 2 * Float.BYTES;
+	/*
+	 * Checks magic at buffer's position without moving the position.
+	 */
+	public static boolean accepts(ByteBuffer serialized) {
+		if (serialized.remaining() < MAGIC.length)
+			return false;
+		for (int i = 0; i < MAGIC.length; ++i)
+			if (serialized.get(serialized.position() + i) != MAGIC[i])
+				return false;
+		return true;
+	}
+	private static int checksum(ByteBuffer data, int length) {
+		var crc = new CRC32C();
+		crc.update(data.duplicate().position(0).limit(length));
+		return (int)crc.getValue();
+	}
+	public static byte[] encode(SearchTemplate template, boolean edges) {
+		var minutiae = template.minutiae;
+		int count = minutiae.length;
+		var table = edges ? template.edges() : null;
+		int edgeCount = 0;
+		if (edges)
+			for (var star : table)
+				edgeCount += star.length;
+		int size = HEADER + count * MINUTIA + (edges ? count * Short.BYTES + edgeCount * EDGE : 0) + Integer.BYTES;
+		var buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put(MAGIC);
+		buffer.putShort((short)VERSION);
+		buffer.putShort((short)(edges ? EDGES : 0));
+		buffer.putShort(template.width);
+		buffer.putShort(template.height);
+		buffer.putInt(count);
+		for (var minutia : minutiae)
+			buffer.putShort(minutia.x);
+		for (var minutia : minutiae)
+			buffer.putShort(minutia.y);
+		for (var minutia : minutiae)
+			buffer.putFloat(minutia.direction);
+		for (var minutia : minutiae)
+			buffer.put((byte)minutia.type.ordinal());
+		if (edges) {
+			for (var star : table)
+				buffer.putShort((short)star.length);
+			for (var star : table)
+				for (var edge : star)
+					buffer.putShort(edge.neighbor);
+			for (var star : table)
+				for (var edge : star)
+					buffer.putShort(edge.length);
+			for (var star : table)
+				for (var edge : star)
+					buffer.putFloat(edge.referenceAngle);
+			for (var star : table)
+				for (var edge : star)
+					buffer.putFloat(edge.neighborAngle);
+		}
+		buffer.putInt(checksum(buffer, buffer.position()));
+		return buffer.array();
+	}
+	private static void require(boolean condition, String message) {
+		if (!condition)
+			throw new IllegalArgumentException(message);
+	}
+	private static short[] shorts(ByteBuffer buffer, int count) {
+		require(buffer.remaining() >= (long)count * Short.BYTES, "Inconsistent template length.");
+		short[] array = new short[count];
+		buffer.asShortBuffer().get(array);
+		buffer.position(buffer.position() + count * Short.BYTES);
+		return array;
+	}
+	private static float[] floats(ByteBuffer buffer, int count) {
+		require(buffer.remaining() >= (long)count * Float.BYTES, "Inconsistent template length.");
+		float[] array = new float[count];
+		buffer.asFloatBuffer().get(array);
+		buffer.position(buffer.position() + count * Float.BYTES);
+		return array;
+	}
+	private static byte[] bytes(ByteBuffer buffer, int count) {
+		require(buffer.remaining() >= count, "Inconsistent template length.");
+		byte[] array = new byte[count];
+		buffer.get(array);
+		return array;
+	}
+	/*
+	 * Float rounding in edge shape calculation can produce angle equal to PI2, which is not a normalized angle.
+	 */
+	private static boolean edgeAngle(float angle) {
+		return angle >= 0 && angle <= FloatAngle.PI2;
+	}
+	/*
+	 * Reads one template starting at buffer's position. Position is moved past the template only if parsing succeeds.
+	 */
+	public static SearchTemplate decode(ByteBuffer serialized) {
+		require(accepts(serialized), "Not a compact template.");
+		var buffer = serialized.slice().order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.remaining() < HEADER)
+			throw new TruncatedTemplateException();
+		buffer.position(MAGIC.length);
+		require(Short.toUnsignedInt(buffer.getShort()) == VERSION, "Unsupported template version.");
+		int flags = Short.toUnsignedInt(buffer.getShort());
+		require((flags & ~EDGES) == 0, "Unknown template flags.");
+		short width = buffer.getShort();
+		short height = buffer.getShort();
+		int count = buffer.getInt();
+		/*
+		 * Neighbor indexes are shorts, which caps the number of minutiae.
+		 */
+		require(count >= 0 && count <= Short.MAX_VALUE + 1, "Minutia count out of range.");
+		/*
+		 * Determine template length, so that checksum can be verified before anything else is parsed.
+		 */
+		long length = HEADER + (long)count * MINUTIA;
+		if ((flags & EDGES) != 0) {
+			if (buffer.limit() < length + count * Short.BYTES)
+				throw new TruncatedTemplateException();
+			long total = 0;
+			for (int i = 0; i < count; ++i) {
+				short degree = buffer.getShort((int)length + i * Short.BYTES);
+				require(degree >= 0 && degree < count, "Edge count out of range.");
+				total += degree;
+			}
+			length += count * Short.BYTES + total * EDGE;
+		}
+		length += Integer.BYTES;
+		require(length <= Integer.MAX_VALUE, "Template too large.");
+		if (buffer.limit() < length)
+			throw new TruncatedTemplateException();
+		int end = (int)length - Integer.BYTES;
+		require(buffer.getInt(end) == checksum(buffer, end), "Template checksum mismatch.");
+		short[] xs = shorts(buffer, count);
+		short[] ys = shorts(buffer, count);
+		float[] directions = floats(buffer, count);
+		byte[] types = bytes(buffer, count);
+		var minutiae = new SearchMinutia[count];
+		for (int i = 0; i < count; ++i) {
+			require(Math.abs(xs[i]) <= 10_000 && Math.abs(ys[i]) <= 10_000, "Minutia position out of range.");
+			require(FloatAngle.normalized(directions[i]), "Denormalized minutia direction.");
+			require(types[i] == 0 || types[i] == 1, "Unknown minutia type.");
+			minutiae[i] = new SearchMinutia(xs[i], ys[i], directions[i], types[i] == 0 ? MinutiaType.ENDING : MinutiaType.BIFURCATION);
+		}
+		NeighborEdge[][] edges = null;
+		if ((flags & EDGES) != 0) {
+			short[] degrees = shorts(buffer, count);
+			int total = 0;
+			for (short degree : degrees)
+				total += degree;
+			short[] neighbors = shorts(buffer, total);
+			short[] lengths = shorts(buffer, total);
+			float[] referenceAngles = floats(buffer, total);
+			float[] neighborAngles = floats(buffer, total);
+			edges = new NeighborEdge[count][];
+			int offset = 0;
+			for (int reference = 0; reference < count; ++reference) {
+				var star = edges[reference] = new NeighborEdge[degrees[reference]];
+				for (int i = 0; i < star.length; ++i, ++offset) {
+					require(neighbors[offset] >= 0 && neighbors[offset] < count && neighbors[offset] != reference, "Edge neighbor out of range.");
+					require(lengths[offset] >= 0, "Negative edge length.");
+					require(edgeAngle(referenceAngles[offset]) && edgeAngle(neighborAngles[offset]), "Edge angle out of range.");
+					star[i] = new NeighborEdge(lengths[offset], referenceAngles[offset], neighborAngles[offset], neighbors[offset]);
+				}
+			}
+		}
+		serialized.position(serialized.position() + (int)length);
+		return new SearchTemplate(width, height, minutiae, edges);
+	}
+}
@@ -0,0 +1,77 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.templates;
+
+import java.io.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.noexception.*;
+
+/*
+ * Splits concatenated ANSI 378 and ISO 19794-2 templates into individual records.
+ * All supported formats start with "FMR\0" magic followed by 4-byte version and total record length.
+ * Length is a 4-byte big-endian integer in all formats except ANSI 378-2004, which uses 2-byte length
+ * with an escape to 4-byte length. ANSI 378-2004 and ISO 19794-2:2005 share the same version string,
+ * so FingerprintIO's format identification is applied to the header to tell them apart.
+ *
+ * Records are not parsed here. That's left to codecs, which can run in parallel.
+ * If framing is broken, there's no way to find the next record, so splitting fails with an exception.
+ */
+public class ForeignTemplateSplitter implements Iterator<byte[]> {
+	private static final byte[] MAGIC = { 'F', 'M', 'R', 0 };
+	private static final int HEADER = 14;
+	/*
+	 * Real templates are a few KB at most. Reject absurd lengths instead of attempting huge allocations.
+	 */
+	private static final int MAX_LENGTH = 16 * 1024 * 1024;
+	private final InputStream stream;
+	private byte[] header;
+	private long offset;
+	public ForeignTemplateSplitter(InputStream stream) {
+		this.stream = stream;
+	}
+	private static int unsigned(byte[] data, int offset, int bytes) {
+		int value = 0;
+		for (int i = 0; i < bytes; ++i)
+			value = (value << 8) | (data[offset + i] & 0xff);
+		return value;
+	}
+	private byte[] read(int length) {
+		byte[] data = Exceptions.wrap().get(() -> stream.readNBytes(length));
+		if (data.length < length)
+			throw new TemplateFormatException("Truncated template at offset " + offset + ".");
+		return data;
+	}
+	@Override
+	public boolean hasNext() {
+		if (header == null) {
+			byte[] first = Exceptions.wrap().get(() -> stream.readNBytes(1));
+			if (first.length == 0)
+				return false;
+			header = new byte[HEADER];
+			header[0] = first[0];
+			System.arraycopy(read(HEADER - 1), 0, header, 1, HEADER - 1);
+		}
+		return true;
+	}
+	@Override
+	public byte[] next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		if (!Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length))
+			throw new TemplateFormatException("Missing template header at offset " + offset + ".");
+		long length;
+		if (TemplateFormat.identify(header) == TemplateFormat.ANSI_378_2004) {
+			length = unsigned(header, 8, 2);
+			if (length == 0)
+				length = unsigned(header, 10, 4) & 0xffff_ffffL;
+		} else
+			length = unsigned(header, 8, 4) & 0xffff_ffffL;
+		if (length < HEADER || length > MAX_LENGTH)
+			throw new TemplateFormatException("Invalid template length at offset " + offset + ".");
+		byte[] record = Arrays.copyOf(header, (int)length);
+		System.arraycopy(read((int)length - HEADER), 0, record, HEADER, (int)length - HEADER);
+		header = null;
+		offset += length;
+		return record;
+	}
+}
@@ -4,6 +4,7 @@ package com.machinezoo.sourceafis.engine.templates;
 import static java.util.stream.Collectors.*;
 import java.util.*;
 import java.util.stream.*;
+import com.machinezoo.sourceafis.engine.configuration.*;
 import com.machinezoo.sourceafis.engine.features.*;
 import com.machinezoo.sourceafis.engine.primitives.*;
 import com.machinezoo.sourceafis.engine.transparency.*;
@@ -13,7 +14,19 @@ public class SearchTemplate {
     public final short width;
     public final short height;
     public final SearchMinutia[] minutiae;
-    public final NeighborEdge[][] edges;
+    /*
+     * Edge table is only needed for matching. It is built on first use,
+     * so that templates that are only converted or serialized do not pay for it.
+     * Use fast double-checked locking, because this is accessed for every match.
+     */
+    private volatile NeighborEdge[][] edges;
+    /*
+     * Candidate-side root edges are cached only when the template is matched the second time.
+     * Templates matched only once, for example in streaming scans or right after deserialization,
+     * enumerate roots lazily, which stops early and skips most of the sequence.
+     */
+    private volatile RootEdges rootEdges;
+    private volatile boolean matched;
     private SearchTemplate() {
         width = 1;
         height = 1;
@@ -21,33 +34,123 @@ public class SearchTemplate {
         edges = new NeighborEdge[0][];
     }
     private static final int PRIME = 1610612741;
+    private static final Comparator<SearchMinutia> SHUFFLE = Comparator
+        .comparingInt((SearchMinutia m) -> ((m.x * PRIME) + m.y) * PRIME)
+        .thenComparingInt(m -> m.x)
+        .thenComparingInt(m -> m.y)
+        .thenComparingDouble(m -> m.direction)
+        .thenComparing(m -> m.type);
     public SearchTemplate(FeatureTemplate features) {
-        width = (short)features.size.x;
-        height = (short)features.size.y;
-        minutiae = features.minutiae.stream()
+        this((short)features.size.x, (short)features.size.y, features.minutiae.stream()
             .map(SearchMinutia::new)
-            .sorted(Comparator
-                .comparingInt((SearchMinutia m) -> ((m.x * PRIME) + m.y) * PRIME)
-                .thenComparingInt(m -> m.x)
-                .thenComparingInt(m -> m.y)
-                .thenComparingDouble(m -> m.direction)
-                .thenComparing(m -> m.type))
-            .toArray(SearchMinutia[]::new);
+            .toArray(SearchMinutia[]::new));
+    }
+    private static SearchMinutia[] shuffle(SearchMinutia[] minutiae) {
+        Arrays.sort(minutiae, SHUFFLE);
+        return minutiae;
+    }
+    /*
+     * Takes ownership of the minutia array and sorts it in place.
+     */
+    public SearchTemplate(short width, short height, SearchMinutia[] minutiae) {
+        this(width, height, shuffle(minutiae), null);
+    }
+    /*
+     * Minutiae must be already shuffled, for example when loaded from serialized template that preserves minutia order.
+     * Edge table is built lazily if it is not provided.
+     */
+    public SearchTemplate(short width, short height, SearchMinutia[] minutiae, NeighborEdge[][] edges) {
+        this.width = width;
+        this.height = height;
+        this.minutiae = minutiae;
         // https://sourceafis.machinezoo.com/transparency/shuffled-minutiae
         TransparencySink.current().log("shuffled-minutiae", this::features);
-        edges = NeighborEdge.buildTable(minutiae);
+        this.edges = edges;
+        /*
+         * Edge table is built here only if transparency logging is interested in it.
+         */
+        // https://sourceafis.machinezoo.com/transparency/edge-table
+        TransparencySink.current().log("edge-table", this::edges);
+    }
+    public NeighborEdge[][] edges() {
+        var table = edges;
+        if (table == null) {
+            synchronized (this) {
+                table = edges;
+                if (table == null)
+                    edges = table = NeighborEdge.buildTable(minutiae);
+            }
+        }
+        return table;
+    }
+    public RootEdges rootEdges() {
+        var sequence = rootEdges;
+        if (sequence == null) {
+            synchronized (this) {
+                sequence = rootEdges;
+                if (sequence == null)
+                    rootEdges = sequence = new RootEdges(minutiae);
+            }
+        }
+        return sequence;
+    }
+    /*
+     * Returns cached root edges or null if root edges should be enumerated lazily.
+     * The first call only records that the template was matched. Subsequent calls build and cache the sequence.
+     * Concurrent first calls might both return null, which is harmless.
+     */
+    public RootEdges reusedRootEdges() {
+        var sequence = rootEdges;
+        if (sequence != null)
+            return sequence;
+        if (!matched) {
+            matched = true;
+            return null;
+        }
+        return rootEdges();
+    }
+    /*
+     * Prefills the cache with root edges computed earlier, for example when the template was stored off-heap.
+     */
+    public void rootEdges(RootEdges precomputed) {
+        rootEdges = precomputed;
     }
     public FeatureTemplate features() {
         return new FeatureTemplate(new IntPoint(width, height), Arrays.stream(minutiae).map(m -> m.feature()).collect(toList()));
     }
     public int memory() {
-        return MemoryEstimates.object(2 * Short.BYTES + 2 * MemoryEstimates.REFERENCE, MemoryEstimates.REFERENCE)
-            + MemoryEstimates.array(MemoryEstimates.REFERENCE, minutiae.length)
-            + minutiae.length * SearchMinutia.memory()
-            + MemoryEstimates.array(MemoryEstimates.REFERENCE, edges.length)
-            + Stream.of(edges)
+        return MemoryEstimates.object(2 * Short.BYTES + 3 * MemoryEstimates.REFERENCE + 1, MemoryEstimates.REFERENCE)
+            + minutiaMemory()
+            + edgeMemory()
+            + rootMemory();
+    }
+    /*
+     * Components of memory() for memory reports.
+     */
+    public int minutiaMemory() {
+        return MemoryEstimates.array(MemoryEstimates.REFERENCE, minutiae.length) + minutiae.length * SearchMinutia.memory();
+    }
+    /*
+     * Root edges are counted only once they are cached. Probe templates never cache them
+     * and candidates cache them only when they are matched repeatedly.
+     */
+    public int rootMemory() {
+        return rootEdges != null ? RootEdges.memory(minutiae.length) : 0;
+    }
+    /*
+     * Edge table is included in the estimate even if it has not been built yet, because it will be built when the template is matched.
+     * Its size is fully determined by minutia count, because every minutia gets the same number of nearest neighbors.
+     */
+    public int edgeMemory() {
+        var table = edges;
+        if (table != null) {
+            return MemoryEstimates.array(MemoryEstimates.REFERENCE, table.length) + Stream.of(table)
                 .mapToInt(s -> MemoryEstimates.array(MemoryEstimates.REFERENCE, s.length)
                     + s.length * NeighborEdge.memory())
                 .sum();
+        }
+        int degree = Math.min(minutiae.length - 1, Parameters.EDGE_TABLE_NEIGHBORS);
+        return MemoryEstimates.array(MemoryEstimates.REFERENCE, minutiae.length)
+            + minutiae.length * (MemoryEstimates.array(MemoryEstimates.REFERENCE, degree) + degree * NeighborEdge.memory());
     }
 }
@@ -0,0 +1,13 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.templates;
+
+/*
+ * Distinguishes templates that are merely incomplete from corrupted ones,
+ * so that streaming readers know they should read more data and try again.
+ */
+public class TruncatedTemplateException extends IllegalArgumentException {
+	private static final long serialVersionUID = 1L;
+	public TruncatedTemplateException() {
+		super("Truncated template.");
+	}
+}
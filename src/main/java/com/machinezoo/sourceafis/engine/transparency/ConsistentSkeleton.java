@@ -1,7 +1,6 @@
 // Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
 package com.machinezoo.sourceafis.engine.transparency;
 
-import static java.util.stream.Collectors.*;
 import java.util.*;
 import com.machinezoo.sourceafis.engine.features.*;
 import com.machinezoo.sourceafis.engine.primitives.*;
@@ -14,14 +13,21 @@ public class ConsistentSkeleton {
 	public ConsistentSkeleton(Skeleton skeleton) {
 		width = skeleton.size.x;
 		height = skeleton.size.y;
-		Map<SkeletonMinutia, Integer> offsets = new HashMap<>();
-		for (int i = 0; i < skeleton.minutiae.size(); ++i)
-			offsets.put(skeleton.minutiae.get(i), i);
-		this.minutiae = skeleton.minutiae.stream().map(m -> m.position).collect(toList());
-		ridges = skeleton.minutiae.stream()
-			.flatMap(m -> m.ridges.stream()
-				.filter(r -> r.points instanceof CircularList)
-				.map(r -> new ConsistentSkeletonRidge(offsets.get(r.start()), offsets.get(r.end()), r.points)))
-			.collect(toList());
+		int[] sminutiae = skeleton.minutiae();
+		Map<Integer, Integer> offsets = new HashMap<>();
+		for (int i = 0; i < sminutiae.length; ++i)
+			offsets.put(sminutiae[i], i);
+		minutiae = new ArrayList<>();
+		ridges = new ArrayList<>();
+		for (int minutia : sminutiae)
+			minutiae.add(skeleton.position(minutia));
+		for (int minutia : sminutiae)
+			for (int ridge = skeleton.firstRidge(minutia); ridge != Skeleton.NONE; ridge = skeleton.nextRidge(ridge))
+				if (Skeleton.forward(ridge)) {
+					List<IntPoint> points = new ArrayList<>();
+					for (int j = 0; j < skeleton.pointCount(ridge); ++j)
+						points.add(skeleton.point(ridge, j));
+					ridges.add(new ConsistentSkeletonRidge(offsets.get(skeleton.start(ridge)), offsets.get(skeleton.end(ridge)), points));
+				}
 	}
 }
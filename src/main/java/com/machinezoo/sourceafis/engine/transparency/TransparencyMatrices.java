@@ -0,0 +1,96 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.transparency;
+
+import java.nio.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+
+/*
+ * Compact binary encoding of large matrices produced by feature extractor.
+ * CBOR encodes every double in 9 bytes and every boolean in 1 byte, which makes extractor transparency data large and slow to compress.
+ * This encoding stores packed little-endian arrays that can be loaded directly into numpy or typed arrays.
+ *
+ * Layout:
+ * - magic "SAFM"
+ * - element type (1 byte): 1 = float32, 2 = bit-packed boolean, 3 = int32, 4 = uint16
+ * - width, height, depth (int32 each), where depth is 1 for plain matrices, 2 for point matrices, and number of bins for histograms
+ * - width * height * depth elements in row-major order with the depth dimension changing fastest
+ *
+ * Booleans are packed 8 per byte starting with the least significant bit. Last byte is padded with zeroes.
+ * Doubles are narrowed to float32. Extractor matrices do not need more precision for visualization and debugging.
+ */
+public class TransparencyMatrices {
+	public static final String MIME = "application/x-sourceafis-matrix";
+	private static final int HEADER = 4 + 1 + 3 * 4;
+	private static final byte FLOAT = 1;
+	private static final byte BOOLEAN = 2;
+	private static final byte INT = 3;
+	private static final byte SHORT = 4;
+	private static ByteBuffer header(byte type, int width, int height, int depth, int size) {
+		var buffer = ByteBuffer.allocate(HEADER + size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put((byte)'S').put((byte)'A').put((byte)'F').put((byte)'M');
+		buffer.put(type);
+		buffer.putInt(width).putInt(height).putInt(depth);
+		return buffer;
+	}
+	private static byte[] floats(int width, int height, int depth, double[] values) {
+		var buffer = header(FLOAT, width, height, depth, 4 * values.length);
+		for (double value : values)
+			buffer.putFloat((float)value);
+		return buffer.array();
+	}
+	private static byte[] encode(DoubleMatrix matrix) {
+		return floats(matrix.width, matrix.height, 1, matrix.cells);
+	}
+	private static byte[] encode(DoublePointMatrix matrix) {
+		return floats(matrix.width, matrix.height, 2, matrix.vectors);
+	}
+	private static byte[] encode(BooleanMatrix matrix) {
+		int count = matrix.width * matrix.height;
+		var buffer = header(BOOLEAN, matrix.width, matrix.height, 1, (count + 7) / 8);
+		var bits = buffer.array();
+		int i = 0;
+		for (int y = 0; y < matrix.height; ++y)
+			for (int x = 0; x < matrix.width; ++x, ++i)
+				if (matrix.get(x, y))
+					bits[HEADER + (i >> 3)] |= 1 << (i & 7);
+		return bits;
+	}
+	/*
+	 * Histogram counts are bounded by block area, which almost always fits in 16 bits. Use 32 bits only when necessary.
+	 */
+	private static byte[] encode(HistogramCube histogram) {
+		int count = histogram.width * histogram.height * histogram.bins;
+		boolean narrow = true;
+		for (int y = 0; y < histogram.height; ++y)
+			for (int x = 0; x < histogram.width; ++x)
+				for (int z = 0; z < histogram.bins; ++z)
+					if ((histogram.get(x, y, z) & ~0xffff) != 0)
+						narrow = false;
+		var buffer = header(narrow ? SHORT : INT, histogram.width, histogram.height, histogram.bins, (narrow ? 2 : 4) * count);
+		for (int y = 0; y < histogram.height; ++y) {
+			for (int x = 0; x < histogram.width; ++x) {
+				for (int z = 0; z < histogram.bins; ++z) {
+					if (narrow)
+						buffer.putShort((short)histogram.get(x, y, z));
+					else
+						buffer.putInt(histogram.get(x, y, z));
+				}
+			}
+		}
+		return buffer.array();
+	}
+	/*
+	 * Returns null for types that have no compact encoding. Caller falls back to CBOR.
+	 */
+	public static byte[] encode(Object data) {
+		if (data instanceof DoubleMatrix)
+			return encode((DoubleMatrix)data);
+		if (data instanceof DoublePointMatrix)
+			return encode((DoublePointMatrix)data);
+		if (data instanceof BooleanMatrix)
+			return encode((BooleanMatrix)data);
+		if (data instanceof HistogramCube)
+			return encode((HistogramCube)data);
+		return null;
+	}
+}
@@ -35,6 +35,11 @@ public class TransparencyMimes {
 			return ".json";
 		case "application/xml":
 			return ".xml";
+		/*
+		 * Our own packed encoding of large matrices. See TransparencyMatrices.
+		 */
+		case TransparencyMatrices.MIME:
+			return ".matrix";
 		/*
 		 * Image formats commonly used to encode fingerprints.
 		 */
@@ -4,6 +4,7 @@ package com.machinezoo.sourceafis.engine.transparency;
 import static java.util.stream.Collectors.*;
 import java.nio.charset.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 import java.util.function.*;
 import com.fasterxml.jackson.annotation.*;
 import com.fasterxml.jackson.annotation.JsonAutoDetect.*;
@@ -23,10 +24,16 @@ public class TransparencySink implements CloseableScope {
 	 * Having no explicit activation makes for a bit simpler API.
 	 */
 	private static final ThreadLocal<TransparencySink> current = new ThreadLocal<>();
+	/*
+	 * Number of active transparency objects on all threads.
+	 * Transparency is usually not used at all, in which case current() can skip the thread-local lookup.
+	 */
+	private static final AtomicInteger active = new AtomicInteger();
 	private TransparencySink outer;
 	private final FingerprintTransparency transparency;
 	public TransparencySink(FingerprintTransparency transparency) {
 		this.transparency = transparency;
+		active.incrementAndGet();
 		outer = current.get();
 		current.set(this);
 	}
@@ -43,10 +50,14 @@ public class TransparencySink implements CloseableScope {
 			 * Drop reference to outer transparency object in case this instance is kept alive for too long.
 			 */
 			outer = null;
+			active.decrementAndGet();
 		}
 	}
 	public static TransparencySink current() {
-		return Optional.ofNullable(current.get()).orElse(NoTransparency.SINK);
+		if (active.get() == 0)
+			return NoTransparency.SINK;
+		var sink = current.get();
+		return sink != null ? sink : NoTransparency.SINK;
 	}
 	private static final ObjectMapper mapper = new ObjectMapper(new CBORFactory())
 		.setVisibility(PropertyAccessor.FIELD, Visibility.ANY);
@@ -70,16 +81,40 @@ public class TransparencySink implements CloseableScope {
 				transparency.take("version", "text/plain", FingerprintCompatibility.version().getBytes(StandardCharsets.UTF_8));
 		}
 	}
-	private void log(String key, String mime, Supplier<byte[]> supplier) {
-		logVersion();
-		if (transparency.accepts(key))
-			transparency.take(key, mime, supplier.get());
+	/*
+	 * Compact matrix encoding is opt-in, because CBOR is the documented transparency format.
+	 */
+	private volatile boolean compactOffered;
+	private volatile boolean acceptsCompact;
+	private boolean acceptsCompact() {
+		if (!compactOffered) {
+			acceptsCompact = transparency.acceptsCompactMatrices();
+			compactOffered = true;
+		}
+		return acceptsCompact;
+	}
+	private void take(String key, Object data) {
+		if (acceptsCompact()) {
+			byte[] packed = TransparencyMatrices.encode(data);
+			if (packed != null) {
+				transparency.take(key, TransparencyMatrices.MIME, packed);
+				return;
+			}
+		}
+		transparency.take(key, "application/cbor", cbor(data));
 	}
+	/*
+	 * Check accepts() before serialization is wrapped in anything, so that rejected keys cost no allocations.
+	 */
 	public void log(String key, Supplier<?> supplier) {
-		log(key, "application/cbor", () -> cbor(supplier.get()));
+		logVersion();
+		if (transparency.accepts(key))
+			take(key, supplier.get());
 	}
 	public void log(String key, Object data) {
-		log(key, "application/cbor", () -> cbor(data));
+		logVersion();
+		if (transparency.accepts(key))
+			take(key, data);
 	}
 	public void logSkeleton(String keyword, Skeleton skeleton) {
 		log(skeleton.type.prefix + keyword, () -> new ConsistentSkeleton(skeleton));
@@ -8,9 +8,24 @@ import com.machinezoo.sourceafis.*;
 
 public class TransparencyZip extends FingerprintTransparency {
 	private final ZipOutputStream zip;
+	private final boolean compact;
 	private int offset;
-	public TransparencyZip(OutputStream stream) {
+	public TransparencyZip(OutputStream stream, boolean compact) {
 		zip = new ZipOutputStream(stream);
+		this.compact = compact;
+		/*
+		 * Compression dominates cost of transparency logging. Packed matrices still compress well (pixels are quantized),
+		 * but fast compression level is enough to get most of the benefit.
+		 */
+		if (compact)
+			zip.setLevel(Deflater.BEST_SPEED);
+	}
+	public TransparencyZip(OutputStream stream) {
+		this(stream, false);
+	}
+	@Override
+	public boolean acceptsCompactMatrices() {
+		return compact;
 	}
 	/*
 	 * Synchronize take(), because ZipOutputStream can be accessed only from one thread
@@ -12,6 +12,10 @@ module com.machinezoo.sourceafis {
 	 * We only need ImageIO from the whole desktop module.
 	 */
 	requires java.desktop;
+	/*
+	 * Memory estimates read object layout options from platform MXBeans.
+	 */
+	requires java.management;
 	requires com.machinezoo.stagean;
 	/*
 	 * Transitive, because FingerprintTransparency implements it.
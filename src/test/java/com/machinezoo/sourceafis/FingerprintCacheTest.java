@@ -0,0 +1,66 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+
+public class FingerprintCacheTest {
+	@Test
+	public void hits() {
+		var cache = new FingerprintCache(100 << 20);
+		byte[] probe = FingerprintTemplateTest.probe().toByteArray();
+		byte[] matching = FingerprintTemplateTest.matching().toByteArray();
+		var template = cache.template(probe);
+		assertSame(template, cache.template(probe.clone()));
+		var matcher = cache.matcher(probe);
+		assertSame(matcher, cache.matcher(probe));
+		assertSame(template, cache.template(probe));
+		assertEquals(new FingerprintMatcher(FingerprintTemplateTest.probe()).match(cache.template(matching)), matcher.match(cache.template(matching)), 0.0000001);
+		assertEquals(2, cache.size());
+		assertEquals(3, cache.misses());
+		assertEquals(4, cache.hits());
+		assertTrue(cache.memory() >= matcher.memory() + cache.template(matching).memory());
+		assertTrue(cache.memory() <= cache.budget());
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.memory());
+		assertNotSame(template, cache.template(probe));
+	}
+	/*
+	 * Cache reserves memory for structures that templates build when they are matched repeatedly.
+	 */
+	private static int matched(byte[] serialized) {
+		var template = new FingerprintTemplate(serialized);
+		var matcher = new FingerprintMatcher(template);
+		matcher.match(template);
+		matcher.match(template);
+		return template.memory();
+	}
+	@Test
+	public void evictions() {
+		byte[] probe = FingerprintTemplateTest.probe().toByteArray();
+		byte[] matching = FingerprintTemplateTest.matching().toByteArray();
+		var cache = new FingerprintCache(matched(probe) + matched(matching));
+		cache.template(probe);
+		cache.template(matching);
+		cache.template(probe);
+		assertEquals(1, cache.size());
+		assertEquals(2, cache.evictions());
+		assertTrue(cache.memory() <= cache.budget());
+	}
+	@Test
+	public void disabled() {
+		var cache = new FingerprintCache(0);
+		byte[] probe = FingerprintTemplateTest.probe().toByteArray();
+		assertNotSame(cache.template(probe), cache.template(probe));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.hits());
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintCache(-1));
+	}
+	@Test
+	public void corrupted() {
+		var cache = new FingerprintCache(1 << 20);
+		assertThrows(IllegalArgumentException.class, () -> cache.template(new byte[] { 1, 2, 3 }));
+		assertEquals(0, cache.size());
+	}
+}
@@ -0,0 +1,46 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+public class FingerprintCascadeTest {
+	private static List<FingerprintTemplate> candidates() {
+		return List.of(FingerprintTemplateTest.nonmatching(), FingerprintTemplateTest.matching(), FingerprintTemplateTest.nonmatchingGray());
+	}
+	@Test
+	public void identify() {
+		var probe = FingerprintTemplateTest.probe();
+		var hits = new FingerprintCascade().identify(probe, candidates());
+		assertEquals(3, hits.size());
+		assertEquals(1, hits.get(0).index());
+		assertEquals(new FingerprintMatcher(probe).match(FingerprintTemplateTest.matching()), hits.get(0).score());
+		for (int i = 1; i < hits.size(); ++i)
+			assertTrue(hits.get(i - 1).score() >= hits.get(i).score());
+	}
+	@Test
+	public void thresholds() {
+		var probe = FingerprintTemplateTest.probe();
+		var hits = new FingerprintCascade().threshold(40).identify(probe, candidates());
+		assertEquals(1, hits.size());
+		assertEquals(1, hits.get(0).index());
+		assertEquals(1, new FingerprintCascade().shortlist(1).identify(probe, candidates()).size());
+		assertTrue(new FingerprintCascade().screeningThreshold(1000).identify(probe, candidates()).isEmpty());
+		assertTrue(new FingerprintCascade().identify(probe, List.of()).isEmpty());
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintCascade().shortlist(0));
+	}
+	@Test
+	public void calibrate() {
+		var probes = List.of(FingerprintTemplateTest.probe(), FingerprintTemplateTest.probeGray());
+		var calibration = new FingerprintCascade()
+			.threshold(40)
+			.calibrate(probes, List.of("A", "B"), candidates(), List.of("C", "A", "D"));
+		assertEquals(2, calibration.probes());
+		assertEquals(1, calibration.fullCorrect());
+		assertEquals(1, calibration.cascadeCorrect());
+		assertEquals(0, calibration.disagreements());
+		assertEquals(0, calibration.loss());
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintCascade().calibrate(probes, List.of("A"), candidates(), List.of("C", "A", "D")));
+	}
+}
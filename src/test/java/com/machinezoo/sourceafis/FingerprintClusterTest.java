@@ -0,0 +1,250 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.net.*;
+import java.time.*;
+import java.time.temporal.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+
+public class FingerprintClusterTest {
+	private static final Duration TIMEOUT = Duration.ofSeconds(30);
+	private static List<FingerprintShard> shards(int count) {
+		var shards = new ArrayList<FingerprintShard>();
+		for (int i = 0; i < count; ++i)
+			shards.add(new FingerprintShard());
+		return shards;
+	}
+	private static void fill(FingerprintCluster cluster, List<FingerprintShard> shards) {
+		var candidates = Map.of(
+			"matching", FingerprintTemplateTest.matching(),
+			"nonmatching", FingerprintTemplateTest.nonmatching(),
+			"matching-gray", FingerprintTemplateTest.matchingGray(),
+			"nonmatching-gray", FingerprintTemplateTest.nonmatchingGray());
+		for (var entry : candidates.entrySet())
+			shards.get(cluster.shard(entry.getKey())).add(entry.getKey(), entry.getValue());
+	}
+	@Test
+	public void local() {
+		var shards = shards(3);
+		try (var transport = FingerprintShardTransport.local(shards)) {
+			var cluster = new FingerprintCluster(transport);
+			fill(cluster, shards);
+			assertEquals(4, shards.stream().mapToInt(FingerprintShard::size).sum());
+			var probe = FingerprintTemplateTest.probe();
+			var result = cluster.search(probe, 2, 0, TIMEOUT);
+			assertTrue(result.complete());
+			assertEquals(3, result.responded());
+			assertEquals(2, result.hits().size());
+			assertEquals("matching", result.hits().get(0).id());
+			assertEquals(new FingerprintMatcher(probe).match(FingerprintTemplateTest.matching()), result.hits().get(0).score());
+			assertTrue(result.hits().get(0).score() >= result.hits().get(1).score());
+			assertEquals(1, cluster.search(probe, 10, 40, TIMEOUT).hits().size());
+			assertTrue(cluster.search(probe, 0, 0, TIMEOUT).hits().isEmpty());
+			/*
+			 * Timeouts too long to be expressed in nanoseconds mean no deadline.
+			 */
+			assertTrue(cluster.search(probe, 2, 0, ChronoUnit.FOREVER.getDuration()).complete());
+		}
+	}
+	@Test
+	public void sockets() throws IOException {
+		var shards = shards(2);
+		var addresses = new ArrayList<InetSocketAddress>();
+		var servers = new ArrayList<AutoCloseable>();
+		try {
+			for (var shard : shards) {
+				var socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+				addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort()));
+				servers.add(shard.serve(socket));
+			}
+			try (var transport = FingerprintShardTransport.sockets(addresses, TIMEOUT)) {
+				var cluster = new FingerprintCluster(transport);
+				fill(cluster, shards);
+				var result = cluster.search(FingerprintTemplateTest.probe(), 3, 0, TIMEOUT);
+				assertTrue(result.complete());
+				assertEquals(3, result.hits().size());
+				assertEquals("matching", result.hits().get(0).id());
+				var expected = cluster.search(FingerprintTemplateTest.probe(), 3, 0, TIMEOUT).hits();
+				for (int i = 0; i < expected.size(); ++i) {
+					assertEquals(expected.get(i).id(), result.hits().get(i).id());
+					assertEquals(expected.get(i).score(), result.hits().get(i).score());
+				}
+				/*
+				 * Prepared matcher is shipped to shards instead of template and it produces the same results.
+				 */
+				var prepared = cluster.search(new FingerprintMatcher(FingerprintTemplateTest.probe()), 3, 0, TIMEOUT).hits();
+				assertEquals(expected.size(), prepared.size());
+				for (int i = 0; i < expected.size(); ++i) {
+					assertEquals(expected.get(i).id(), prepared.get(i).id());
+					assertEquals(expected.get(i).score(), prepared.get(i).score());
+				}
+				/*
+				 * Searches cut off by the deadline are reported as timeouts.
+				 */
+				var truncated = transport.search(0, FingerprintTemplateTest.probe().toByteArray(), 1, 0, Duration.ZERO);
+				var timeout = assertThrows(ExecutionException.class, truncated::get);
+				assertTrue(timeout.getCause() instanceof TimeoutException);
+				/*
+				 * Shard errors are reported to the client.
+				 */
+				var failure = transport.search(0, new byte[] { 1, 2, 3 }, 1, 0);
+				var ex = assertThrows(ExecutionException.class, failure::get);
+				assertTrue(ex.getCause() instanceof UncheckedIOException);
+			}
+		} finally {
+			for (var server : servers) {
+				try {
+					server.close();
+				} catch (Exception ex) {
+				}
+			}
+		}
+	}
+	private static class StallingTransport implements FingerprintShardTransport {
+		final FingerprintShard shard = new FingerprintShard();
+		@Override
+		public int shards() {
+			return 3;
+		}
+		@Override
+		public CompletableFuture<List<FingerprintShardHit>> search(int index, byte[] probe, int limit, double threshold) {
+			switch (index) {
+			case 0:
+				return CompletableFuture.completedFuture(shard.search(probe, limit, threshold));
+			case 1:
+				return CompletableFuture.failedFuture(new IllegalStateException());
+			default:
+				return new CompletableFuture<>();
+			}
+		}
+	}
+	@Test
+	public void partial() {
+		var transport = new StallingTransport();
+		transport.shard.add("matching", FingerprintTemplateTest.matching());
+		var result = new FingerprintCluster(transport).search(FingerprintTemplateTest.probe(), 5, 0, Duration.ofMillis(50));
+		assertFalse(result.complete());
+		assertEquals(1, result.responded());
+		assertEquals(1, result.failed());
+		assertEquals(1, result.timedOut());
+		assertEquals(1, result.hits().size());
+		assertEquals("matching", result.hits().get(0).id());
+	}
+	/*
+	 * Shard large enough that full search takes a while even on machines with many cores.
+	 */
+	private static FingerprintShard slow() {
+		var shard = new FingerprintShard();
+		var templates = List.of(FingerprintTemplateTest.matching(), FingerprintTemplateTest.nonmatching());
+		for (int i = 0; i < 1000; ++i)
+			shard.add("id-" + i, templates.get(i % templates.size()));
+		return shard;
+	}
+	private static long elapsed(long start) {
+		return (System.nanoTime() - start) / 1_000_000;
+	}
+	/*
+	 * Time of full search in milliseconds, measured after warmup.
+	 */
+	private static long full(FingerprintShard shard, byte[] probe) {
+		shard.search(probe, 5, 0);
+		long start = System.nanoTime();
+		shard.search(probe, 5, 0);
+		return Math.max(1, elapsed(start));
+	}
+	@Test
+	public void stalled() throws InterruptedException {
+		var shard = slow();
+		var template = FingerprintTemplateTest.probe();
+		long full = full(shard, template.toByteArray());
+		var executor = Executors.newSingleThreadExecutor();
+		try (var transport = FingerprintShardTransport.local(List.of(shard), executor)) {
+			long start = System.nanoTime();
+			var result = new FingerprintCluster(transport).search(template, 5, 0, Duration.ofMillis(full / 10));
+			/*
+			 * Shard either does not respond in time or it reports that its search was cut off. Either way it is not counted as responding.
+			 */
+			assertEquals(1, result.timedOut());
+			assertEquals(0, result.responded());
+			assertFalse(result.complete());
+			/*
+			 * Shard notices the deadline and frees the executor long before it could finish full search.
+			 */
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(full, TimeUnit.MILLISECONDS));
+			assertTrue(elapsed(start) < full / 2, () -> "full search " + full + " ms");
+		}
+	}
+	@Test
+	public void cancelled() throws InterruptedException {
+		var shard = slow();
+		byte[] probe = FingerprintTemplateTest.probe().toByteArray();
+		long full = full(shard, probe);
+		var executor = Executors.newSingleThreadExecutor();
+		try (var transport = FingerprintShardTransport.local(List.of(shard), executor)) {
+			long start = System.nanoTime();
+			var future = transport.search(0, probe, 5, 0, Duration.ofDays(1));
+			Thread.sleep(full / 10);
+			future.cancel(true);
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(full, TimeUnit.MILLISECONDS));
+			assertTrue(elapsed(start) < full / 2, () -> "full search " + full + " ms");
+		}
+	}
+	/*
+	 * Transport that gives shards less time than the cluster, so that truncated responses arrive well before cluster's deadline.
+	 */
+	private static class HastyTransport implements FingerprintShardTransport {
+		final FingerprintShard shard = new FingerprintShard();
+		@Override
+		public int shards() {
+			return 1;
+		}
+		@Override
+		public CompletableFuture<List<FingerprintShardHit>> search(int index, byte[] probe, int limit, double threshold) {
+			return search(index, probe, limit, threshold, Duration.ofDays(1));
+		}
+		@Override
+		public CompletableFuture<List<FingerprintShardHit>> search(int index, byte[] probe, int limit, double threshold, Duration timeout) {
+			try {
+				return CompletableFuture.completedFuture(shard.search(probe, limit, threshold, Duration.ZERO));
+			} catch (TimeoutException ex) {
+				return CompletableFuture.failedFuture(ex);
+			}
+		}
+	}
+	@Test
+	public void truncated() {
+		var transport = new HastyTransport();
+		transport.shard.add("matching", FingerprintTemplateTest.matching());
+		var result = new FingerprintCluster(transport).search(FingerprintTemplateTest.probe(), 5, 0, TIMEOUT);
+		assertFalse(result.complete());
+		assertEquals(0, result.responded());
+		assertEquals(1, result.timedOut());
+		assertTrue(result.hits().isEmpty());
+		/*
+		 * Built-in transports report truncated searches the same way.
+		 */
+		try (var local = FingerprintShardTransport.local(List.of(transport.shard))) {
+			var ex = assertThrows(ExecutionException.class, () -> local.search(0, FingerprintTemplateTest.probe().toByteArray(), 5, 0, Duration.ZERO).get());
+			assertTrue(ex.getCause() instanceof TimeoutException);
+		}
+	}
+	@Test
+	public void routing() {
+		var cluster = new FingerprintCluster(FingerprintShardTransport.local(shards(7)));
+		var counts = new int[7];
+		for (int i = 0; i < 700; ++i) {
+			int shard = cluster.shard("id-" + i);
+			assertEquals(shard, cluster.shard("id-" + i));
+			++counts[shard];
+		}
+		for (int count : counts)
+			assertTrue(count > 50);
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintCluster(FingerprintShardTransport.local(List.of())));
+	}
+}
@@ -2,9 +2,13 @@
 package com.machinezoo.sourceafis;
 
 import static org.hamcrest.MatcherAssert.*;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.hamcrest.Matchers.*;
+import java.io.*;
+import java.util.*;
 import org.junit.jupiter.api.*;
 import com.machinezoo.fingerprintio.*;
+import com.machinezoo.noexception.*;
 
 public class FingerprintCompatibilityTest {
 	@Test
@@ -67,4 +71,36 @@ public class FingerprintCompatibilityTest {
 	public void roundtripIso19794p2v2011() {
 		roundtrip(TemplateFormat.ISO_19794_2_2011);
 	}
+	@Test
+	public void bulk() {
+		var templates = List.of(FingerprintTemplateTest.probe(), FingerprintTemplateTest.matching(), FingerprintTemplateTest.nonmatching());
+		var exported = new ByteArrayOutputStream();
+		var exportStats = FingerprintCompatibility.exportTemplates(TemplateFormat.ISO_19794_2_2011, templates.iterator(), exported, Exceptions.propagate());
+		assertEquals(3, exportStats.records());
+		assertEquals(3, exportStats.templates());
+		assertEquals(exported.size(), exportStats.outputBytes());
+		var imported = new ArrayList<FingerprintTemplate>();
+		var importStats = FingerprintCompatibility.importTemplates(new ByteArrayInputStream(exported.toByteArray()), imported::add, Exceptions.propagate());
+		assertEquals(3, importStats.records());
+		assertEquals(3, importStats.templates());
+		assertEquals(0, importStats.failures());
+		assertEquals(exported.size(), importStats.inputBytes());
+		assertThat(new FingerprintMatcher(imported.get(0)).match(imported.get(1)), greaterThan(40.0));
+		assertThat(new FingerprintMatcher(imported.get(0)).match(imported.get(2)), lessThan(20.0));
+		var serialized = new ByteArrayOutputStream();
+		FingerprintCompatibility.importTemplates(new ByteArrayInputStream(exported.toByteArray()), serialized, true, Exceptions.propagate());
+		try (var reader = new FingerprintTemplateReader(new ByteArrayInputStream(serialized.toByteArray()))) {
+			for (var template : imported)
+				assertArrayEquals(template.toByteArray(), reader.next().toByteArray());
+			assertFalse(reader.hasNext());
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+	@Test
+	public void bulkTruncated() {
+		byte[] exported = FingerprintCompatibility.exportTemplates(TemplateFormat.ISO_19794_2_2011, FingerprintTemplateTest.probe());
+		var truncated = new ByteArrayInputStream(Arrays.copyOf(exported, exported.length - 1));
+		assertThrows(TemplateFormatException.class, () -> FingerprintCompatibility.importTemplates(truncated, t -> {}, Exceptions.silence()));
+	}
 }
@@ -0,0 +1,94 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+public class FingerprintGalleryTest {
+	@Test
+	public void match() {
+		var candidates = List.of(FingerprintTemplateTest.matching(), FingerprintTemplateTest.nonmatching(), FingerprintTemplateTest.matchingGray());
+		var gallery = new FingerprintGallery();
+		assertEquals(0, gallery.size());
+		assertEquals(0, gallery.reserved());
+		for (int i = 0; i < candidates.size(); ++i)
+			assertEquals(i, gallery.add(candidates.get(i)));
+		assertEquals(candidates.size(), gallery.size());
+		assertTrue(gallery.bytes() > 0 && gallery.bytes() <= gallery.reserved());
+		var matcher = new FingerprintMatcher(FingerprintTemplateTest.probe());
+		for (int i = 0; i < candidates.size(); ++i) {
+			assertEquals(matcher.match(candidates.get(i)), gallery.match(matcher, i));
+			assertArrayEquals(candidates.get(i).toCompactByteArray(true), gallery.get(i).toCompactByteArray(true));
+		}
+		assertThrows(IndexOutOfBoundsException.class, () -> gallery.get(candidates.size()));
+		assertThrows(IndexOutOfBoundsException.class, () -> gallery.match(matcher, -1));
+	}
+	@Test
+	public void growth() {
+		var template = FingerprintTemplateTest.matching();
+		var matcher = new FingerprintMatcher(FingerprintTemplateTest.probe());
+		double score = matcher.match(template);
+		var gallery = new FingerprintGallery();
+		/*
+		 * Enough templates to fill several slabs and to grow the position table.
+		 */
+		int count = 200;
+		for (int i = 0; i < count; ++i)
+			gallery.add(template);
+		assertTrue(gallery.reserved() > 1 << 20);
+		assertEquals(score, gallery.match(matcher, 0));
+		assertEquals(score, gallery.match(matcher, count - 1));
+		assertEquals(score, gallery.match(matcher, count / 2));
+	}
+	@Test
+	public void search() {
+		var templates = List.of(FingerprintTemplateTest.nonmatching(), FingerprintTemplateTest.matchingGray(), FingerprintTemplateTest.nonmatchingGray(), FingerprintTemplateTest.matching());
+		var matcher = new FingerprintMatcher(FingerprintTemplateTest.probe());
+		var gallery = new FingerprintGallery();
+		assertTrue(gallery.search(matcher, 5, 0).isEmpty());
+		var scores = new ArrayList<Double>();
+		for (int i = 0; i < 50; ++i) {
+			var template = templates.get(i % templates.size());
+			gallery.add(template);
+			scores.add(matcher.match(template));
+		}
+		var hits = gallery.search(matcher, 20, 0);
+		assertEquals(20, hits.size());
+		var expected = new ArrayList<FingerprintHit>();
+		for (int i = 0; i < scores.size(); ++i)
+			expected.add(new FingerprintHit(i, scores.get(i)));
+		expected.sort(FingerprintHit.RANKING);
+		for (int i = 0; i < hits.size(); ++i) {
+			assertEquals(expected.get(i).index(), hits.get(i).index());
+			assertEquals(expected.get(i).score(), hits.get(i).score());
+		}
+		assertEquals(12, gallery.search(matcher, 20, 40).size());
+		assertTrue(gallery.search(matcher, 0, 0).isEmpty());
+		/*
+		 * Templates added after the previous search are searched too.
+		 */
+		gallery.add(FingerprintTemplateTest.matching());
+		assertEquals(13, gallery.search(matcher, 20, 40).size());
+		assertThrows(IllegalArgumentException.class, () -> gallery.search(matcher, -1, 0));
+	}
+	@Test
+	public void deadline() {
+		var matcher = new FingerprintMatcher(FingerprintTemplateTest.probe());
+		var gallery = new FingerprintGallery();
+		for (int i = 0; i < 20; ++i)
+			gallery.add(i % 2 == 0 ? FingerprintTemplateTest.matching() : FingerprintTemplateTest.nonmatching());
+		/*
+		 * Expired search returns whatever it has matched so far, which is nothing here.
+		 */
+		assertTrue(gallery.search(matcher, 5, 0, Duration.ZERO).isEmpty());
+		var full = gallery.search(matcher, 5, 0);
+		var timed = gallery.search(matcher, 5, 0, Duration.ofDays(1));
+		assertEquals(full.size(), timed.size());
+		for (int i = 0; i < full.size(); ++i) {
+			assertEquals(full.get(i).index(), timed.get(i).index());
+			assertEquals(full.get(i).score(), timed.get(i).score());
+		}
+	}
+}
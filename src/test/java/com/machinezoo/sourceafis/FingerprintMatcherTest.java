@@ -3,6 +3,9 @@ package com.machinezoo.sourceafis;
 
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.*;
+import java.util.*;
 import org.junit.jupiter.api.*;
 
 public class FingerprintMatcherTest {
@@ -40,4 +43,56 @@ public class FingerprintMatcherTest {
 	public void nonmatchingGray() {
 		nonmatching(FingerprintTemplateTest.probeGray(), FingerprintTemplateTest.nonmatchingGray());
 	}
+	@Test
+	public void defaultOptions() {
+		var probe = FingerprintTemplateTest.probe();
+		var candidate = FingerprintTemplateTest.matching();
+		double score = new FingerprintMatcher(probe).match(candidate);
+		assertEquals(score, new FingerprintMatcher(probe, null).match(candidate));
+		assertEquals(score, new FingerprintMatcher(probe, new FingerprintMatcherOptions()).match(candidate));
+		assertEquals(score, new FingerprintMatcher(probe, FingerprintMatcherOptions.thorough()).match(candidate));
+	}
+	@Test
+	public void profiles() {
+		for (var options : new FingerprintMatcherOptions[] { FingerprintMatcherOptions.balanced(), FingerprintMatcherOptions.screening() }) {
+			var matcher = new FingerprintMatcher(FingerprintTemplateTest.probe(), options);
+			double matching = matcher.match(FingerprintTemplateTest.matching());
+			double nonmatching = matcher.match(FingerprintTemplateTest.nonmatching());
+			assertThat(matching, greaterThan(nonmatching));
+			assertThat(matching, lessThanOrEqualTo(new FingerprintMatcher(FingerprintTemplateTest.probe()).match(FingerprintTemplateTest.matching())));
+		}
+	}
+	@Test
+	public void invalidOptions() {
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintMatcherOptions().maxRoots(0));
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintMatcherOptions().maxRootLookups(0));
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintMatcherOptions().maxNeighbors(0));
+	}
+	@Test
+	public void serialization() {
+		var matcher = new FingerprintMatcher(FingerprintTemplateTest.probe());
+		byte[] serialized = matcher.toByteArray();
+		var loaded = new FingerprintMatcher(serialized);
+		assertArrayEquals(serialized, loaded.toByteArray());
+		for (var candidate : new FingerprintTemplate[] { FingerprintTemplateTest.matching(), FingerprintTemplateTest.nonmatching() })
+			assertEquals(matcher.match(candidate), loaded.match(candidate));
+		/*
+		 * Direct buffers are read at their position and they are left unmodified.
+		 */
+		var direct = ByteBuffer.allocateDirect(serialized.length + 3);
+		direct.put(new byte[3]).put(serialized).position(3);
+		var mapped = new FingerprintMatcher(direct, FingerprintMatcherOptions.balanced());
+		assertEquals(3, direct.position());
+		assertArrayEquals(serialized, mapped.toByteArray());
+	}
+	@Test
+	public void corruptedSerialization() {
+		byte[] serialized = new FingerprintMatcher(FingerprintTemplateTest.probe()).toByteArray();
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintMatcher(FingerprintTemplateTest.probe().toByteArray()));
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintMatcher(Arrays.copyOf(serialized, serialized.length - 1)));
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintMatcher(Arrays.copyOf(serialized, serialized.length + 1)));
+		byte[] flipped = serialized.clone();
+		flipped[flipped.length - 100] ^= 1;
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintMatcher(flipped));
+	}
 }
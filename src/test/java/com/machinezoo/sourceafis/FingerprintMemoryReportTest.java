@@ -0,0 +1,70 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+public class FingerprintMemoryReportTest {
+	private static void consistent(FingerprintMemoryReport report) {
+		assertEquals(report.total(), report.minutiae() + report.edges() + report.roots() + report.hashes() + report.other());
+		assertEquals(report.total(), report.heap() + report.offHeap());
+		assertThat(report.other(), greaterThanOrEqualTo(0L));
+	}
+	@Test
+	public void templates() {
+		var templates = List.of(FingerprintTemplateTest.probe(), FingerprintTemplateTest.matching());
+		var report = new FingerprintMemoryReport().addAll(templates);
+		assertEquals(2, report.templates());
+		assertEquals(templates.get(0).memory() + templates.get(1).memory(), report.heap());
+		assertEquals(0, report.offHeap());
+		assertEquals(0, report.hashes());
+		assertThat(report.minutiae(), greaterThan(0L));
+		assertThat(report.edges(), greaterThan(report.minutiae()));
+		assertEquals(0, report.roots());
+		consistent(report);
+	}
+	@Test
+	public void roots() {
+		var candidate = FingerprintTemplateTest.matching();
+		var matcher = new FingerprintMatcher(FingerprintTemplateTest.probe());
+		long initial = candidate.memory();
+		matcher.match(candidate);
+		assertEquals(0, new FingerprintMemoryReport().add(candidate).roots());
+		matcher.match(candidate);
+		var report = new FingerprintMemoryReport().add(candidate);
+		assertThat(report.roots(), greaterThan(0L));
+		assertEquals(initial + report.roots(), candidate.memory());
+		consistent(report);
+	}
+	@Test
+	public void matcher() {
+		var matcher = new FingerprintMatcher(FingerprintTemplateTest.probe());
+		var report = new FingerprintMemoryReport().add(matcher);
+		assertEquals(1, report.templates());
+		assertEquals(matcher.memory(), report.heap());
+		assertThat(report.hashes(), greaterThan(0L));
+		assertEquals(0, report.roots());
+		consistent(report);
+	}
+	@Test
+	public void gallery() {
+		var gallery = new FingerprintGallery();
+		gallery.add(FingerprintTemplateTest.probe());
+		gallery.add(FingerprintTemplateTest.matching());
+		var report = new FingerprintMemoryReport().add(gallery);
+		assertEquals(2, report.templates());
+		assertEquals(gallery.memory(), report.heap());
+		assertEquals(gallery.reserved(), report.offHeap());
+		assertThat(report.minutiae() + report.edges() + report.roots(), lessThanOrEqualTo(gallery.bytes()));
+		assertThat(report.roots(), greaterThan(0L));
+		consistent(report);
+		assertTrue(report.toString().contains("off-heap"));
+	}
+	@Test
+	public void layout() {
+		assertTrue(FingerprintMemoryReport.layout().contains("references"));
+	}
+}
@@ -0,0 +1,124 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+import java.util.zip.*;
+import org.junit.jupiter.api.*;
+
+public class FingerprintSamplerTest {
+	private static List<Path> list(Path directory) throws IOException {
+		try (Stream<Path> listing = Files.list(directory)) {
+			return listing.sorted().collect(Collectors.toList());
+		}
+	}
+	private static void delete(Path directory) throws IOException {
+		for (var file : list(directory))
+			Files.delete(file);
+		Files.delete(directory);
+	}
+	@Test
+	public void capture() throws IOException {
+		var directory = Files.createTempDirectory("sourceafis-sampler");
+		try {
+			var image = FingerprintImageTest.probe();
+			var candidate = FingerprintTemplateTest.matching();
+			var matcher = new FingerprintMatcher(FingerprintTemplateTest.probe());
+			double score = matcher.match(candidate);
+			try (var sampler = new FingerprintSampler(directory, 1, 1, 100 << 20)) {
+				new FingerprintTemplate(image);
+				assertEquals(score, matcher.match(candidate));
+				assertEquals(2, sampler.captured());
+				assertEquals(0, sampler.failures());
+			}
+			var files = list(directory);
+			assertEquals(2, files.size());
+			assertTrue(files.get(0).getFileName().toString().endsWith("-extraction.zip"));
+			assertTrue(files.get(1).getFileName().toString().endsWith("-match.zip"));
+			try (var zip = new ZipInputStream(Files.newInputStream(files.get(1)))) {
+				assertNotNull(zip.getNextEntry());
+			}
+			/*
+			 * Inactive sampler does not capture anything.
+			 */
+			matcher.match(candidate);
+			assertEquals(2, list(directory).size());
+		} finally {
+			delete(directory);
+		}
+	}
+	@Test
+	public void rolling() throws IOException {
+		var directory = Files.createTempDirectory("sourceafis-sampler");
+		try {
+			var matcher = new FingerprintMatcher(FingerprintTemplateTest.probe());
+			var candidate = FingerprintTemplateTest.matching();
+			long single;
+			try (var sampler = new FingerprintSampler(directory, 0, 1, Long.MAX_VALUE)) {
+				matcher.match(candidate);
+				single = sampler.size();
+			}
+			try (var sampler = new FingerprintSampler(directory, 0, 1, 2 * single + single / 2)) {
+				for (int i = 0; i < 3; ++i)
+					matcher.match(candidate);
+				assertEquals(3, sampler.captured());
+				assertEquals(2, sampler.evicted());
+				assertTrue(sampler.size() <= 2 * single + single / 2);
+			}
+			assertEquals(2, list(directory).size());
+		} finally {
+			delete(directory);
+		}
+	}
+	@Test
+	public void exclusive() throws IOException {
+		var directory = Files.createTempDirectory("sourceafis-sampler");
+		try {
+			try (var sampler = new FingerprintSampler(directory, 0, 0, 0)) {
+				assertThrows(IllegalStateException.class, () -> new FingerprintSampler(directory, 0, 0, 0));
+				new FingerprintMatcher(FingerprintTemplateTest.probe()).match(FingerprintTemplateTest.matching());
+				assertEquals(0, sampler.captured());
+			}
+			assertThrows(IllegalArgumentException.class, () -> new FingerprintSampler(directory, 2, 0, 0));
+			assertThrows(IllegalArgumentException.class, () -> new FingerprintSampler(directory, 0, 0, -1));
+		} finally {
+			delete(directory);
+		}
+	}
+	@Test
+	public void foreign() throws IOException {
+		var directory = Files.createTempDirectory("sourceafis-sampler");
+		try {
+			var archive = directory.resolve("archive.zip");
+			var previous = directory.resolve("0000000000001-000001-match.zip");
+			Files.write(archive, new byte[1000]);
+			Files.write(previous, new byte[10]);
+			try (var sampler = new FingerprintSampler(directory, 0, 1, 0)) {
+				assertEquals(1, sampler.evicted());
+				assertEquals(0, sampler.size());
+				new FingerprintMatcher(FingerprintTemplateTest.probe()).match(FingerprintTemplateTest.matching());
+				assertEquals(1, sampler.captured());
+				assertEquals(2, sampler.evicted());
+			}
+			assertEquals(List.of(archive), list(directory));
+		} finally {
+			delete(directory);
+		}
+	}
+	@Test
+	public void nested() throws IOException {
+		var directory = Files.createTempDirectory("sourceafis-sampler");
+		try {
+			try (var sampler = new FingerprintSampler(directory, 1, 1, Long.MAX_VALUE);
+				var transparency = FingerprintTransparency.zip(new ByteArrayOutputStream())) {
+				new FingerprintMatcher(FingerprintTemplateTest.probe()).match(FingerprintTemplateTest.matching());
+				assertEquals(0, sampler.captured());
+			}
+		} finally {
+			delete(directory);
+		}
+	}
+}
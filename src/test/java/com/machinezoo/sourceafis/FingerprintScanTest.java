@@ -0,0 +1,73 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+import java.util.stream.*;
+import org.junit.jupiter.api.*;
+
+public class FingerprintScanTest {
+	/*
+	 * Enough candidates to fill several batches, so that splitting and batching are exercised.
+	 */
+	private static List<byte[]> candidates() {
+		var templates = List.of(FingerprintTemplateTest.nonmatching(), FingerprintTemplateTest.matchingGray(), FingerprintTemplateTest.nonmatchingGray());
+		var serialized = new ArrayList<byte[]>();
+		for (int i = 0; i < 100; ++i)
+			serialized.add(templates.get(i % templates.size()).toByteArray());
+		serialized.set(77, FingerprintTemplateTest.matching().toByteArray());
+		return serialized;
+	}
+	private static void check(List<byte[]> candidates, List<FingerprintHit> hits, FingerprintMatcher matcher, int limit) {
+		var expected = IntStream.range(0, candidates.size())
+			.mapToObj(i -> new FingerprintHit(i, matcher.match(new FingerprintTemplate(candidates.get(i)))))
+			.sorted(FingerprintHit.RANKING)
+			.limit(limit)
+			.collect(Collectors.toList());
+		assertEquals(expected.size(), hits.size());
+		for (int i = 0; i < expected.size(); ++i) {
+			assertEquals(expected.get(i).index(), hits.get(i).index());
+			assertEquals(expected.get(i).score(), hits.get(i).score());
+		}
+	}
+	@Test
+	public void sources() {
+		var matcher = new FingerprintMatcher(FingerprintTemplateTest.probe());
+		var candidates = candidates();
+		var scan = new FingerprintScan().limit(5).prefetch(40);
+		check(candidates, scan.search(matcher, candidates.iterator()), matcher, 5);
+		check(candidates, scan.search(matcher, candidates.stream()), matcher, 5);
+		check(candidates, scan.readers(3).search(matcher, candidates.spliterator()), matcher, 5);
+		var hits = scan.search(matcher, candidates.stream());
+		assertEquals(77, hits.get(0).index());
+		assertTrue(scan.search(matcher, Collections.emptyIterator()).isEmpty());
+	}
+	@Test
+	public void thresholds() {
+		var matcher = new FingerprintMatcher(FingerprintTemplateTest.probe());
+		var hits = new FingerprintScan().threshold(40).search(matcher, candidates().iterator());
+		assertEquals(1, hits.size());
+		assertEquals(77, hits.get(0).index());
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintScan().limit(0));
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintScan().prefetch(0));
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintScan().readers(0));
+	}
+	@Test
+	public void failures() {
+		var matcher = new FingerprintMatcher(FingerprintTemplateTest.probe());
+		var corrupted = candidates();
+		corrupted.set(50, new byte[] { 1, 2, 3 });
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintScan().search(matcher, corrupted.iterator()));
+		var failing = candidates().stream().map(new java.util.function.Function<byte[], byte[]>() {
+			int count;
+			@Override
+			public byte[] apply(byte[] candidate) {
+				if (++count > 60)
+					throw new IllegalStateException("Source failure.");
+				return candidate;
+			}
+		});
+		var ex = assertThrows(IllegalStateException.class, () -> new FingerprintScan().prefetch(1).search(matcher, failing));
+		assertEquals("Source failure.", ex.getMessage());
+	}
+}
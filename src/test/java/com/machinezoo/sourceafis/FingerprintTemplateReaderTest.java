@@ -0,0 +1,116 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+public class FingerprintTemplateReaderTest {
+	private static byte[] concatenate(List<FingerprintTemplate> templates) {
+		var stream = new ByteArrayOutputStream();
+		for (int i = 0; i < templates.size(); ++i) {
+			var template = templates.get(i);
+			if (i % 3 == 0)
+				stream.writeBytes(template.toByteArray());
+			else
+				stream.writeBytes(template.toCompactByteArray(i % 3 == 2));
+		}
+		return stream.toByteArray();
+	}
+	private static void assertTemplates(List<FingerprintTemplate> expected, FingerprintTemplateReader reader) {
+		for (var template : expected) {
+			assertTrue(reader.hasNext());
+			assertArrayEquals(template.toCompactByteArray(true), reader.next().toCompactByteArray(true));
+		}
+		assertFalse(reader.hasNext());
+		assertThrows(NoSuchElementException.class, reader::next);
+	}
+	private static List<FingerprintTemplate> templates() {
+		var probe = FingerprintTemplateTest.probe();
+		var matching = FingerprintTemplateTest.matching();
+		var nonmatching = FingerprintTemplateTest.nonmatching();
+		return List.of(probe, matching, nonmatching, matching, nonmatching, probe);
+	}
+	@Test
+	public void buffer() {
+		var templates = templates();
+		byte[] serialized = concatenate(templates);
+		assertTemplates(templates, new FingerprintTemplateReader(ByteBuffer.wrap(serialized)));
+		var direct = ByteBuffer.allocateDirect(serialized.length);
+		direct.put(serialized).flip();
+		assertTemplates(templates, new FingerprintTemplateReader(direct));
+		assertEquals(0, direct.position());
+	}
+	@Test
+	public void stream() throws IOException {
+		var templates = templates();
+		byte[] serialized = concatenate(templates);
+		/*
+		 * Return data in small pieces to exercise handling of incomplete templates.
+		 */
+		var stream = new FilterInputStream(new ByteArrayInputStream(serialized)) {
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				return super.read(buffer, offset, Math.min(length, 7));
+			}
+		};
+		try (var reader = new FingerprintTemplateReader(stream)) {
+			assertTemplates(templates, reader);
+		}
+	}
+	@Test
+	public void truncated() {
+		byte[] serialized = concatenate(templates());
+		var reader = new FingerprintTemplateReader(new ByteArrayInputStream(Arrays.copyOf(serialized, serialized.length - 1)));
+		assertThrows(IllegalArgumentException.class, () -> {
+			while (reader.hasNext())
+				reader.next();
+		});
+	}
+	/*
+	 * Endless input that starts with the given header. It counts how much of it was read.
+	 */
+	private static class BogusStream extends InputStream {
+		final byte[] header;
+		final byte[] filler;
+		long read;
+		BogusStream(byte[] header, byte[] filler) {
+			this.header = header;
+			this.filler = filler;
+		}
+		@Override
+		public int read() {
+			int value = read < header.length ? header[(int)read] : filler[(int)((read - header.length) % filler.length)];
+			++read;
+			return value & 0xff;
+		}
+		@Override
+		public int read(byte[] buffer, int offset, int length) {
+			for (int i = 0; i < length; ++i)
+				buffer[offset + i] = (byte)read();
+			return length;
+		}
+	}
+	private static void bogus(byte[] header, byte[] filler) {
+		var stream = new BogusStream(header, filler);
+		var reader = new FingerprintTemplateReader(stream);
+		var ex = assertThrows(IllegalArgumentException.class, reader::next);
+		assertTrue(ex.getMessage().contains("too large"));
+		assertTrue(stream.read <= 32 << 20);
+	}
+	@Test
+	public void bogusLength() {
+		/*
+		 * Compact template with 32768 minutiae and 4096 edges per minutia claims to be 1.6GB long.
+		 */
+		var compact = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+		compact.put(new byte[] { 'S', 'A', 'F', 'T' }).putShort((short)1).putShort((short)1).putShort((short)500).putShort((short)500).putInt(32768);
+		bogus(compact.array(), new byte[] { 0, 0x10 });
+		/*
+		 * CBOR map whose first key is a 2GB text string.
+		 */
+		bogus(new byte[] { (byte)0xbf, 0x7a, 0x7f, (byte)0xff, (byte)0xff, (byte)0xff }, new byte[] { 'x' });
+	}
+}
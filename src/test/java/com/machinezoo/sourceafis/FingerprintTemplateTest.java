@@ -4,6 +4,7 @@ package com.machinezoo.sourceafis;
 import static org.junit.jupiter.api.Assertions.*;
 import java.awt.image.*;
 import java.io.*;
+import java.nio.charset.*;
 import java.util.*;
 import javax.imageio.*;
 import org.junit.jupiter.api.*;
@@ -56,6 +57,83 @@ public class FingerprintTemplateTest {
 		assertEquals(0.5 * Math.PI, b.direction, 0.0000001);
 		assertEquals(MinutiaType.ENDING, b.type);
 	}
+	private static void assertSameTemplate(SearchTemplate expected, SearchTemplate actual) {
+		assertEquals(expected.width, actual.width);
+		assertEquals(expected.height, actual.height);
+		assertEquals(expected.minutiae.length, actual.minutiae.length);
+		for (int i = 0; i < expected.minutiae.length; ++i) {
+			assertEquals(expected.minutiae[i].x, actual.minutiae[i].x);
+			assertEquals(expected.minutiae[i].y, actual.minutiae[i].y);
+			assertEquals(expected.minutiae[i].direction, actual.minutiae[i].direction);
+			assertEquals(expected.minutiae[i].type, actual.minutiae[i].type);
+			assertEquals(expected.edges()[i].length, actual.edges()[i].length);
+			for (int j = 0; j < expected.edges()[i].length; ++j) {
+				var a = expected.edges()[i][j];
+				var b = actual.edges()[i][j];
+				assertEquals(a.neighbor, b.neighbor);
+				assertEquals(a.length, b.length);
+				assertEquals(a.referenceAngle, b.referenceAngle);
+				assertEquals(a.neighborAngle, b.neighborAngle);
+			}
+		}
+	}
+	@Test
+	public void lazyEdges() {
+		var template = new FingerprintTemplate(probe().toByteArray());
+		int estimate = template.memory();
+		new FingerprintMatcher(template).match(matching());
+		assertEquals(estimate, template.memory());
+		assertSameTemplate(probe().inner, template.inner);
+	}
+	@Test
+	public void compactRoundTrip() {
+		var t = probe();
+		assertSameTemplate(t.inner, new FingerprintTemplate(t.toCompactByteArray(false)).inner);
+		assertSameTemplate(t.inner, new FingerprintTemplate(t.toCompactByteArray(true)).inner);
+	}
+	@Test
+	public void rejectCorruptedCompactTemplate() {
+		byte[] serialized = probe().toCompactByteArray(true);
+		serialized[serialized.length / 2] ^= 1;
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintTemplate(serialized));
+	}
+	private static byte[] cbor(Object... parts) {
+		var stream = new ByteArrayOutputStream();
+		for (Object part : parts) {
+			if (part instanceof String)
+				stream.writeBytes(((String)part).getBytes(StandardCharsets.US_ASCII));
+			else
+				stream.write((Integer)part);
+		}
+		return stream.toByteArray();
+	}
+	@Test
+	public void deserializeIndefiniteLengths() {
+		byte[] serialized = cbor(
+			0xbf,
+			0x65, "types", 0x7f, 0x61, "E", 0x61, "B", 0xff,
+			0x6a, "directions", 0x9f, 0xf9, 0x3e, 0x00, 0x03, 0xff,
+			0x6a, "positionsX", 0x9f, 0x19, 0x01, 0x2c, 0x00, 0xff,
+			0x6a, "positionsY", 0x82, 0x24, 0x18, 0x64,
+			0x65, "width", 0xf6,
+			0xff);
+		var t = new FingerprintTemplate(serialized);
+		assertEquals(2, t.inner.minutiae.length);
+		var a = Arrays.stream(t.inner.minutiae).filter(m -> m.x == 300).findFirst().get();
+		var b = Arrays.stream(t.inner.minutiae).filter(m -> m.x == 0).findFirst().get();
+		assertEquals(-5, a.y);
+		assertEquals(1.5, a.direction, 0.0000001);
+		assertEquals(MinutiaType.ENDING, a.type);
+		assertEquals(100, b.y);
+		assertEquals(3, b.direction, 0.0000001);
+		assertEquals(MinutiaType.BIFURCATION, b.type);
+	}
+	@Test
+	public void rejectCorruptedTemplate() {
+		byte[] serialized = probe().toByteArray();
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintTemplate(Arrays.copyOf(serialized, serialized.length / 2)));
+		assertThrows(IllegalArgumentException.class, () -> new FingerprintTemplate(cbor(0xa1, 0x65, "types", 0x61, "X")));
+	}
 	@Test
 	public void randomScaleMatch() throws Exception {
 		FingerprintMatcher matcher = new FingerprintMatcher(probe());
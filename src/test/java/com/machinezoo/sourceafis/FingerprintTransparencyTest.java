@@ -3,7 +3,12 @@ package com.machinezoo.sourceafis;
 
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
 import java.util.*;
+import java.util.zip.*;
 import org.junit.jupiter.api.*;
 
 public class FingerprintTransparencyTest {
@@ -68,4 +73,127 @@ public class FingerprintTransparencyTest {
 			assertThat(transparency.keys, is(empty()));
 		}
 	}
+	@Test
+	public void async() {
+		List<String> expected;
+		try (TransparencyChecker transparency = new TransparencyChecker()) {
+			new FingerprintTemplate(FingerprintImageTest.probe());
+			expected = transparency.keys;
+		}
+		TransparencyChecker target = new TransparencyChecker();
+		try (var transparency = new FingerprintAsyncTransparency(target, 4, FingerprintAsyncTransparency.Overflow.BLOCK)) {
+			new FingerprintTemplate(FingerprintImageTest.probe());
+			transparency.close();
+			assertEquals(expected, target.keys);
+			assertEquals(expected.size(), transparency.offered());
+			assertEquals(expected.size(), transparency.delivered());
+			assertEquals(0, transparency.dropped());
+		}
+	}
+	private static class SlowTransparency extends FingerprintTransparency {
+		final List<String> keys = new ArrayList<>();
+		@Override
+		public void take(String key, String mime, byte[] data) {
+			keys.add(key);
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException ex) {
+			}
+		}
+	}
+	@Test
+	public void asyncOverflow() {
+		for (var overflow : new FingerprintAsyncTransparency.Overflow[] { FingerprintAsyncTransparency.Overflow.DROP_NEWEST, FingerprintAsyncTransparency.Overflow.DROP_OLDEST }) {
+			SlowTransparency target = new SlowTransparency();
+			var transparency = new FingerprintAsyncTransparency(target, 1, overflow);
+			try (transparency) {
+				new FingerprintTemplate(FingerprintImageTest.probe());
+			}
+			assertThat(transparency.dropped(), greaterThan(0L));
+			assertEquals(transparency.offered(), transparency.delivered() + transparency.dropped());
+			assertEquals(transparency.delivered(), target.keys.size());
+		}
+	}
+	private static class FailingTransparency extends FingerprintTransparency {
+		@Override
+		public void take(String key, String mime, byte[] data) {
+			throw new IllegalStateException();
+		}
+	}
+	@Test
+	public void asyncFailure() {
+		var transparency = new FingerprintAsyncTransparency(new FailingTransparency(), 100, FingerprintAsyncTransparency.Overflow.BLOCK);
+		new FingerprintTemplate(FingerprintImageTest.probe());
+		assertThrows(IllegalStateException.class, transparency::close);
+		assertEquals(0, transparency.delivered());
+		assertEquals(transparency.offered(), transparency.dropped());
+	}
+	@Test
+	public void asyncRejected() {
+		try (var outer = new TransparencyChecker()) {
+			var target = new TransparencyChecker();
+			target.close();
+			assertThrows(IllegalArgumentException.class, () -> new FingerprintAsyncTransparency(target, 0, FingerprintAsyncTransparency.Overflow.BLOCK));
+			assertThrows(NullPointerException.class, () -> new FingerprintAsyncTransparency(target, 4, null));
+			assertThrows(NullPointerException.class, () -> new FingerprintAsyncTransparency(null, 4, FingerprintAsyncTransparency.Overflow.BLOCK));
+			/*
+			 * Rejected loggers must not stay active on top of the outer logger.
+			 */
+			new FingerprintTemplate(FingerprintImageTest.probe());
+			assertThat(outer.keys, is(not(empty())));
+			assertThat(target.keys, is(empty()));
+		}
+	}
+	private static class CompactTransparency extends FingerprintTransparency {
+		final List<String> mimes = new ArrayList<>();
+		final List<byte[]> matrices = new ArrayList<>();
+		@Override
+		public boolean acceptsCompactMatrices() {
+			return true;
+		}
+		@Override
+		public void take(String key, String mime, byte[] data) {
+			mimes.add(mime);
+			if (mime.equals("application/x-sourceafis-matrix"))
+				matrices.add(data);
+		}
+	}
+	@Test
+	public void compact() {
+		try (var transparency = new CompactTransparency()) {
+			new FingerprintTemplate(FingerprintImageTest.probe());
+			assertThat(transparency.matrices, is(not(empty())));
+			assertThat(transparency.mimes, hasItem("application/cbor"));
+			for (var data : transparency.matrices) {
+				var buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+				assertEquals("SAFM", new String(data, 0, 4, StandardCharsets.US_ASCII));
+				byte type = buffer.get(4);
+				long count = (long)buffer.getInt(5) * buffer.getInt(9) * buffer.getInt(13);
+				long size = type == 2 ? (count + 7) / 8 : type == 4 ? 2 * count : 4 * count;
+				assertEquals(17 + size, data.length);
+			}
+		}
+	}
+	private static byte[] zip(boolean compact) {
+		var buffer = new ByteArrayOutputStream();
+		try (var transparency = FingerprintTransparency.zip(buffer, compact)) {
+			new FingerprintTemplate(FingerprintImageTest.probe());
+		}
+		return buffer.toByteArray();
+	}
+	@Test
+	public void compactZip() throws IOException {
+		byte[] compact = zip(true);
+		assertThat(compact.length, lessThan(zip(false).length));
+		int matrices = 0;
+		try (var zip = new ZipInputStream(new ByteArrayInputStream(compact))) {
+			for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+				if (entry.getName().endsWith(".matrix")) {
+					++matrices;
+					assertEquals("SAFM", new String(zip.readNBytes(4), StandardCharsets.US_ASCII));
+				}
+			}
+		}
+		assertThat(matrices, greaterThan(0));
+	}
 }
@@ -0,0 +1,47 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.extractor;
+
+import java.util.*;
+import com.machinezoo.sourceafis.*;
+import com.machinezoo.sourceafis.engine.configuration.*;
+import com.machinezoo.sourceafis.engine.images.*;
+import com.machinezoo.sourceafis.engine.primitives.*;
+
+/*
+ * Intermediate results of feature extractor on bundled test images, which serve as realistic inputs for tests of individual stages.
+ */
+class ExtractorStages {
+	final BlockMap blocks;
+	final DoubleMatrix raw;
+	final HistogramCube smoothHistogram;
+	final BooleanMatrix mask;
+	final DoubleMatrix equalized;
+	final DoubleMatrix orientation;
+	/*
+	 * Same steps as FingerprintImage and FeatureExtractor with default 500 DPI.
+	 */
+	ExtractorStages(byte[] image) {
+		DecodedImage decoded = ImageDecoder.decodeAny(image);
+		var matrix = new DoubleMatrix(decoded.width, decoded.height);
+		for (int y = 0; y < decoded.height; ++y) {
+			for (int x = 0; x < decoded.width; ++x) {
+				int pixel = decoded.pixels[y * decoded.width + x];
+				int color = (pixel & 0xff) + ((pixel >> 8) & 0xff) + ((pixel >> 16) & 0xff);
+				matrix.set(x, y, 1 - color * (1.0 / (3.0 * 255.0)));
+			}
+		}
+		raw = ImageResizer.resize(matrix, 500);
+		blocks = new BlockMap(raw.width, raw.height, Parameters.BLOCK_SIZE);
+		var histogram = LocalHistograms.create(blocks, raw);
+		smoothHistogram = LocalHistograms.smooth(blocks, histogram);
+		mask = SegmentationMask.compute(blocks, histogram);
+		equalized = ImageEqualization.equalize(blocks, raw, smoothHistogram, mask);
+		orientation = BlockOrientations.compute(equalized, mask, blocks);
+	}
+	static List<ExtractorStages> all() {
+		return List.of(
+			new ExtractorStages(TestResources.probe()),
+			new ExtractorStages(TestResources.matching()),
+			new ExtractorStages(TestResources.nonmatching()));
+	}
+}
@@ -0,0 +1,45 @@
+// Part of SourceAFIS for Java: https://sourceafis.machinezoo.com/java
+package com.machinezoo.sourceafis.engine.primitives;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+
+public class PolarCacheTest {
+	@Test
+	public void exact() {
+		for (int y = -PolarCache.RADIUS + 1; y < PolarCache.RADIUS; ++y)
+			for (int x = -PolarCache.RADIUS + 1; x < PolarCache.RADIUS; ++x) {
+				assertEquals(Math.round(Math.sqrt(Integers.sq(x) + Integers.sq(y))), PolarCache.length(x, y), x + ", " + y);
+				float angle = PolarCache.angle(x, y);
+				assertTrue(angle >= 0, x + ", " + y);
+				if (x != 0 || y != 0) {
+					if (x >= 0 && y >= 0)
+						assertEquals((float)DoubleAngle.atan(new IntPoint(x, y)), angle, x + ", " + y);
+					else
+						assertEquals(0, DoubleAngle.distance(DoubleAngle.atan(new IntPoint(x, y)), angle), 0.000001, x + ", " + y);
+				}
+			}
+	}
+	@Test
+	public void zero() {
+		assertEquals(0, PolarCache.length(0, 0));
+		assertEquals(0, PolarCache.angle(0, 0));
+	}
+	@Test
+	public void approximate() {
+		for (int y = -1024; y <= 1024; ++y)
+			for (int x = -1024; x <= 1024; ++x) {
+				if (Math.abs(x) < PolarCache.RADIUS && Math.abs(y) < PolarCache.RADIUS)
+					continue;
+				double length = Math.sqrt(Integers.sq(x) + Integers.sq(y));
+				assertEquals(length, PolarCache.length(x, y), 0.02 * length, x + ", " + y);
+				assertEquals(0, DoubleAngle.distance(DoubleAngle.atan(new IntPoint(x, y)), PolarCache.angle(x, y)), 0.01, x + ", " + y);
+			}
+	}
+	@Test
+	public void extremes() {
+		assertEquals(Short.MAX_VALUE, PolarCache.length(Short.MAX_VALUE, 0), 0.02 * Short.MAX_VALUE);
+		assertEquals(Short.MAX_VALUE, PolarCache.length(0, Short.MIN_VALUE + 1), 0.02 * Short.MAX_VALUE);
+		assertEquals(1.25 * Math.PI, PolarCache.angle(Short.MIN_VALUE + 1, Short.MIN_VALUE + 1), 0.01);
+	}
+}